@@ -3720,6 +3720,117 @@ JNIEXPORT jboolean JNICALL Java_com_dynarithmic_twain_DTwainJavaAPI_DTWAIN_1GetC
     DO_DTWAIN_CATCH(env)
 }
 
+/*
+ * Class:     com_dynarithmic_twain_DTwainJavaAPI
+ * Method:    DTWAIN_GetCapValuesBatch
+ * Signature: (J[I[I[I[I)[Ljava/lang/Object;
+ *
+ * Gets the values of many capabilities in one call.  The returned array holds 4 arrays:
+ *    int[]    -- 4 entries for each capability: error code (0 if successful), value kind, offset, count
+ *    int[]    -- the integer and boolean values of all the capabilities
+ *    double[] -- the floating point and frame (4 values per frame) values of all the capabilities
+ *    String[] -- the string values of all the capabilities
+ * The value kind is 0 (no values), 1 (integer), 2 (boolean), 3 (double), 4 (string) or 5 (frame), and
+ * the offset is the index of the first value of the capability in the array for that kind.
+ */
+JNIEXPORT jobjectArray JNICALL Java_com_dynarithmic_twain_DTwainJavaAPI_DTWAIN_1GetCapValuesBatch
+(JNIEnv *env, jobject, jlong source, jintArray caps, jintArray getTypes, jintArray containerTypes, jintArray dataTypes)
+{
+    DO_DTWAIN_TRY
+    enum { KIND_NONE = 0, KIND_INT = 1, KIND_BOOL = 2, KIND_DOUBLE = 3, KIND_STRING = 4, KIND_FRAME = 5 };
+    const jsize numCaps = env->GetArrayLength(caps);
+    std::vector<jint> vCaps(numCaps), vGetTypes(numCaps), vContainerTypes(numCaps), vDataTypes(numCaps);
+    env->GetIntArrayRegion(caps, 0, numCaps, vCaps.data());
+    env->GetIntArrayRegion(getTypes, 0, numCaps, vGetTypes.data());
+    env->GetIntArrayRegion(containerTypes, 0, numCaps, vContainerTypes.data());
+    env->GetIntArrayRegion(dataTypes, 0, numCaps, vDataTypes.data());
+
+    std::vector<jint> meta(static_cast<size_t>(numCaps) * 4);
+    std::vector<jint> intValues;
+    std::vector<jdouble> doubleValues;
+    std::vector<std::string> stringValues;
+    const auto theSource = reinterpret_cast<DTWAIN_SOURCE>(source);
+    for (jsize i = 0; i < numCaps; ++i)
+    {
+        jint* capMeta = &meta[static_cast<size_t>(i) * 4];
+        DTWAIN_ARRAY aTmp = nullptr;
+        const BOOL bOk = API_INSTANCE DTWAIN_GetCapValuesEx2(theSource, vCaps[i], vGetTypes[i], vContainerTypes[i], vDataTypes[i], &aTmp);
+        DTWAINArray_RAII raii(aTmp);
+        // A capability that returns no array fails, as it does when the capabilities are retrieved one at a time
+        if (!bOk || !aTmp)
+        {
+            const LONG lastError = API_INSTANCE DTWAIN_GetLastError();
+            capMeta[0] = lastError != 0 ? lastError : -1;
+            continue;
+        }
+        const LONG sz = API_INSTANCE DTWAIN_ArrayGetCount(aTmp);
+        const LONG arrayType = API_INSTANCE DTWAIN_ArrayGetType(aTmp);
+        capMeta[3] = sz;
+        if (arrayType == DTWAIN_ARRAYLONG)
+        {
+            const bool isBool = API_INSTANCE DTWAIN_GetCapDataType(theSource, vCaps[i]) == TWTY_BOOL;
+            capMeta[1] = isBool ? KIND_BOOL : KIND_INT;
+            capMeta[2] = static_cast<jint>(intValues.size());
+            const auto buffer = static_cast<LONG*>(API_INSTANCE DTWAIN_ArrayGetBuffer(aTmp, 0));
+            intValues.insert(intValues.end(), buffer, buffer + sz);
+        }
+        else
+        if (arrayType == DTWAIN_ARRAYFLOAT)
+        {
+            capMeta[1] = KIND_DOUBLE;
+            capMeta[2] = static_cast<jint>(doubleValues.size());
+            const auto buffer = static_cast<double*>(API_INSTANCE DTWAIN_ArrayGetBuffer(aTmp, 0));
+            doubleValues.insert(doubleValues.end(), buffer, buffer + sz);
+        }
+        else
+        if (arrayType == DTWAIN_ARRAYSTRING || arrayType == DTWAIN_ARRAYANSISTRING)
+        {
+            capMeta[1] = KIND_STRING;
+            capMeta[2] = static_cast<jint>(stringValues.size());
+            for (LONG j = 0; j < sz; ++j)
+                stringValues.push_back(API_INSTANCE DTWAIN_ArrayGetAtANSIStringPtr(aTmp, j));
+        }
+        else
+        if (arrayType == DTWAIN_ARRAYFRAME)
+        {
+            capMeta[1] = KIND_FRAME;
+            capMeta[2] = static_cast<jint>(doubleValues.size());
+            for (LONG j = 0; j < sz; ++j)
+            {
+                FrameStruct frame;
+                API_INSTANCE DTWAIN_ArrayGetAtFrame(aTmp, j, &frame.left, &frame.top, &frame.right, &frame.bottom);
+                doubleValues.push_back(frame.left);
+                doubleValues.push_back(frame.top);
+                doubleValues.push_back(frame.right);
+                doubleValues.push_back(frame.bottom);
+            }
+        }
+        else
+            capMeta[3] = 0;
+    }
+
+    jintArray jMeta = env->NewIntArray(static_cast<jsize>(meta.size()));
+    env->SetIntArrayRegion(jMeta, 0, static_cast<jsize>(meta.size()), meta.data());
+    jintArray jInts = env->NewIntArray(static_cast<jsize>(intValues.size()));
+    env->SetIntArrayRegion(jInts, 0, static_cast<jsize>(intValues.size()), intValues.data());
+    jdoubleArray jDoubles = env->NewDoubleArray(static_cast<jsize>(doubleValues.size()));
+    env->SetDoubleArrayRegion(jDoubles, 0, static_cast<jsize>(doubleValues.size()), doubleValues.data());
+    jobjectArray jStrings = env->NewObjectArray(static_cast<jsize>(stringValues.size()), env->FindClass("java/lang/String"), nullptr);
+    for (size_t i = 0; i < stringValues.size(); ++i)
+    {
+        jstring str = env->NewStringUTF(stringValues[i].c_str());
+        env->SetObjectArrayElement(jStrings, static_cast<jsize>(i), str);
+        env->DeleteLocalRef(str);
+    }
+    jobjectArray ret = env->NewObjectArray(4, env->FindClass("java/lang/Object"), nullptr);
+    env->SetObjectArrayElement(ret, 0, jMeta);
+    env->SetObjectArrayElement(ret, 1, jInts);
+    env->SetObjectArrayElement(ret, 2, jDoubles);
+    env->SetObjectArrayElement(ret, 3, jStrings);
+    return ret;
+    DO_DTWAIN_CATCH(env)
+}
+
 /*
  * Class:     com_dynarithmic_twain_DTwainJavaAPI
  * Method:    DTWAIN_GetCapValuesStringEx
@@ -4112,6 +4223,10 @@ static jobject getFullImageBMPData(HANDLE hDib, JavaAcquirerInfo& jacqInfo, JNIE
     LPBYTE pDibData = raii.getData();
     jobject imgObject = jacqInfo.CreateJavaImageDataObject();
 
+    // The pages of a streamed acquisition were already delivered, so the data is not copied again
+    if ( jacqInfo.isImageDataDiscarded(imgObject) )
+        return imgObject;
+
     // attach file header if this is a DIB
     if ( isBMP )
     {
@@ -1775,6 +1775,14 @@ JNIEXPORT jobject JNICALL Java_com_dynarithmic_twain_DTwainJavaAPI_DTWAIN_1GetCa
 JNIEXPORT jboolean JNICALL Java_com_dynarithmic_twain_DTwainJavaAPI_DTWAIN_1GetCapValuesEx2
   (JNIEnv *, jobject, jlong, jint, jint, jint, jint, jobject);
 
+/*
+ * Class:     com_dynarithmic_twain_DTwainJavaAPI
+ * Method:    DTWAIN_GetCapValuesBatch
+ * Signature: (J[I[I[I[I)[Ljava/lang/Object;
+ */
+JNIEXPORT jobjectArray JNICALL Java_com_dynarithmic_twain_DTwainJavaAPI_DTWAIN_1GetCapValuesBatch
+  (JNIEnv *, jobject, jlong, jintArray, jintArray, jintArray, jintArray);
+
 /*
  * Class:     com_dynarithmic_twain_DTwainJavaAPI
  * Method:    DTWAIN_GetCapValuesIntEx
@@ -4126,7 +4126,7 @@ void JavaExtendedImageInfo_ExtendedImageInfo25::addBarcodeText(std::string text)
 /////////////////////////////////////////////////////////////////////////////////////////////////
 JavaTwainImageData::JavaTwainImageData(JNIEnv* env) :
     JavaObjectCaller(env, JavaFunctionNameMapInstance::getFunctionMap(), "TwainImageData",
-    {SetImageData, SetDibHandle})
+    {SetImageData, SetDibHandle, IsDataDiscarded})
 {
     RegisterMemberFunctions(*this, getObjectName());
     defaultConstructObject();
@@ -4142,6 +4142,11 @@ void JavaTwainImageData::setDibHandle(HANDLE handle)
     callVoidMethod(getFunctionName(SetDibHandle), handle);
 }
 
+bool JavaTwainImageData::isDataDiscarded()
+{
+    return callBooleanMethod(getFunctionName(IsDataDiscarded)) != 0;
+}
+
 /////////////////////////////////////////////////////////////////////////////////
 JavaTwainOCRInfo::JavaTwainOCRInfo(JNIEnv *env) :
     JavaObjectCaller(env, JavaFunctionNameMapInstance::getFunctionMap(), "TwainOCRInfo", {})
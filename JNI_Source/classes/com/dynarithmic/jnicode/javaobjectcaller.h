@@ -921,11 +921,13 @@ class JavaTwainImageData : public JavaObjectCaller
 {
     static constexpr const char *SetImageData = "SetImageData";
     static constexpr const char *SetDibHandle = "SetDibHandle";
+    static constexpr const char *IsDataDiscarded = "IsDataDiscarded";
 
 public:
     JavaTwainImageData(JNIEnv* env);
     void setImageData(jbyteArray imageData);
     void setDibHandle(HANDLE hDib);
+    bool isDataDiscarded();
 };
 
 class JavaAcquirerInfo
@@ -960,6 +962,12 @@ class JavaAcquirerInfo
             m_jAcquisitionData.addImageData(jImageDataObject);
         }
 
+        bool isImageDataDiscarded(jobject jImageDataObject)
+        {
+            m_jImageData.setObject(jImageDataObject);
+            return m_jImageData.isDataDiscarded();
+        }
+
         void setImageData(JNIEnv* env, jobject jImageDataObject, LPVOID imgData, unsigned long nDataSize, HANDLE handle =  static_cast<HANDLE>(nullptr))
         {
             // Create a jarray of bytes
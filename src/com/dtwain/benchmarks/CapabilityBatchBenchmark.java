@@ -0,0 +1,136 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dtwain.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.dtwain.demos.ConsoleJNISelector;
+import com.dynarithmic.twain.DTwainJavaAPI;
+import com.dynarithmic.twain.highlevel.TwainSession;
+import com.dynarithmic.twain.highlevel.TwainSource;
+import com.dynarithmic.twain.highlevel.capabilityinterface.CapabilityInterface;
+import com.dynarithmic.twain.highlevel.capabilityinterface.CapabilityInterface.GetCapOperation;
+
+/**
+ * Times getting the current value of every capability the selected source supports, once with a call to
+ * DTWAIN_GetCapValuesEx2 for each capability, and once with a single call to DTWAIN_GetCapValuesBatch.  The
+ * native functions are called directly, so the capability cache of CapabilityInterface is not involved.
+ * The number of rounds can be given as the first argument.
+ */
+public class CapabilityBatchBenchmark
+{
+    private static final int WARMUP_ROUNDS = 5;
+
+    public void run(int rounds)
+    {
+        // Allows runtime choice of choosing which JNI DLL is loaded.
+        ConsoleJNISelector.setJNIVersion(getClass().getSimpleName());
+
+        try
+        {
+            TwainSession twSession = new TwainSession();
+            TwainSource twainSource = twSession.selectSource();
+            if ( twainSource.isOpened() )
+            {
+                DTwainJavaAPI api = twSession.getAPIHandle();
+                long source = twainSource.getSourceHandle();
+                CapabilityInterface ci = twainSource.getCapabilityInterface();
+                GetCapOperation getCurrent = ci.getCurrent();
+
+                List<Integer> supported = ci.getSupportedCaps(ci.get());
+                int[] caps = new int[supported.size()];
+                int[] getTypes = new int[caps.length];
+                int[] containerTypes = new int[caps.length];
+                int[] dataTypes = new int[caps.length];
+                for (int i = 0; i < caps.length; ++i)
+                {
+                    caps[i] = supported.get(i);
+                    getTypes[i] = getCurrent.getOperation();
+                    containerTypes[i] = getCurrent.getContainerType();
+                    dataTypes[i] = getCurrent.getDataType();
+                }
+
+                // Both paths must agree on which capabilities fail
+                int perCapFailures = 0;
+                List<Object> values = new ArrayList<>();
+                for (int i = 0; i < caps.length; ++i)
+                {
+                    values.clear();
+                    if ( !api.DTWAIN_GetCapValuesEx2(source, caps[i], getTypes[i], containerTypes[i], dataTypes[i], values) )
+                        ++perCapFailures;
+                }
+                Object[] packed = api.DTWAIN_GetCapValuesBatch(source, caps, getTypes, containerTypes, dataTypes);
+                int[] meta = (int[])packed[0];
+                int batchFailures = 0;
+                for (int i = 0; i < caps.length; ++i)
+                {
+                    if ( meta[i * 4] != 0 )
+                        ++batchFailures;
+                }
+                System.out.println(caps.length + " capabilities, " + perCapFailures + " failed one at a time, " +
+                                   batchFailures + " failed in the batch");
+
+                for (int round = 0; round < WARMUP_ROUNDS; ++round)
+                {
+                    getOneAtATime(api, source, caps, getTypes, containerTypes, dataTypes);
+                    api.DTWAIN_GetCapValuesBatch(source, caps, getTypes, containerTypes, dataTypes);
+                }
+
+                long start = System.nanoTime();
+                for (int round = 0; round < rounds; ++round)
+                    getOneAtATime(api, source, caps, getTypes, containerTypes, dataTypes);
+                long oneAtATime = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int round = 0; round < rounds; ++round)
+                    api.DTWAIN_GetCapValuesBatch(source, caps, getTypes, containerTypes, dataTypes);
+                long batch = System.nanoTime() - start;
+
+                System.out.println("One at a time: " + oneAtATime / rounds / 1000 + " us per round");
+                System.out.println("Batch:         " + batch / rounds / 1000 + " us per round");
+            }
+            twSession.stop();
+        }
+        catch (Exception e)
+        {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private static void getOneAtATime(DTwainJavaAPI api, long source, int[] caps, int[] getTypes,
+                                      int[] containerTypes, int[] dataTypes) throws Exception
+    {
+        List<Object> values = new ArrayList<>();
+        for (int i = 0; i < caps.length; ++i)
+        {
+            values.clear();
+            api.DTWAIN_GetCapValuesEx2(source, caps[i], getTypes[i], containerTypes[i], dataTypes[i], values);
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        CapabilityBatchBenchmark benchmark = new CapabilityBatchBenchmark();
+        benchmark.run(args.length > 0 ? Integer.parseInt(args[0]) : 100);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dtwain.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+import com.dtwain.demos.ConsoleJNISelector;
+import com.dynarithmic.twain.highlevel.TwainSession;
+import com.dynarithmic.twain.highlevel.TwainSource;
+import com.dynarithmic.twain.highlevel.capabilityinterface.CapabilityBatch;
+import com.dynarithmic.twain.highlevel.capabilityinterface.CapabilityInterface;
+
+/**
+ * Measures the bytes allocated by the thread getting the MSG_GET values of every capability the selected source
+ * supports: as one CapabilityBatch with an empty cache, as the same batch answered from the cache, as typed values
+ * (getTypedCapValues) and as lists of objects (getCapValues) answered from the cache.  Needs a JVM that reports the
+ * memory allocated by a thread.  The number of rounds can be given as the first argument.
+ */
+public class CapabilityCacheAllocationBenchmark
+{
+    private interface Round
+    {
+        void run() throws Exception;
+    }
+
+    public void run(int rounds)
+    {
+        // Allows runtime choice of choosing which JNI DLL is loaded.
+        ConsoleJNISelector.setJNIVersion(getClass().getSimpleName());
+
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if ( !(bean instanceof com.sun.management.ThreadMXBean) ||
+             !((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemorySupported() )
+        {
+            System.out.println("This JVM does not report the memory allocated by a thread");
+            return;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean)bean;
+        allocations.setThreadAllocatedMemoryEnabled(true);
+
+        try
+        {
+            TwainSession twSession = new TwainSession();
+            TwainSource twainSource = twSession.selectSource();
+            if ( twainSource.isOpened() )
+            {
+                CapabilityInterface ci = twainSource.getCapabilityInterface();
+                List<Integer> supported = ci.getSupportedCaps(ci.get());
+                CapabilityBatch batch = new CapabilityBatch();
+                for (int cap : supported)
+                    batch.add(cap, ci.get());
+                System.out.println(supported.size() + " capabilities");
+
+                measure(allocations, "Batch, empty cache", rounds, () ->
+                {
+                    ci.clearCache();
+                    ci.getCapValues(batch);
+                });
+                ci.getCapValues(batch);
+                measure(allocations, "Batch, from cache", rounds, () -> ci.getCapValues(batch));
+                measure(allocations, "Typed values, from cache", rounds, () ->
+                {
+                    for (int cap : supported)
+                        ci.getTypedCapValues(cap, ci.get());
+                });
+                measure(allocations, "Object lists, from cache", rounds, () ->
+                {
+                    for (int cap : supported)
+                        ci.getCapValues(cap, ci.get());
+                });
+            }
+            twSession.stop();
+        }
+        catch (Exception e)
+        {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private static void measure(com.sun.management.ThreadMXBean allocations, String name, int rounds, Round round) throws Exception
+    {
+        long threadId = Thread.currentThread().getId();
+        // Warm up, so that class loading is not counted
+        round.run();
+        long start = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < rounds; ++i)
+            round.run();
+        long allocated = allocations.getThreadAllocatedBytes(threadId) - start;
+        System.out.println(name + ": " + allocated / rounds + " bytes per round");
+    }
+
+    public static void main(String[] args)
+    {
+        CapabilityCacheAllocationBenchmark benchmark = new CapabilityCacheAllocationBenchmark();
+        benchmark.run(args.length > 0 ? Integer.parseInt(args[0]) : 100);
+    }
+}
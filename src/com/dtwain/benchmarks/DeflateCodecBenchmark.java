@@ -0,0 +1,237 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dtwain.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.dynarithmic.twain.exceptions.DTwainRuntimeException;
+import com.dynarithmic.twain.highlevel.DeflateImageStorageCodec;
+
+/**
+ * Measures storing and reading back pages with DeflateImageStorageCodec, which reuses pooled Deflater and
+ * Inflater objects and a per-thread scratch buffer, against creating a new Deflater, Inflater and output
+ * stream for every page.  No TWAIN source is needed: the pages are generated, and look like a scanned text
+ * page (mostly white, with short dark runs and some noise).  Reports the time and the bytes allocated per
+ * page, and the pages per second when several threads store pages at once, as the session's encoder pool
+ * does.  Arguments (all optional): number of pages, number of threads, page width, page height.
+ */
+public class DeflateCodecBenchmark
+{
+    private interface PageCodec
+    {
+        byte[] encode(byte[] data);
+        byte[] decode(byte[] stored, int originalLength) throws Exception;
+    }
+
+    // What storing a page cost before the codec objects were pooled
+    private static class UnpooledCodec implements PageCodec
+    {
+        private final int level;
+
+        UnpooledCodec(int level)
+        {
+            this.level = level;
+        }
+
+        @Override
+        public byte[] encode(byte[] data)
+        {
+            Deflater compressor = new Deflater(level);
+            try
+            {
+                compressor.setInput(data);
+                compressor.finish();
+                ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4);
+                byte[] buffer = new byte[8192];
+                while (!compressor.finished())
+                {
+                    int count = compressor.deflate(buffer);
+                    out.write(buffer, 0, count);
+                }
+                return out.toByteArray();
+            }
+            finally
+            {
+                compressor.end();
+            }
+        }
+
+        @Override
+        public byte[] decode(byte[] stored, int originalLength) throws DataFormatException
+        {
+            Inflater decompressor = new Inflater();
+            try
+            {
+                decompressor.setInput(stored);
+                byte[] out = new byte[originalLength];
+                int total = 0;
+                while (total < originalLength && !decompressor.finished())
+                    total += decompressor.inflate(out, total, originalLength - total);
+                return out;
+            }
+            finally
+            {
+                decompressor.end();
+            }
+        }
+    }
+
+    private static class PooledCodec implements PageCodec
+    {
+        private final DeflateImageStorageCodec codec;
+
+        PooledCodec(int level)
+        {
+            codec = new DeflateImageStorageCodec(level);
+        }
+
+        @Override
+        public byte[] encode(byte[] data)
+        {
+            return codec.encode(data);
+        }
+
+        @Override
+        public byte[] decode(byte[] stored, int originalLength) throws DTwainRuntimeException
+        {
+            return codec.decode(stored, originalLength);
+        }
+    }
+
+    public void run(int pages, int threads, int width, int height) throws Exception
+    {
+        byte[] page = createPage(width, height);
+        System.out.println("Page of " + width + " x " + height + " 8-bit pixels (" + page.length + " bytes), " +
+                           pages + " pages, " + threads + " threads");
+        for (int level : new int[] { Deflater.BEST_SPEED, 6 })
+        {
+            measure("Unpooled, level " + level, new UnpooledCodec(level), page, pages, threads);
+            measure("Pooled,   level " + level, new PooledCodec(level), page, pages, threads);
+        }
+    }
+
+    private static void measure(String name, PageCodec codec, byte[] page, int pages, int threads) throws Exception
+    {
+        // Warm up, so that class loading and compilation are not counted
+        for (int i = 0; i < 5; ++i)
+            roundTrip(codec, page);
+
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        String allocated = "";
+        if ( bean instanceof com.sun.management.ThreadMXBean &&
+             ((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemorySupported() )
+        {
+            com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean)bean;
+            allocations.setThreadAllocatedMemoryEnabled(true);
+            long threadId = Thread.currentThread().getId();
+            long start = allocations.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < pages; ++i)
+                roundTrip(codec, page);
+            allocated = ", " + (allocations.getThreadAllocatedBytes(threadId) - start) / pages + " bytes allocated per page";
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < pages; ++i)
+            roundTrip(codec, page);
+        long singleThread = System.nanoTime() - start;
+
+        Thread[] workers = new Thread[threads];
+        Exception[] failure = new Exception[1];
+        start = System.nanoTime();
+        for (int t = 0; t < threads; ++t)
+        {
+            workers[t] = new Thread(() ->
+            {
+                try
+                {
+                    for (int i = 0; i < pages; ++i)
+                        roundTrip(codec, page);
+                }
+                catch (Exception e)
+                {
+                    failure[0] = e;
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers)
+            worker.join();
+        long multiThread = System.nanoTime() - start;
+        if ( failure[0] != null )
+            throw failure[0];
+
+        System.out.println(name + ": " + String.format("%.2f", singleThread / 1e6 / pages) + " ms per page" + allocated +
+                           ", " + String.format("%.1f", (double)pages * threads * 1e9 / multiThread) +
+                           " pages/s with " + threads + " threads");
+    }
+
+    private static void roundTrip(PageCodec codec, byte[] page) throws Exception
+    {
+        byte[] stored = codec.encode(page);
+        byte[] decoded = codec.decode(stored, page.length);
+        if ( decoded.length != page.length || decoded[decoded.length / 2] != page[page.length / 2] )
+            throw new IllegalStateException("Page was not decoded correctly");
+    }
+
+    private static byte[] createPage(int width, int height)
+    {
+        Random random = new Random(1);
+        byte[] page = new byte[width * height];
+        Arrays.fill(page, (byte)0xF0);
+        for (int y = 0; y < height; ++y)
+        {
+            int row = y * width;
+            // Lines of text every 40 rows, 24 rows high
+            if ( y % 40 < 24 )
+            {
+                int x = 0;
+                while (x < width)
+                {
+                    x += 2 + random.nextInt(12);
+                    int run = 1 + random.nextInt(6);
+                    for (int i = 0; i < run && x < width; ++i, ++x)
+                        page[row + x] = (byte)random.nextInt(64);
+                }
+            }
+            // Scanner noise
+            for (int i = 0; i < width / 64; ++i)
+                page[row + random.nextInt(width)] = (byte)(0xE0 + random.nextInt(32));
+        }
+        return page;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        DeflateCodecBenchmark benchmark = new DeflateCodecBenchmark();
+        benchmark.run(args.length > 0 ? Integer.parseInt(args[0]) : 50,
+                      args.length > 1 ? Integer.parseInt(args[1]) : Math.max(2, Runtime.getRuntime().availableProcessors()),
+                      args.length > 2 ? Integer.parseInt(args[2]) : 1700,
+                      args.length > 3 ? Integer.parseInt(args[3]) : 2200);
+    }
+}
@@ -1461,6 +1461,75 @@ public class DTwainConstants
         }
     }
 
+    // How acquired pages are held in memory after the transfer.  For the
+    // DEFLATE types, the value is the zlib compression level.
+    public enum ImageStorageCodecType implements OrdinalEnum
+    {
+        RAW(0),
+        DEFLATE_1(1),
+        DEFLATE_2(2),
+        DEFLATE_3(3),
+        DEFLATE_BEST(9),
+        BLOCK_LZ(100),
+        RLE(101);
+
+        private final int enumValue;
+
+        ImageStorageCodecType(int i)
+        {
+            enumValue = i;
+        }
+
+        public int value() { return enumValue; }
+        private static final Map<Integer, ImageStorageCodecType> map = OrdinalEnum.getValues(ImageStorageCodecType.class);
+        public static ImageStorageCodecType from(int i)
+        {
+            return map.get(i);
+        }
+    }
+
+    public enum DuplicatePageAction implements OrdinalEnum
+    {
+        NONE(0),
+        FLAG(1),
+        DISCARD(2);
+
+        private final int enumValue;
+
+        DuplicatePageAction(int i)
+        {
+            enumValue = i;
+        }
+
+        public int value() { return enumValue; }
+        private static final Map<Integer, DuplicatePageAction> map = OrdinalEnum.getValues(DuplicatePageAction.class);
+        public static DuplicatePageAction from(int i)
+        {
+            return map.get(i);
+        }
+    }
+
+    public enum CompressionGoal implements OrdinalEnum
+    {
+        MIN_BANDWIDTH(0),
+        MIN_CPU(1),
+        MIN_FILE_SIZE(2);
+
+        private final int enumValue;
+
+        CompressionGoal(int i)
+        {
+            enumValue = i;
+        }
+
+        public int value() { return enumValue; }
+        private static final Map<Integer, CompressionGoal> map = OrdinalEnum.getValues(CompressionGoal.class);
+        public static CompressionGoal from(int i)
+        {
+            return map.get(i);
+        }
+    }
+
 
     public static final int DTWAIN_AREASET = CapabilityOption.SET.value();
     public static final int DTWAIN_AREARESET = CapabilityOption.RESET.value();
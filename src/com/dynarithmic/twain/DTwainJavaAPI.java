@@ -498,6 +498,7 @@ public class DTwainJavaAPI
     public native String[] DTWAIN_GetCapValuesString(long Source, int capValue, int getType) throws DTwainJavaAPIException;
     public native List<Object> DTWAIN_GetCapValues(long Source, int capValue, int getType) throws DTwainJavaAPIException;
     public native boolean DTWAIN_GetCapValuesEx2(long Source, int capValue, int getType, int containerType, int nDataType, List<Object> vals) throws DTwainJavaAPIException;
+    public native Object[] DTWAIN_GetCapValuesBatch(long Source, int[] capValues, int[] getTypes, int[] containerTypes, int[] nDataTypes) throws DTwainJavaAPIException;
 
     public native int[] DTWAIN_GetCapValuesIntEx(long Source, int capValue, int getType, int containerType) throws DTwainJavaAPIException;
     public native double[] DTWAIN_GetCapValuesDoubleEx(long Source, int capValue, int getType, int containerType) throws DTwainJavaAPIException;
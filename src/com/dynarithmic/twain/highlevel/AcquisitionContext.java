@@ -0,0 +1,163 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+import com.dynarithmic.twain.DTwainConstants.DuplicatePageAction;
+import com.dynarithmic.twain.highlevel.acquirecharacteristics.ImageStorageOptions;
+
+/**
+ * Holds the settings of the acquisition currently running on a thread.  The JNI layer creates
+ * the TwainImageData objects by using the default constructor on the thread that started the
+ * acquisition, so the settings are handed to those objects through this class.
+ */
+final class AcquisitionContext
+{
+    private static final AcquisitionContext s_defaultContext =
+            new AcquisitionContext(ImageStorageCodec.from(ImageStorageOptions.defaultCodecType));
+    private static final ThreadLocal<AcquisitionContext> s_currentContext = new ThreadLocal<>();
+
+    private final ImageStorageCodec storageCodec;
+    private final boolean directBuffers;
+    private PageSpillStore pageSpillStore = null;
+    private boolean discardPages = false;
+    private Executor pageEncoder = null;
+    private DuplicatePageAction duplicatePageAction = ImageStorageOptions.defaultDuplicatePageAction;
+    private int duplicateDistance = ImageStorageOptions.defaultDuplicateDistance;
+    private final Queue<CompletableFuture<Void>> pendingEncodes = new ConcurrentLinkedQueue<>();
+
+    AcquisitionContext(ImageStorageCodec storageCodec)
+    {
+        this(storageCodec, false);
+    }
+
+    AcquisitionContext(ImageStorageCodec storageCodec, boolean directBuffers)
+    {
+        this.storageCodec = storageCodec;
+        this.directBuffers = directBuffers;
+    }
+
+    AcquisitionContext(ImageStorageOptions storageOptions)
+    {
+        this(ImageStorageCodec.from(storageOptions.getCodecType()), storageOptions.isDirectBuffersEnabled());
+        this.duplicatePageAction = storageOptions.getDuplicatePageAction();
+        this.duplicateDistance = storageOptions.getDuplicateDistance();
+    }
+
+    ImageStorageCodec getStorageCodec()
+    {
+        return storageCodec;
+    }
+
+    boolean isDirectBuffers()
+    {
+        return directBuffers;
+    }
+
+    PageSpillStore getPageSpillStore()
+    {
+        return pageSpillStore;
+    }
+
+    AcquisitionContext setPageSpillStore(PageSpillStore pageSpillStore)
+    {
+        this.pageSpillStore = pageSpillStore;
+        return this;
+    }
+
+    // When streaming, the pages have already been delivered to the TwainPageStream, so the
+    // copies the JNI layer creates at the end of the acquisition are not kept.
+    boolean isDiscardPages()
+    {
+        return discardPages;
+    }
+
+    AcquisitionContext setDiscardPages(boolean discardPages)
+    {
+        this.discardPages = discardPages;
+        return this;
+    }
+
+    DuplicatePageAction getDuplicatePageAction()
+    {
+        return duplicatePageAction;
+    }
+
+    int getDuplicateDistance()
+    {
+        return duplicateDistance;
+    }
+
+    AcquisitionContext setPageEncoder(Executor pageEncoder)
+    {
+        this.pageEncoder = pageEncoder;
+        return this;
+    }
+
+    /**
+     * @param encodeTask The task that encodes a page
+     * @return The future of the task running in the page encoder, or null if there is no page
+     * encoder, in which case the caller should run the task itself.
+     */
+    CompletableFuture<Void> encode(Runnable encodeTask)
+    {
+        if ( pageEncoder == null )
+            return null;
+        CompletableFuture<Void> future = CompletableFuture.runAsync(encodeTask, pageEncoder);
+        pendingEncodes.add(future);
+        future.whenComplete((r, e) -> pendingEncodes.remove(future));
+        return future;
+    }
+
+    /**
+     * Called when the acquisition has ended.  The spill store is closed once all pages still
+     * being encoded have been stored, without waiting for them on this thread.
+     */
+    void finish()
+    {
+        PageSpillStore spillStore = this.pageSpillStore;
+        if ( spillStore == null )
+            return;
+        CompletableFuture.allOf(pendingEncodes.toArray(new CompletableFuture<?>[0]))
+                         .whenComplete((r, e) -> spillStore.close());
+    }
+
+    static AcquisitionContext current()
+    {
+        AcquisitionContext context = s_currentContext.get();
+        return context != null ? context : s_defaultContext;
+    }
+
+    static void begin(AcquisitionContext context)
+    {
+        s_currentContext.set(context);
+    }
+
+    static void end()
+    {
+        s_currentContext.remove();
+    }
+}
@@ -0,0 +1,259 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import com.dynarithmic.twain.exceptions.DTwainJavaAPIException;
+import com.dynarithmic.twain.highlevel.acquirecharacteristics.AcquireCharacteristics;
+import com.dynarithmic.twain.highlevel.acquirecharacteristics.CompressionOptions;
+import com.dynarithmic.twain.highlevel.acquirecharacteristics.ImageTypeOptions;
+import com.dynarithmic.twain.highlevel.acquirecharacteristics.PaperHandlingOptions;
+import com.dynarithmic.twain.highlevel.acquirecharacteristics.ResolutionOptions;
+import com.dynarithmic.twain.highlevel.capabilityinterface.CapValues;
+import com.dynarithmic.twain.highlevel.capabilityinterface.CapabilityInterface;
+import com.dynarithmic.twain.highlevel.capabilityinterface.IntCapValues;
+import com.dynarithmic.twain.lowlevel.TwainConstants.CAPS;
+import com.dynarithmic.twain.lowlevel.TwainConstants.CAP_DUPLEX;
+
+/**
+ * @author Dynarithmic Software
+ * <p>The steps that prepare a source for an acquisition, compiled once from the source's AcquireCharacteristics
+ * with TwainSource.compileAcquisitionPlan(), and replayed on every acquisition.  When the plan is compiled, the
+ * pixel type, resolution, compression and duplex values of the characteristics are checked against the values
+ * the source supports, so that an unsupported value is reported before anything is acquired.</p>
+ * <p>When the plan is replayed, the capabilities are applied with OptionsApplyer, which only sends the capabilities
+ * that changed, and the DTWAIN settings (job control, blank page detection, multipage mode, JPEG quality,
+ * maximum acquisitions and the PDF options) are set again, so changes made to the characteristics after the plan
+ * was compiled are used.  If the checked values have changed, TwainSource compiles the plan again before it is
+ * replayed.  The current pixel type and compression are taken from the capability cache when they are known.</p>
+ * <p>The time taken by each step of the last replay is returned by getLastStepTime().</p>
+ */
+public class AcquisitionPlan
+{
+    public enum Step
+    {
+        APPLY_OPTIONS,
+        ACQUIRE_AREA,
+        JOB_CONTROL,
+        MANUAL_DUPLEX,
+        ACQUISITION_OPTIONS,
+        PDF_OPTIONS,
+        PIXEL_TYPE,
+        COMPRESSION
+    }
+
+    private final TwainSource source;
+    private final AcquireCharacteristics characteristics;
+    private final List<Object> checkedValues;
+    private final long compileTime;
+    private final Map<Step, Long> lastStepTimes = new EnumMap<>(Step.class);
+    private final Map<Step, Long> totalStepTimes = new EnumMap<>(Step.class);
+    private int replayCount = 0;
+
+    private AcquisitionPlan(TwainSource source, AcquireCharacteristics characteristics, long compileTime)
+    {
+        this.source = source;
+        this.characteristics = characteristics;
+        this.checkedValues = getCheckedValues(characteristics);
+        this.compileTime = compileTime;
+    }
+
+    static AcquisitionPlan compile(TwainSource source) throws DTwainJavaAPIException
+    {
+        long start = System.nanoTime();
+        AcquireCharacteristics ac = source.getAcquireCharacteristics();
+        CapabilityInterface ci = source.getCapabilityInterface();
+        List<String> errors = new ArrayList<>();
+
+        ImageTypeOptions imageType = ac.getImageTypeOptions();
+        if ( imageType.getPixelType() != ImageTypeOptions.defaultPixelType )
+            validate(ci, CAPS.ICAP_PIXELTYPE, imageType.getPixelType().ordinal(), errors);
+
+        ResolutionOptions resolution = ac.getResolutionSupportOptions();
+        if ( resolution.getXResolution() != ResolutionOptions.defaultXResolution )
+            validate(ci, CAPS.ICAP_XRESOLUTION, resolution.getXResolution(), errors);
+        if ( resolution.getYResolution() != ResolutionOptions.defaultYResolution )
+            validate(ci, CAPS.ICAP_YRESOLUTION, resolution.getYResolution(), errors);
+
+        CompressionOptions compression = ac.getCompressionSupportOptions();
+        if ( compression.getCompression() != CompressionOptions.defaultCompression )
+            validate(ci, CAPS.ICAP_COMPRESSION, compression.getCompression().ordinal(), errors);
+
+        PaperHandlingOptions paperHandling = ac.getPaperHandlingOptions();
+        if ( paperHandling.isDuplexEnabled() )
+            validateDuplex(ci, errors);
+
+        if ( !errors.isEmpty() )
+            throw new DTwainJavaAPIException("Acquisition plan cannot be used with this source: " + String.join(", ", errors));
+        return new AcquisitionPlan(source, ac, System.nanoTime() - start);
+    }
+
+    // The values compile() checks against the source
+    private static List<Object> getCheckedValues(AcquireCharacteristics ac)
+    {
+        return Arrays.asList(ac.getImageTypeOptions().getPixelType(),
+                             ac.getResolutionSupportOptions().getXResolution(),
+                             ac.getResolutionSupportOptions().getYResolution(),
+                             ac.getCompressionSupportOptions().getCompression(),
+                             ac.getPaperHandlingOptions().isDuplexEnabled());
+    }
+
+    private static void validate(CapabilityInterface ci, int cap, Object value, List<String> errors) throws DTwainJavaAPIException
+    {
+        String name = CapabilityInterface.getNameFromCap(cap);
+        if ( !ci.isCapSupported(cap) )
+        {
+            errors.add(name + " is not supported");
+            return;
+        }
+        CapValues values = ci.getTypedCapValues(cap, ci.get());
+        if ( !values.isEmpty() && !values.containsValue(value) )
+            errors.add(name + " does not support " + value);
+    }
+
+    // CAP_DUPLEXENABLED only reports the current setting, so whether the source can scan both sides
+    // is read from CAP_DUPLEX
+    private static void validateDuplex(CapabilityInterface ci, List<String> errors) throws DTwainJavaAPIException
+    {
+        if ( !ci.isDuplexSupported() )
+        {
+            errors.add("Duplex is not supported");
+            return;
+        }
+        List<Integer> duplex = ci.getDuplex(ci.get());
+        if ( duplex.isEmpty() || duplex.get(0) == CAP_DUPLEX.TWDX_NONE.ordinal() )
+            errors.add("Duplex is not supported");
+    }
+
+    /**
+     * @return true if the plan was compiled for the source and its current AcquireCharacteristics, and the pixel type,
+     * resolution, compression and duplex values checked when the plan was compiled have not changed since
+     */
+    public boolean isCompiledFor(TwainSource twainSource)
+    {
+        return twainSource == source && twainSource.getAcquireCharacteristics() == characteristics &&
+               getCheckedValues(characteristics).equals(checkedValues);
+    }
+
+    void replay() throws DTwainJavaAPIException
+    {
+        ++replayCount;
+        if ( !source.preAcquireSetup() )
+            return;
+        long start = System.nanoTime();
+        source.startApply();
+        start = recordStep(Step.APPLY_OPTIONS, start);
+        if ( !source.postAcquireSetup() )
+            return;
+        start = System.nanoTime();
+        source.setAcquireArea();
+        start = recordStep(Step.ACQUIRE_AREA, start);
+        source.setJobControl();
+        start = recordStep(Step.JOB_CONTROL, start);
+        source.setManualDuplex();
+        start = recordStep(Step.MANUAL_DUPLEX, start);
+        source.setAcquisitionOptions();
+        start = recordStep(Step.ACQUISITION_OPTIONS, start);
+        source.setPDFOptions();
+        recordStep(Step.PDF_OPTIONS, start);
+    }
+
+    /**
+     * @return The current pixel type, or -1 if it cannot be determined
+     */
+    int getCurrentPixelType() throws DTwainJavaAPIException
+    {
+        long start = System.nanoTime();
+        int pixelType = getCurrentValue(CAPS.ICAP_PIXELTYPE);
+        recordStep(Step.PIXEL_TYPE, start);
+        return pixelType;
+    }
+
+    /**
+     * @return The current compression, or -1 if it cannot be determined
+     */
+    int getCurrentCompression() throws DTwainJavaAPIException
+    {
+        long start = System.nanoTime();
+        int compression = getCurrentValue(CAPS.ICAP_COMPRESSION);
+        recordStep(Step.COMPRESSION, start);
+        return compression;
+    }
+
+    // The current value is known from the cached MSG_GET values, unless the capability was set since
+    private int getCurrentValue(int cap) throws DTwainJavaAPIException
+    {
+        CapabilityInterface ci = source.getCapabilityInterface();
+        IntCapValues values = ci.getIntCapValues(cap, ci.get());
+        if ( values.isRange() || values.getCurrentIndex() != -1 )
+            return values.getCurrent();
+        values = ci.getIntCapValues(cap, ci.getCurrent());
+        return values.isEmpty() ? -1 : values.get(0);
+    }
+
+    private long recordStep(Step step, long start)
+    {
+        long now = System.nanoTime();
+        lastStepTimes.put(step, now - start);
+        totalStepTimes.merge(step, now - start, Long::sum);
+        return now;
+    }
+
+    public AcquireCharacteristics getAcquireCharacteristics()
+    {
+        return characteristics;
+    }
+
+    /**
+     * @return Time taken to compile the plan, in nanoseconds
+     */
+    public long getCompileTime()
+    {
+        return compileTime;
+    }
+
+    public int getReplayCount()
+    {
+        return replayCount;
+    }
+
+    /**
+     * @return Time taken by the step in the last acquisition, in nanoseconds, or 0 if the step was not performed
+     */
+    public long getLastStepTime(Step step)
+    {
+        return lastStepTimes.getOrDefault(step, 0L);
+    }
+
+    /**
+     * @return Time taken by the step in all the acquisitions, in nanoseconds
+     */
+    public long getTotalStepTime(Step step)
+    {
+        return totalStepTimes.getOrDefault(step, 0L);
+    }
+}
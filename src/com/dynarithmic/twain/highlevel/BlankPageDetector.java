@@ -0,0 +1,336 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.Imaging;
+
+import com.dynarithmic.twain.exceptions.DTwainRuntimeException;
+import com.dynarithmic.twain.highlevel.acquirecharacteristics.BlankPageHandlingOptions;
+
+/**
+ * <p>Decides whether an acquired page is blank, using the page data already held by the
+ * TwainImageData, instead of handing the page back to the DTWAIN library with DTWAIN_IsDIBBlank().
+ * Since no native call is made, pages can be checked on any thread, in parallel with the acquisition.
+ * See {@link TwainPageStream#setBlankPageDetector(BlankPageDetector, boolean)}.</p>
+ * <p>A pixel is ink if its luminance is below the ink level.  Only the area inside the margins is
+ * examined, so that scanner edges and punch holes are ignored.  The page is blank if at least
+ * <i>threshold</i> percent of the examined pixels are not ink.  The check stops as soon as there is
+ * twice the ink a blank page may have.</p>
+ * <p>Uncompressed 1, 4, 8, 24 and 32 bit BMP pages are examined row by row directly from the page data.
+ * Other pages are decoded first.</p>
+ */
+public class BlankPageDetector
+{
+    private double threshold = BlankPageHandlingOptions.defaultThreshold;
+    private double marginPercent = defaultMarginPercent;
+    private int inkLevel = defaultInkLevel;
+
+    public static final double defaultMarginPercent = 5.0;
+    public static final int defaultInkLevel = 128;
+
+    /**
+     * @return The percentage of the page that must be free of ink for the page to be blank.
+     * @see #setThreshold(double)
+     */
+    public double getThreshold()
+    {
+        return threshold;
+    }
+
+    /**
+     * @param threshold The percentage of the page that must be free of ink for the page to be blank.<br>
+     * This has the same meaning as BlankPageHandlingOptions.setThreshold().  The default is 98.0.
+     * @return The current object.
+     * @see #getThreshold()
+     */
+    public BlankPageDetector setThreshold(double threshold)
+    {
+        this.threshold = threshold;
+        return this;
+    }
+
+    /**
+     * @return The percentage of the width and height ignored on each side of the page.
+     * @see #setMarginPercent(double)
+     */
+    public double getMarginPercent()
+    {
+        return marginPercent;
+    }
+
+    /**
+     * @param marginPercent The percentage of the width and height ignored on each side of the page.<br>
+     * The default is 5.0.
+     * @return The current object.
+     * @see #getMarginPercent()
+     */
+    public BlankPageDetector setMarginPercent(double marginPercent)
+    {
+        this.marginPercent = marginPercent;
+        return this;
+    }
+
+    /**
+     * @return The luminance (0 to 255) below which a pixel is ink.
+     * @see #setInkLevel(int)
+     */
+    public int getInkLevel()
+    {
+        return inkLevel;
+    }
+
+    /**
+     * @param inkLevel The luminance (0 to 255) below which a pixel is ink.  The default is 128.
+     * @return The current object.
+     * @see #getInkLevel()
+     */
+    public BlankPageDetector setInkLevel(int inkLevel)
+    {
+        this.inkLevel = inkLevel;
+        return this;
+    }
+
+    /**
+     * @param page The page to check
+     * @return The result of the check, or null if the page has no image data
+     * @throws DTwainRuntimeException if the page data cannot be decoded
+     * @throws IOException if a page that is not an uncompressed BMP cannot be read
+     * @throws ImageReadException if a page that is not an uncompressed BMP cannot be read
+     */
+    public BlankPageResult detect(TwainImageData page) throws DTwainRuntimeException, IOException, ImageReadException
+    {
+        ByteBuffer data = page.getImageBuffer();
+        if ( !data.hasRemaining() )
+            return null;
+        DibHeader header = page.getImageHeader();
+        if ( DibImageDecoder.isSupported(header) )
+        {
+            BlankPageResult result = detect(data, header);
+            if ( result != null )
+                return result;
+        }
+        BufferedImage image = Imaging.getBufferedImage(new ByteBufferInputStream(data));
+        return image != null ? detect(image) : null;
+    }
+
+    /**
+     * @param image The image to check
+     * @return The result of the check
+     */
+    public BlankPageResult detect(BufferedImage image)
+    {
+        Area area = new Area(image.getWidth(), image.getHeight());
+        int[] row = new int[area.width()];
+        for (int y = area.top; y < area.bottom; ++y)
+        {
+            image.getRGB(area.left, y, row.length, 1, row, 0, row.length);
+            int ink = 0;
+            for (int rgb : row)
+                ink += isInk((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+            if ( area.addInk(ink) )
+                break;
+        }
+        return area.getResult();
+    }
+
+    private BlankPageResult detect(ByteBuffer data, DibHeader header)
+    {
+        int width = header.getWidth();
+        int height = header.getHeight();
+        int bits = header.getBitsPerPixel();
+        int stride = header.getStride();
+        int base = data.position();
+        int offset = base + header.getPixelDataOffset();
+        if ( (long)offset + (long)stride * height > data.limit() )
+            return null;
+        byte[] pixelInk = null;
+        byte[] byteInk = null;
+        if ( bits <= 8 )
+        {
+            pixelInk = getPaletteInk(data, base, header);
+            if ( pixelInk == null )
+                return null;
+            if ( bits < 8 )
+                byteInk = getByteInk(pixelInk, bits);
+        }
+
+        // Row order does not matter when counting, so the rows are read as stored
+        Area area = new Area(width, height);
+        int left = area.left;
+        int right = area.right;
+        byte[] row = new byte[stride];
+        ByteBuffer rows = data.duplicate();
+        for (int y = area.top; y < area.bottom; ++y)
+        {
+            rows.position(offset + y * stride);
+            rows.get(row, 0, stride);
+            int ink;
+            switch (bits)
+            {
+                case 24:
+                case 32:
+                    ink = countRgbInk(row, left, right, bits / 8);
+                    break;
+                case 8:
+                    ink = 0;
+                    for (int x = left; x < right; ++x)
+                        ink += pixelInk[row[x] & 0xFF];
+                    break;
+                default:
+                    ink = countPackedInk(row, left, right, bits, pixelInk, byteInk);
+                    break;
+            }
+            if ( area.addInk(ink) )
+                break;
+        }
+        return area.getResult();
+    }
+
+    // Returns 1 for ink, 0 otherwise, without branching
+    private int isInk(int red, int green, int blue)
+    {
+        int luminance = (77 * red + 150 * green + 29 * blue) >> 8;
+        return (luminance - inkLevel) >>> 31;
+    }
+
+    private int countRgbInk(byte[] row, int left, int right, int bytesPerPixel)
+    {
+        int ink = 0;
+        int end = right * bytesPerPixel;
+        // BMP stores blue, green, red
+        for (int p = left * bytesPerPixel; p < end; p += bytesPerPixel)
+            ink += isInk(row[p + 2] & 0xFF, row[p + 1] & 0xFF, row[p] & 0xFF);
+        return ink;
+    }
+
+    private static int countPackedInk(byte[] row, int left, int right, int bits, byte[] pixelInk, byte[] byteInk)
+    {
+        int pixelsPerByte = 8 / bits;
+        int mask = (1 << bits) - 1;
+        int ink = 0;
+        int x = left;
+        // Pixels before the first whole byte
+        for (; x < right && x % pixelsPerByte != 0; ++x)
+            ink += pixelInk[((row[x / pixelsPerByte] & 0xFF) >> (8 - bits * (x % pixelsPerByte + 1))) & mask];
+        // Whole bytes are counted with one lookup each
+        int lastByte = right / pixelsPerByte;
+        for (int b = x / pixelsPerByte; b < lastByte; ++b)
+            ink += byteInk[row[b] & 0xFF];
+        x = Math.max(x, lastByte * pixelsPerByte);
+        for (; x < right; ++x)
+            ink += pixelInk[((row[x / pixelsPerByte] & 0xFF) >> (8 - bits * (x % pixelsPerByte + 1))) & mask];
+        return ink;
+    }
+
+    // 1 for each palette entry that is ink
+    private byte[] getPaletteInk(ByteBuffer data, int base, DibHeader header)
+    {
+        int paletteSize = header.getPaletteSize();
+        int paletteStart = base + DibHeader.FILE_HEADER_SIZE + header.getHeaderSize();
+        if ( paletteStart + paletteSize * 4 > base + header.getPixelDataOffset() )
+            return null;
+        // Indices past the end of the palette are treated as black
+        byte[] pixelInk = new byte[256];
+        Arrays.fill(pixelInk, (byte)1);
+        for (int i = 0; i < paletteSize; ++i)
+        {
+            int entry = paletteStart + i * 4;
+            pixelInk[i] = (byte)isInk(data.get(entry + 2) & 0xFF, data.get(entry + 1) & 0xFF, data.get(entry) & 0xFF);
+        }
+        return pixelInk;
+    }
+
+    // Number of ink pixels held in each possible byte value
+    private static byte[] getByteInk(byte[] pixelInk, int bits)
+    {
+        byte[] byteInk = new byte[256];
+        int mask = (1 << bits) - 1;
+        for (int value = 0; value < 256; ++value)
+        {
+            int ink = 0;
+            for (int shift = 0; shift < 8; shift += bits)
+                ink += pixelInk[(value >> shift) & mask];
+            byteInk[value] = (byte)ink;
+        }
+        return byteInk;
+    }
+
+    // The part of the page inside the margins, and the ink found in it so far
+    private class Area
+    {
+        final int left;
+        final int right;
+        final int top;
+        final int bottom;
+        final long totalPixels;
+        final long allowedInk;
+        long ink = 0;
+        boolean stoppedEarly = false;
+
+        Area(int width, int height)
+        {
+            int marginX = (int)(width * Math.max(0.0, marginPercent) / 100.0);
+            int marginY = (int)(height * Math.max(0.0, marginPercent) / 100.0);
+            if ( 2 * marginX >= width )
+                marginX = 0;
+            if ( 2 * marginY >= height )
+                marginY = 0;
+            left = marginX;
+            right = width - marginX;
+            top = marginY;
+            bottom = height - marginY;
+            totalPixels = (long)width() * (bottom - top);
+            allowedInk = (long)(totalPixels * Math.max(0.0, 100.0 - threshold) / 100.0);
+        }
+
+        int width()
+        {
+            return right - left;
+        }
+
+        // Returns true once there is enough ink to stop
+        boolean addInk(int rowInk)
+        {
+            ink += rowInk;
+            stoppedEarly = ink > 2 * allowedInk;
+            return stoppedEarly;
+        }
+
+        BlankPageResult getResult()
+        {
+            boolean blank = ink <= allowedInk;
+            double confidence;
+            if ( allowedInk == 0 )
+                confidence = 1.0;
+            else
+                confidence = Math.min(1.0, (double)Math.abs(ink - allowedInk) / allowedInk);
+            double coverage = totalPixels == 0 ? 0.0 : ink * 100.0 / totalPixels;
+            return new BlankPageResult(blank, coverage, confidence, stoppedEarly);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel;
+
+/**
+ * The outcome of checking a page with a {@link BlankPageDetector}.
+ */
+public class BlankPageResult
+{
+    private final boolean blank;
+    private final double inkCoverage;
+    private final double confidence;
+    private final boolean stoppedEarly;
+
+    BlankPageResult(boolean blank, double inkCoverage, double confidence, boolean stoppedEarly)
+    {
+        this.blank = blank;
+        this.inkCoverage = inkCoverage;
+        this.confidence = confidence;
+        this.stoppedEarly = stoppedEarly;
+    }
+
+    public boolean isBlank()
+    {
+        return blank;
+    }
+
+    /**
+     * @return Percentage (0 to 100) of the examined area, inside the margins, covered by ink.  If the
+     * check stopped early, this is the coverage found up to that point.
+     */
+    public double getInkCoverage()
+    {
+        return inkCoverage;
+    }
+
+    /**
+     * @return How far, from 0.0 to 1.0, the ink coverage is from the threshold.  Pages with a
+     * confidence near 0.0 are close to the threshold, and may need to be checked by other means.
+     */
+    public double getConfidence()
+    {
+        return confidence;
+    }
+
+    /**
+     * @return true if the check stopped before examining the whole page, because enough ink was
+     * found to decide that the page is not blank.
+     */
+    public boolean isStoppedEarly()
+    {
+        return stoppedEarly;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("blank=%b, inkCoverage=%.3f%%, confidence=%.2f, stoppedEarly=%b",
+                             blank, inkCoverage, confidence, stoppedEarly);
+    }
+}
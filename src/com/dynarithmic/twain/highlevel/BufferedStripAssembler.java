@@ -0,0 +1,337 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.dynarithmic.twain.DTwainConstants.CompressionType;
+import com.dynarithmic.twain.DTwainConstants.PixelType;
+import com.dynarithmic.twain.lowlevel.TW_IMAGEINFO;
+import com.dynarithmic.twain.lowlevel.TwainConstants.ICAP_PIXELFLAVOR;
+
+/**
+ * <p>Assembles the strips of a buffered transfer (AcquireType.BUFFERED, with
+ * BufferedTransferInfo.setHandleStrips(true)) into one page, held in a single direct (off-heap)
+ * buffer.  Each strip is copied once, to its place in the page given by the strip's
+ * x and y offsets and bytes per row, so the strips never have to be concatenated on the heap.</p>
+ * <p>Uncompressed BW, gray and RGB pages of 1, 4, 8 or 24 bits per pixel are assembled as a
+ * top-down BMP image, so {@link #toImageData()} returns a page that can be used like any other
+ * page acquired to memory.  BW and gray pages are given a gray palette following the pixel flavor
+ * (see {@link #setPixelFlavor(ICAP_PIXELFLAVOR)}).  The palette of a palette page is not known, so the strips
+ * of palette pages are only available from {@link #getStripBuffer()}.  For compressed transfers, the strips are appended one after the other,
+ * giving the compressed image (for example, a JPEG image) as sent by the device.</p>
+ * <pre>
+ *   public int onTransferStripDone(TwainSource source)
+ *   {
+ *       assembler.addStrip(source.getBufferedStripInfo());
+ *       return 1;
+ *   }
+ *   public int onTransferDone(TwainSource source)
+ *   {
+ *       pages.add(assembler.toImageData());
+ *       return 1;
+ *   }
+ * </pre>
+ * <p>The strips are sent on the thread running the acquisition, and this class is not thread safe.</p>
+ */
+public class BufferedStripAssembler
+{
+    static final int PALETTE_ENTRY_SIZE = 4;
+
+    private ByteBuffer region = null;
+    private boolean compressed = false;
+    private boolean swapRedBlue = false;
+    private boolean dibLayout = false;
+    private int width = 0;
+    private int height = 0;
+    private int bitsPerPixel = 0;
+    private int stride = 0;
+    private int pixelDataOffset = 0;
+    private int rowsAssembled = 0;
+    private int bytesAssembled = 0;
+    private int stripCount = 0;
+    private TW_IMAGEINFO imageInfo = null;
+    private ICAP_PIXELFLAVOR pixelFlavor = ICAP_PIXELFLAVOR.TWPF_CHOCOLATE;
+
+    public BufferedStripAssembler()
+    {}
+
+    /**
+     * @param pixelFlavor The pixel flavor (ICAP_PIXELFLAVOR) of the source.  With TWPF_CHOCOLATE (the default), a
+     * pixel value of 0 is black, and with TWPF_VANILLA, 0 is white.
+     * @return The current object.
+     */
+    public BufferedStripAssembler setPixelFlavor(ICAP_PIXELFLAVOR pixelFlavor)
+    {
+        this.pixelFlavor = pixelFlavor;
+        return this;
+    }
+
+    public ICAP_PIXELFLAVOR getPixelFlavor()
+    {
+        return pixelFlavor;
+    }
+
+    /**
+     * Copies a strip into the page.  The first strip of a page sets up the page from the strip's image information.
+     * @param strip The strip, as returned by TwainSource.getBufferedStripInfo()
+     */
+    public void addStrip(BufferedStripInfo strip)
+    {
+        byte[] data = strip.getBufferedStripData();
+        int length = Math.min(strip.getBytesWritten(), data.length);
+        if ( length <= 0 )
+            return;
+        if ( region == null )
+            begin(strip);
+        ++stripCount;
+        if ( compressed )
+        {
+            ensureCapacity((long)bytesAssembled + length);
+            put(region, bytesAssembled, data, 0, length);
+            bytesAssembled += length;
+            return;
+        }
+
+        int srcBytesPerRow = strip.getBytesPerRow() > 0 ? strip.getBytesPerRow() : stride;
+        int rows = strip.getRowsInBuffer() > 0 ? strip.getRowsInBuffer() : length / srcBytesPerRow;
+        int columns = strip.getColumnsInBuffer() > 0 ? strip.getColumnsInBuffer() : width;
+        int destX = (int)((long)strip.getxOffsetInImage() * bitsPerPixel / 8);
+        int rowBytes = Math.min(Math.min(srcBytesPerRow, (int)(((long)columns * bitsPerPixel + 7) / 8)), stride - destX);
+        int y = strip.getyOffsetInImage();
+        if ( rowBytes <= 0 || y < 0 )
+            return;
+        ensureCapacity(pixelDataOffset + (long)(y + rows) * stride);
+        for (int row = 0; row < rows; ++row)
+        {
+            int src = row * srcBytesPerRow;
+            if ( src + rowBytes > length )
+                break;
+            put(region, pixelDataOffset + (y + row) * stride + destX, data, src, rowBytes);
+            rowsAssembled = Math.max(rowsAssembled, y + row + 1);
+        }
+        bytesAssembled = pixelDataOffset + rowsAssembled * stride;
+    }
+
+    private void begin(BufferedStripInfo strip)
+    {
+        imageInfo = strip.getImageInfo() != null ? strip.getImageInfo().getImageInfo() : new TW_IMAGEINFO();
+        width = imageInfo.getImageWidth().getValue();
+        height = imageInfo.getImageLength().getValue();
+        bitsPerPixel = imageInfo.getBitsPerPixel().getValue();
+        compressed = imageInfo.getCompression().getValue() != CompressionType.NONE.value() || width <= 0 || bitsPerPixel <= 0;
+        rowsAssembled = 0;
+        bytesAssembled = 0;
+        stripCount = 0;
+        if ( compressed )
+        {
+            dibLayout = false;
+            pixelDataOffset = 0;
+            region = ByteBuffer.allocateDirect(Math.max(strip.getBufferSize(), strip.getBytesWritten()) * 4);
+            return;
+        }
+        int pixelType = imageInfo.getPixelType().getValue();
+        dibLayout = ((bitsPerPixel == 1 || bitsPerPixel == 4 || bitsPerPixel == 8) && pixelType != PixelType.PALETTE.value()) ||
+                    (bitsPerPixel == 24 && (pixelType == PixelType.RGB.value() || pixelType == PixelType.BGR.value()));
+        swapRedBlue = bitsPerPixel == 24 && pixelType == PixelType.RGB.value();
+        stride = (int)((((long)width * bitsPerPixel + 31) / 32) * 4);
+        int paletteSize = bitsPerPixel <= 8 ? 1 << bitsPerPixel : 0;
+        pixelDataOffset = dibLayout ? DibHeader.FILE_HEADER_SIZE + DibHeader.INFO_HEADER_SIZE + paletteSize * PALETTE_ENTRY_SIZE : 0;
+        // The image length may be unknown (-1) until the last strip arrives
+        int rows = height > 0 ? height : Math.max(1, strip.getRowsInBuffer()) * 8;
+        region = ByteBuffer.allocateDirect((int)Math.min(Integer.MAX_VALUE - 8, pixelDataOffset + (long)rows * stride));
+    }
+
+    private void ensureCapacity(long needed)
+    {
+        if ( needed <= region.capacity() )
+            return;
+        if ( needed > Integer.MAX_VALUE - 8 )
+            throw new IllegalStateException("Page is too large to assemble: " + needed + " bytes");
+        long newCapacity = Math.min(Integer.MAX_VALUE - 8, Math.max(needed, region.capacity() + (long)region.capacity() / 2));
+        ByteBuffer larger = ByteBuffer.allocateDirect((int)newCapacity);
+        ByteBuffer assembled = region.duplicate();
+        assembled.position(0).limit(bytesAssembled);
+        larger.put(assembled);
+        larger.clear();
+        region = larger;
+    }
+
+    /**
+     * @return true if at least one strip of the current page has been added
+     */
+    public boolean isStarted()
+    {
+        return region != null;
+    }
+
+    public int getStripCount()
+    {
+        return stripCount;
+    }
+
+    /**
+     * @return Number of rows of the current page assembled so far.  Always 0 for compressed transfers.
+     */
+    public int getRowsAssembled()
+    {
+        return rowsAssembled;
+    }
+
+    /**
+     * @return The image information sent with the first strip of the current page, or null
+     */
+    public TW_IMAGEINFO getImageInfo()
+    {
+        return imageInfo;
+    }
+
+    /**
+     * @return A read-only view of the strip data assembled so far.  For uncompressed pages, these are the pixel
+     * rows, top row first, each padded to a multiple of 4 bytes.  Red and blue are not yet swapped for RGB pages.
+     * For compressed transfers, this is the compressed data.  Returns null if no strip has been added.
+     */
+    public ByteBuffer getStripBuffer()
+    {
+        if ( region == null )
+            return null;
+        ByteBuffer view = region.asReadOnlyBuffer();
+        view.position(pixelDataOffset).limit(bytesAssembled);
+        return view.slice();
+    }
+
+    /**
+     * Completes the current page, and starts a new one.  The page uses the assembled buffer as its storage,
+     * so no copy is made.
+     * @return The page, or null if no strip has been added, or the uncompressed pixel format cannot be
+     * held as a BMP image.  In the latter case, use {@link #getStripBuffer()} before calling this method.
+     */
+    public TwainImageData toImageData()
+    {
+        if ( region == null || (!compressed && !dibLayout) )
+        {
+            reset();
+            return null;
+        }
+        ByteBuffer page = region;
+        if ( !compressed )
+        {
+            writeHeader(page);
+            if ( swapRedBlue )
+                swapRedBlue(page);
+        }
+        page.position(0).limit(bytesAssembled);
+        reset();
+        return TwainImageData.wrap(page);
+    }
+
+    /**
+     * Discards the current page.
+     */
+    public void reset()
+    {
+        region = null;
+        imageInfo = null;
+        rowsAssembled = 0;
+        bytesAssembled = 0;
+        stripCount = 0;
+    }
+
+    private void writeHeader(ByteBuffer page)
+    {
+        writeDibHeader(page, imageInfo, width, rowsAssembled, bitsPerPixel, pixelDataOffset, pixelFlavor);
+    }
+
+    /**
+     * Writes the file and info headers of a top-down BMP image, followed by a gray palette for pages of 8 bits or less.
+     * The palette runs from black to white for TWPF_CHOCOLATE, and from white to black for TWPF_VANILLA.
+     */
+    static void writeDibHeader(ByteBuffer page, TW_IMAGEINFO imageInfo, int width, int rows, int bitsPerPixel, int pixelDataOffset,
+                               ICAP_PIXELFLAVOR pixelFlavor)
+    {
+        ByteBuffer out = page.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int stride = (int)((((long)width * bitsPerPixel + 31) / 32) * 4);
+        int imageSize = rows * stride;
+        out.put(0, (byte)'B').put(1, (byte)'M');
+        out.putInt(2, pixelDataOffset + imageSize);
+        out.putInt(6, 0);
+        out.putInt(10, pixelDataOffset);
+        int info = DibHeader.FILE_HEADER_SIZE;
+        out.putInt(info, DibHeader.INFO_HEADER_SIZE);
+        out.putInt(info + 4, width);
+        // A negative height marks the rows as stored top-down
+        out.putInt(info + 8, -rows);
+        out.putShort(info + 12, (short)1);
+        out.putShort(info + 14, (short)bitsPerPixel);
+        out.putInt(info + 16, DibHeader.BI_RGB);
+        out.putInt(info + 20, imageSize);
+        out.putInt(info + 24, (int)Math.round(imageInfo.getXResolution().getValue() / 0.0254));
+        out.putInt(info + 28, (int)Math.round(imageInfo.getYResolution().getValue() / 0.0254));
+        int paletteSize = bitsPerPixel <= 8 ? 1 << bitsPerPixel : 0;
+        out.putInt(info + 32, paletteSize);
+        out.putInt(info + 36, 0);
+        // Gray ramp for BW and gray pages
+        int palette = info + DibHeader.INFO_HEADER_SIZE;
+        for (int i = 0; i < paletteSize; ++i)
+        {
+            int level = paletteSize == 1 ? 0 : i * 255 / (paletteSize - 1);
+            if ( pixelFlavor == ICAP_PIXELFLAVOR.TWPF_VANILLA )
+                level = 255 - level;
+            out.putInt(palette + i * PALETTE_ENTRY_SIZE, level << 16 | level << 8 | level);
+        }
+    }
+
+    // Absolute bulk get and put.  ByteBuffer only has these from Java 13, so a duplicate is positioned instead.
+    static void get(ByteBuffer buffer, int index, byte[] dst, int offset, int length)
+    {
+        ByteBuffer view = buffer.duplicate();
+        view.position(index);
+        view.get(dst, offset, length);
+    }
+
+    static void put(ByteBuffer buffer, int index, byte[] src, int offset, int length)
+    {
+        ByteBuffer view = buffer.duplicate();
+        view.position(index);
+        view.put(src, offset, length);
+    }
+
+    // TWAIN sends red, green, blue, while BMP stores blue, green, red
+    private void swapRedBlue(ByteBuffer page)
+    {
+        int rowBytes = width * 3;
+        byte[] row = new byte[rowBytes];
+        for (int y = 0; y < rowsAssembled; ++y)
+        {
+            int start = pixelDataOffset + y * stride;
+            get(page, start, row, 0, rowBytes);
+            for (int p = 0; p < rowBytes; p += 3)
+            {
+                byte red = row[p];
+                row[p] = row[p + 2];
+                row[p + 2] = red;
+            }
+            put(page, start, row, 0, rowBytes);
+        }
+    }
+}
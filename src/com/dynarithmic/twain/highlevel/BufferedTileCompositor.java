@@ -0,0 +1,452 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.dynarithmic.twain.DTwainConstants.CompressionType;
+import com.dynarithmic.twain.DTwainConstants.PixelType;
+import com.dynarithmic.twain.exceptions.DTwainJavaAPIException;
+import com.dynarithmic.twain.lowlevel.TW_IMAGEINFO;
+import com.dynarithmic.twain.lowlevel.TW_IMAGEMEMXFER;
+import com.dynarithmic.twain.lowlevel.TwainConstants.ICAP_PIXELFLAVOR;
+
+/**
+ * <p>Builds a page from the tiles of a buffered transfer (AcquireType.BUFFERED, with
+ * BufferedTransferInfo.setHandleTiles(true)).  The page is allocated once, as a top-down BMP image in a
+ * direct (off-heap) buffer, when the first tile arrives, and each tile is copied straight to its place
+ * in the page.  If an Executor is given, the tiles are copied on the Executor, and tiles that do not
+ * overlap are copied at the same time.  Tiles that overlap a tile still being copied wait for it.</p>
+ * <p>The page completes once its whole area has been covered by tiles, or when {@link #finish()} is called,
+ * whichever comes first.  While the page is being built, {@link #renderPreview(int, int)} gives a reduced
+ * image of the tiles copied so far, for showing the progress of large format scans.</p>
+ * <pre>
+ *   public int onTransferTileDone(TwainSource source)
+ *   {
+ *       compositor.addTile(source);
+ *       return 1;
+ *   }
+ *   public int onTransferDone(TwainSource source)
+ *   {
+ *       compositor.finish().thenAccept(page -&gt; pages.add(page));
+ *       return 1;
+ *   }
+ * </pre>
+ * <p>Uncompressed BW, gray and RGB pages of 1, 4, 8 or 24 bits per pixel are supported.</p>
+ */
+public class BufferedTileCompositor
+{
+    /**
+     * Completes with the page once all of its tiles have been copied.
+     */
+    public static class PageCompleteFuture extends CompletableFuture<TwainImageData>
+    {
+        private final BufferedTileCompositor compositor;
+        private final long area;
+
+        private PageCompleteFuture(BufferedTileCompositor compositor, long area)
+        {
+            this.compositor = compositor;
+            this.area = area;
+        }
+
+        /**
+         * @return Fraction (0.0 to 1.0) of the page covered by the tiles copied so far
+         */
+        public double getCoverage()
+        {
+            if ( isDone() )
+                return 1.0;
+            return area > 0 ? Math.min(1.0, (double)compositor.pixelsPlaced.get() / area) : 0.0;
+        }
+    }
+
+    // A tile being copied, in bytes across and rows down
+    private static class Placement
+    {
+        private final int left;
+        private final int right;
+        private final int top;
+        private final int bottom;
+        private CompletableFuture<Void> copied;
+
+        private Placement(int left, int right, int top, int bottom)
+        {
+            this.left = left;
+            this.right = right;
+            this.top = top;
+            this.bottom = bottom;
+        }
+
+        private boolean overlaps(Placement other)
+        {
+            return left < other.right && other.left < right && top < other.bottom && other.top < bottom;
+        }
+    }
+
+    private final Executor executor;
+    private ByteBuffer region = null;
+    private PageCompleteFuture pageComplete = null;
+    private TW_IMAGEINFO imageInfo = null;
+    private int width = 0;
+    private int height = 0;
+    private int bitsPerPixel = 0;
+    private int stride = 0;
+    private int pixelDataOffset = 0;
+    private boolean swapRedBlue = false;
+    private final AtomicLong pixelsPlaced = new AtomicLong();
+    private RowCoverage coverage = null;
+    private final List<Placement> pending = new ArrayList<>();
+    private final List<Rectangle> completedTiles = new ArrayList<>();
+
+    /**
+     * Copies the tiles on the thread adding them.
+     */
+    public BufferedTileCompositor()
+    {
+        this(Runnable::run);
+    }
+
+    /**
+     * @param executor Executor used to copy the tiles
+     */
+    public BufferedTileCompositor(Executor executor)
+    {
+        this.executor = executor;
+    }
+
+    /**
+     * Starts a new page.  Any page still being built is completed with the tiles copied so far.
+     * @param info The image information of the page, as returned by TwainSource.getAcquiredImageInfo()
+     * @return The future that completes with the page
+     */
+    public synchronized PageCompleteFuture begin(TwainImageInfo info)
+    {
+        if ( region != null )
+            finish();
+        imageInfo = info != null ? info.getImageInfo() : new TW_IMAGEINFO();
+        width = imageInfo.getImageWidth().getValue();
+        height = imageInfo.getImageLength().getValue();
+        bitsPerPixel = imageInfo.getBitsPerPixel().getValue();
+        int pixelType = imageInfo.getPixelType().getValue();
+        if ( width <= 0 || height <= 0 )
+            throw new IllegalStateException("Tiles cannot be placed in a page of unknown size");
+        if ( imageInfo.getCompression().getValue() != CompressionType.NONE.value() )
+            throw new IllegalStateException("Compressed tiles are not supported");
+        if ( pixelType == PixelType.PALETTE.value() )
+            throw new IllegalStateException("Palette tiles are not supported");
+        if ( !(bitsPerPixel == 1 || bitsPerPixel == 4 || bitsPerPixel == 8 ||
+              (bitsPerPixel == 24 && (pixelType == PixelType.RGB.value() || pixelType == PixelType.BGR.value()))) )
+            throw new IllegalStateException("Tiles of " + bitsPerPixel + " bits per pixel are not supported");
+        swapRedBlue = bitsPerPixel == 24 && pixelType == PixelType.RGB.value();
+        stride = (int)((((long)width * bitsPerPixel + 31) / 32) * 4);
+        int paletteSize = bitsPerPixel <= 8 ? 1 << bitsPerPixel : 0;
+        pixelDataOffset = DibHeader.FILE_HEADER_SIZE + DibHeader.INFO_HEADER_SIZE + paletteSize * BufferedStripAssembler.PALETTE_ENTRY_SIZE;
+        long size = pixelDataOffset + (long)height * stride;
+        if ( size > Integer.MAX_VALUE - 8 )
+            throw new IllegalStateException("Page is too large to assemble: " + size + " bytes");
+        region = ByteBuffer.allocateDirect((int)size);
+        // The header is written first, so the page can be rendered while the tiles arrive
+        BufferedStripAssembler.writeDibHeader(region, imageInfo, width, height, bitsPerPixel, pixelDataOffset,
+                                              ICAP_PIXELFLAVOR.TWPF_CHOCOLATE);
+        pixelsPlaced.set(0);
+        coverage = new RowCoverage(height);
+        completedTiles.clear();
+        pageComplete = new PageCompleteFuture(this, (long)width * height);
+        return pageComplete;
+    }
+
+    /**
+     * Reads the tile just transferred from the source, and adds it to the page.  Call this from
+     * TwainCallback.onTransferTileDone().  The page is started if this is its first tile.
+     * @param source The source transferring the tiles
+     * @return The future that completes once the tile has been copied
+     * @throws DTwainJavaAPIException if the tile or image information cannot be read
+     */
+    public CompletableFuture<Void> addTile(TwainSource source) throws DTwainJavaAPIException
+    {
+        synchronized (this)
+        {
+            if ( region == null )
+                begin(source.getAcquiredImageInfo());
+        }
+        return addTile(source.getBufferedTileInfo());
+    }
+
+    /**
+     * Adds a tile to the current page.
+     * @param tile The tile
+     * @return The future that completes once the tile has been copied
+     */
+    public CompletableFuture<Void> addTile(BufferedTileInfo tile)
+    {
+        TW_IMAGEMEMXFER info = tile.getInfo();
+        byte[] data = tile.getTileData();
+        int x = (int)info.getXOffset().getValue();
+        int y = (int)info.getYOffset().getValue();
+        int columns = Math.min((int)info.getColumns().getValue(), width - x);
+        int rows = Math.min((int)info.getRows().getValue(), height - y);
+        int srcBytesPerRow = (int)info.getBytesPerRow().getValue();
+        int length = data != null ? Math.min((int)info.getBytesWritten().getValue(), data.length) : 0;
+        Placement placement;
+        synchronized (this)
+        {
+            if ( region == null )
+                throw new IllegalStateException("No page has been started");
+            if ( length <= 0 || columns <= 0 || rows <= 0 || x < 0 || y < 0 )
+                return CompletableFuture.completedFuture(null);
+            int left = (int)((long)x * bitsPerPixel / 8);
+            int right = (int)(((long)(x + columns) * bitsPerPixel + 7) / 8);
+            placement = new Placement(left, right, y, y + rows);
+            List<CompletableFuture<Void>> before = new ArrayList<>();
+            for (Placement p : pending)
+            {
+                if ( p.overlaps(placement) )
+                    before.add(p.copied);
+            }
+            ByteBuffer page = region;
+            PageCompleteFuture future = pageComplete;
+            Rectangle bounds = new Rectangle(x, y, columns, rows);
+            Runnable copy = () -> copyTile(page, data, length, srcBytesPerRow, placement, columns, rows, future, bounds);
+            if ( before.isEmpty() )
+                placement.copied = CompletableFuture.runAsync(copy, executor);
+            else
+                placement.copied = CompletableFuture.allOf(before.toArray(new CompletableFuture<?>[0])).thenRunAsync(copy, executor);
+            if ( !placement.copied.isDone() )
+                pending.add(placement);
+        }
+        placement.copied.whenComplete((r, e) ->
+        {
+            synchronized (this)
+            {
+                pending.remove(placement);
+            }
+        });
+        return placement.copied;
+    }
+
+    private void copyTile(ByteBuffer page, byte[] data, int length, int srcBytesPerRow, Placement placement,
+                          int columns, int rows, PageCompleteFuture future, Rectangle bounds)
+    {
+        int rowBytes = Math.min(placement.right - placement.left, srcBytesPerRow);
+        byte[] row = swapRedBlue ? new byte[rowBytes] : null;
+        for (int r = 0; r < rows; ++r)
+        {
+            int src = r * srcBytesPerRow;
+            if ( src + rowBytes > length )
+                break;
+            int dest = pixelDataOffset + (placement.top + r) * stride + placement.left;
+            if ( row == null )
+                BufferedStripAssembler.put(page, dest, data, src, rowBytes);
+            else
+            {
+                // TWAIN sends red, green, blue, while BMP stores blue, green, red
+                System.arraycopy(data, src, row, 0, rowBytes);
+                for (int p = 0; p + 2 < rowBytes; p += 3)
+                {
+                    byte red = row[p];
+                    row[p] = row[p + 2];
+                    row[p + 2] = red;
+                }
+                BufferedStripAssembler.put(page, dest, row, 0, rowBytes);
+            }
+        }
+        boolean covered;
+        synchronized (this)
+        {
+            // A page that was reset or replaced no longer counts its tiles
+            if ( future != pageComplete )
+                return;
+            completedTiles.add(bounds);
+            // Tiles may overlap, so only the pixels not covered by an earlier tile are counted
+            long added = coverage.add(bounds.x, bounds.x + columns, bounds.y, bounds.y + rows);
+            covered = pixelsPlaced.addAndGet(added) >= (long)width * height;
+        }
+        if ( covered )
+            complete(page, future);
+    }
+
+    private static void complete(ByteBuffer page, PageCompleteFuture future)
+    {
+        if ( future.isDone() )
+            return;
+        ByteBuffer view = page.duplicate();
+        view.clear();
+        future.complete(TwainImageData.wrap(view));
+    }
+
+    /**
+     * Ends the current page.  The page completes once the tiles still being copied are done, even if
+     * part of the page was not covered by any tile.
+     * @return The future that completes with the page, or null if no page has been started
+     */
+    public synchronized PageCompleteFuture finish()
+    {
+        if ( region == null )
+            return null;
+        ByteBuffer page = region;
+        PageCompleteFuture future = pageComplete;
+        List<CompletableFuture<Void>> copies = new ArrayList<>();
+        for (Placement p : pending)
+            copies.add(p.copied);
+        region = null;
+        CompletableFuture.allOf(copies.toArray(new CompletableFuture<?>[0])).whenComplete((r, e) ->
+        {
+            if ( e != null )
+                future.completeExceptionally(e);
+            else
+                complete(page, future);
+        });
+        return future;
+    }
+
+    /**
+     * @return The future of the current page, or null if no page has been started
+     */
+    public synchronized PageCompleteFuture getPageComplete()
+    {
+        return pageComplete;
+    }
+
+    /**
+     * @return The area, in pixels, of each tile of the current page copied so far
+     */
+    public synchronized List<Rectangle> getCompletedTiles()
+    {
+        return new ArrayList<>(completedTiles);
+    }
+
+    public synchronized int getCompletedTileCount()
+    {
+        return completedTiles.size();
+    }
+
+    /**
+     * @return true if a page has been started, and has not been finished
+     */
+    public synchronized boolean isStarted()
+    {
+        return region != null;
+    }
+
+    /**
+     * Renders the current page, as far as it has been built, reduced to fit in the given size.
+     * Areas not yet covered by a tile are black.
+     * @param maxWidth Largest width of the image
+     * @param maxHeight Largest height of the image
+     * @return The image, or null if no page has been started
+     */
+    public BufferedImage renderPreview(int maxWidth, int maxHeight)
+    {
+        ByteBuffer page;
+        synchronized (this)
+        {
+            page = region;
+        }
+        if ( page == null )
+            return null;
+        if ( maxWidth <= 0 || maxHeight <= 0 )
+            throw new IllegalArgumentException("Invalid preview size: " + maxWidth + "x" + maxHeight);
+        ByteBuffer view = page.duplicate();
+        view.clear();
+        return PageThumbnailer.reduce(view, DibHeader.parse(view.duplicate()), maxWidth, maxHeight);
+    }
+
+    /**
+     * Discards the current page.  Tiles still being copied are not waited for.
+     */
+    public synchronized void reset()
+    {
+        region = null;
+        pageComplete = null;
+        imageInfo = null;
+        pixelsPlaced.set(0);
+        coverage = null;
+        completedTiles.clear();
+    }
+
+    // The columns of each row covered by the tiles copied so far, as sorted, disjoint [start, end) pairs
+    private static class RowCoverage
+    {
+        private static final int[] NONE = new int[0];
+        private final int[][] rows;
+
+        private RowCoverage(int height)
+        {
+            rows = new int[height][];
+            Arrays.fill(rows, NONE);
+        }
+
+        // Returns the number of pixels of the area that were not covered before
+        private long add(int left, int right, int top, int bottom)
+        {
+            long added = 0;
+            for (int y = top; y < bottom; ++y)
+                added += addToRow(y, left, right);
+            return added;
+        }
+
+        private int addToRow(int y, int left, int right)
+        {
+            int[] spans = rows[y];
+            int[] merged = new int[spans.length + 2];
+            int count = 0;
+            int i = 0;
+            int alreadyCovered = 0;
+            // Spans ending before the new span are kept as they are
+            while (i < spans.length && spans[i + 1] < left)
+            {
+                merged[count++] = spans[i];
+                merged[count++] = spans[i + 1];
+                i += 2;
+            }
+            // Spans touching the new span are joined to it
+            int start = left;
+            int end = right;
+            while (i < spans.length && spans[i] <= right)
+            {
+                alreadyCovered += Math.max(0, Math.min(spans[i + 1], right) - Math.max(spans[i], left));
+                start = Math.min(start, spans[i]);
+                end = Math.max(end, spans[i + 1]);
+                i += 2;
+            }
+            merged[count++] = start;
+            merged[count++] = end;
+            while (i < spans.length)
+            {
+                merged[count++] = spans[i];
+                merged[count++] = spans[i + 1];
+                i += 2;
+            }
+            rows[y] = count == merged.length ? merged : Arrays.copyOf(merged, count);
+            return (right - left) - alreadyCovered;
+        }
+    }
+}
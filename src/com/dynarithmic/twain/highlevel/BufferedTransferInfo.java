@@ -20,6 +20,8 @@
 
  */
 package com.dynarithmic.twain.highlevel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -29,6 +31,7 @@ import java.util.Map;
 
 import com.dynarithmic.twain.DTwainConstants.CompressionType;
 import com.dynarithmic.twain.DTwainConstants.ErrorCode;
+import com.dynarithmic.twain.DTwainConstants.NotificationCode;
 import com.dynarithmic.twain.exceptions.DTwainJavaAPIException;
 import com.dynarithmic.twain.exceptions.DTwainRuntimeException;
 import com.dynarithmic.twain.highlevel.capabilityinterface.CapabilityInterface;
@@ -51,6 +54,14 @@ public class BufferedTransferInfo
     private boolean handleStrips = false;
     private boolean tileModeSupported = false;
     private boolean handleTiles = false;
+    private BufferedStripAssembler stripAssembler = new BufferedStripAssembler();
+    private int stripBufferCount = 0;
+    private StripBufferRing stripBufferRing = null;
+    private boolean autoTuneStripSize = false;
+    private int tuningPagesPerSize = 1;
+    private String stripSizeStore = null;
+    private StripSizeTuner stripSizeTuner = null;
+    private CompressionPlanner.Sample compressionSample = null;
     private class BestCompression
     {
         private CompressionType compressionType;
@@ -115,6 +126,230 @@ public class BufferedTransferInfo
         return this.m_StripInfo;
     }
 
+    /**
+     * @return The assembler that can be used by a TwainCallback to build each page from its strips
+     * @see BufferedStripAssembler
+     */
+    public BufferedStripAssembler getStripAssembler()
+    {
+        return this.stripAssembler;
+    }
+
+    /**
+     * @param stripBufferCount The number of native strip buffers to cycle through when the application
+     * handles the strips (setHandleStrips(true)).  With 2 or more buffers, each page is transferred into
+     * a different buffer than the page before it.  The buffer is not changed in the middle of a page, so all of
+     * the strips of a page share one buffer.  Each strip read with {@link #takeStrip()} is returned in its own
+     * BufferedStripInfo, which stays unchanged while the next stripBufferCount - 1 strips are read.  The buffers are allocated by DTWAIN_AllocateMemory()
+     * when the transfer starts, and freed when the source is closed, or by {@link #releaseStripBuffers()}.
+     * The default, 0, lets the JNI layer allocate a single buffer.
+     * @return The current object.
+     */
+    public BufferedTransferInfo setStripBufferCount(int stripBufferCount)
+    {
+        this.stripBufferCount = Math.max(0, stripBufferCount);
+        return this;
+    }
+
+    public int getStripBufferCount()
+    {
+        return this.stripBufferCount;
+    }
+
+    /**
+     * Reads the strip that has just been transferred.  Call this from TwainCallback.onTransferStripDone().
+     * If strip buffers are used (see {@link #setStripBufferCount(int)}), the returned BufferedStripInfo
+     * stays unchanged until stripBufferCount - 1 more strips have been read.
+     * @return The strip
+     * @throws DTwainJavaAPIException if the strip cannot be read
+     */
+    public BufferedStripInfo takeStrip() throws DTwainJavaAPIException
+    {
+        if ( stripBufferRing == null )
+            return mSource.getBufferedStripInfo();
+        return stripBufferRing.take(mSource.getSourceHandle());
+    }
+
+    /**
+     * Frees the strip buffers allocated for the transfer.  This is called when the source is closed.
+     * @throws DTwainJavaAPIException if the source could not be told to stop using the buffers
+     */
+    public void releaseStripBuffers() throws DTwainJavaAPIException
+    {
+        StripBufferRing ring = stripBufferRing;
+        stripBufferRing = null;
+        if ( ring != null )
+            ring.release(mSource != null ? mSource.getSourceHandle() : 0);
+    }
+
+    private int getStripBufferSize()
+    {
+        if ( m_StripInfo.getBufferSize() > 0 )
+            return m_StripInfo.getBufferSize();
+        if ( m_StripInfo.getPreferredSize() > 0 )
+            return m_StripInfo.getPreferredSize();
+        return Math.max(m_StripInfo.getMinimumSize(), m_StripInfo.getMaximumSize());
+    }
+
+    /**
+     * @param autoTune If true, the strip size is chosen by measuring the transfer.  The first pages of the
+     * run are each transferred with a different strip size between getMinimumBufferSize() and
+     * getMaximumBufferSize(), timing the TRANSFERSTRIPDONE notifications, and the remaining pages use the size
+     * that transferred the most bytes per second.  The size is saved for the source, resolution and
+     * compression, so later runs use it without measuring again.  Any size set by setStripSize() is ignored.
+     * @return The current object.
+     * @see #setStripSizeStore(String)
+     */
+    public BufferedTransferInfo setAutoTuneStripSize(boolean autoTune)
+    {
+        this.autoTuneStripSize = autoTune;
+        if ( !autoTune )
+            this.stripSizeTuner = null;
+        return this;
+    }
+
+    public boolean isAutoTuneStripSize()
+    {
+        return this.autoTuneStripSize;
+    }
+
+    /**
+     * @param pages Number of pages transferred with each strip size when the strip size is tuned.  The default is 1.
+     * @return The current object.
+     */
+    public BufferedTransferInfo setTuningPagesPerSize(int pages)
+    {
+        this.tuningPagesPerSize = Math.max(1, pages);
+        return this;
+    }
+
+    public int getTuningPagesPerSize()
+    {
+        return this.tuningPagesPerSize;
+    }
+
+    /**
+     * @param fileName The file where tuned strip sizes are saved.  If not set, the file
+     * <i>dtwain_stripsizes.properties</i> in the DTWAIN temporary directory is used.
+     * @return The current object.
+     */
+    public BufferedTransferInfo setStripSizeStore(String fileName)
+    {
+        this.stripSizeStore = fileName;
+        return this;
+    }
+
+    public String getStripSizeStore()
+    {
+        return this.stripSizeStore;
+    }
+
+    /**
+     * @return true if the strip size has been tuned for the current source, resolution and compression.
+     */
+    public boolean isStripSizeTuned()
+    {
+        return stripSizeTuner != null && stripSizeTuner.isTuned();
+    }
+
+    private void prepareStripSizeTuner(DTwainJavaAPI handle) throws DTwainJavaAPIException
+    {
+        CapabilityInterface ci = mSource.getCapabilityInterface();
+        List<Double> resolution = ci.getXResolution(ci.getCurrent());
+        TwainSourceInfo info = mSource.getInfo();
+        String key = (info != null ? info.getManufacturer() + "/" + info.getProductName() : "") +
+                     "/" + (resolution.isEmpty() ? 0 : resolution.get(0).intValue()) +
+                     "/" + compressionType.name();
+        if ( stripSizeTuner != null && stripSizeTuner.getKey().equals(key) )
+            return;
+        Path store = stripSizeStore != null ? Paths.get(stripSizeStore) :
+                     Paths.get(handle.DTWAIN_GetTempFileDirectory(), "dtwain_stripsizes.properties");
+        stripSizeTuner = new StripSizeTuner(key, store, m_StripInfo.getMinimumSize(), m_StripInfo.getMaximumSize(),
+                                            m_StripInfo.getPreferredSize(), tuningPagesPerSize);
+    }
+
+    // Set by the CompressionPlanner while a sample page is acquired
+    void setCompressionSample(CompressionPlanner.Sample sample)
+    {
+        this.compressionSample = sample;
+    }
+
+    /**
+     * @param goal The goal of the compression
+     * @return The compression that meets the goal best, measured by CompressionPlanner.calibrate(), or
+     * CompressionType.NONE if the source has not been calibrated at the current pixel type and resolution
+     * @throws DTwainJavaAPIException if the capabilities of the source cannot be read
+     * @see CompressionPlanner
+     */
+    public CompressionType getPlannedCompressionType(DTwainConstants.CompressionGoal goal) throws DTwainJavaAPIException
+    {
+        return new CompressionPlanner(mSource).plan(goal);
+    }
+
+    // Called for every notification of the source, before the callbacks are called
+    void onTransferEvent(NotificationCode nc)
+    {
+        StripBufferRing ring = stripBufferRing;
+        if ( ring != null &&
+             (nc == NotificationCode.TRANSFERDONE || nc == NotificationCode.TRANSFERCANCELLED ||
+              nc == NotificationCode.PAGEFAILED || nc == NotificationCode.PAGECANCELLED) )
+        {
+            // The page has ended, so the source can be given the next buffer
+            try
+            {
+                ring.nextPage(mSource.getSourceHandle());
+                m_StripInfo.setBufferHandle(ring.getCurrentHandle());
+            }
+            catch (DTwainJavaAPIException e)
+            {
+                // The next page is transferred into the current buffer
+            }
+        }
+        CompressionPlanner.Sample sample = compressionSample;
+        if ( sample != null )
+        {
+            if ( nc == NotificationCode.TRANSFERREADY )
+                sample.transferReady();
+            else
+            if ( nc == NotificationCode.TRANSFERSTRIPDONE )
+                sample.stripDone(mSource);
+            else
+            if ( nc == NotificationCode.TRANSFERDONE )
+                sample.transferDone();
+        }
+        StripSizeTuner tuner = stripSizeTuner;
+        if ( tuner == null || handleTiles || tuner.isTuned() )
+            return;
+        switch (nc)
+        {
+            case TRANSFERREADY:
+                tuner.transferReady(System.nanoTime());
+                break;
+
+            case TRANSFERSTRIPDONE:
+                tuner.stripDone(System.nanoTime());
+                break;
+
+            case TRANSFERDONE:
+                if ( tuner.transferDone() )
+                {
+                    try
+                    {
+                        m_StripInfo.setBufferSize(tuner.getStripSize());
+                        setupStripTransfer(mSource.getTwainSession().getAPIHandle());
+                    }
+                    catch (DTwainJavaAPIException e)
+                    {
+                        // The next page is transferred using the current size
+                    }
+                }
+                break;
+
+            default:
+                break;
+        }
+    }
+
     public boolean isHandleStrips()
     {
         return this.handleStrips;
@@ -345,19 +580,47 @@ public class BufferedTransferInfo
         else
         {
             // This is a stripped transfer
-            int bufferSize = m_StripInfo.getBufferSize();
-            if ( bufferSize > 0)
+            if ( autoTuneStripSize )
             {
-                if ( bufferSize < m_StripInfo.getMinimumSize() || bufferSize > this.m_StripInfo.getMaximumSize())
-                    return false;
+                prepareStripSizeTuner(handle);
+                m_StripInfo.setBufferSize(stripSizeTuner.getStripSize());
             }
-            m_StripInfo.setAppAllocatesBuffer(handleStrips);
-            handle.DTWAIN_SetBufferedTransferInfo(mSource.getSourceHandle(), m_StripInfo);
+            return setupStripTransfer(handle);
         }
         
         return true;
     }
 
+    private boolean setupStripTransfer(DTwainJavaAPI handle) throws DTwainJavaAPIException
+    {
+        int bufferSize = m_StripInfo.getBufferSize();
+        if ( bufferSize > 0)
+        {
+            if ( bufferSize < m_StripInfo.getMinimumSize() || bufferSize > this.m_StripInfo.getMaximumSize())
+                return false;
+        }
+        boolean useRing = handleStrips && stripBufferCount > 0;
+        m_StripInfo.setAppAllocatesBuffer(handleStrips && !useRing);
+        handle.DTWAIN_SetBufferedTransferInfo(mSource.getSourceHandle(), m_StripInfo);
+        if ( useRing )
+        {
+            int size = getStripBufferSize();
+            if ( size <= 0 )
+                return false;
+            if ( stripBufferRing != null &&
+                 (stripBufferRing.getCount() != stripBufferCount || stripBufferRing.getBufferSize() != size) )
+                releaseStripBuffers();
+            if ( stripBufferRing == null )
+                stripBufferRing = new StripBufferRing(handle, stripBufferCount, size, m_StripInfo);
+            stripBufferRing.install(mSource.getSourceHandle());
+            // Strips read through TwainSource.getBufferedStripInfo() come from the current buffer
+            m_StripInfo.setBufferHandle(stripBufferRing.getCurrentHandle());
+        }
+        else
+            releaseStripBuffers();
+        return true;
+    }
+
     public BufferedTransferInfo setCompressionType(CompressionType compressionType2)
             throws DTwainJavaAPIException, DTwainRuntimeException
     {
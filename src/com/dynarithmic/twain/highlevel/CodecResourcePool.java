@@ -0,0 +1,130 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel;
+
+import java.lang.ref.SoftReference;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Reuses the objects the built-in codecs need for each page, so that storing a page allocates
+ * little more than the stored data itself.<p>
+ * Deflater and Inflater objects hold native zlib memory.  A bounded number of them are kept for
+ * reuse, and the rest are ended as soon as they are returned, so native memory is not left for
+ * the garbage collector to free.  Each thread keeps one scratch buffer, held by a soft reference
+ * so that it can be reclaimed when memory is low.
+ */
+final class CodecResourcePool
+{
+    private static final int s_maxPooled = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final Deque<Deflater> s_deflaters = new ConcurrentLinkedDeque<>();
+    private static final Deque<Inflater> s_inflaters = new ConcurrentLinkedDeque<>();
+    private static final AtomicInteger s_deflaterCount = new AtomicInteger();
+    private static final AtomicInteger s_inflaterCount = new AtomicInteger();
+    private static final ThreadLocal<SoftReference<byte[]>> s_scratch = new ThreadLocal<>();
+
+    private CodecResourcePool()
+    {}
+
+    static Deflater borrowDeflater(int level)
+    {
+        Deflater deflater = s_deflaters.pollFirst();
+        if ( deflater == null )
+            return new Deflater(level);
+        s_deflaterCount.decrementAndGet();
+        deflater.setLevel(level);
+        return deflater;
+    }
+
+    static void returnDeflater(Deflater deflater)
+    {
+        deflater.reset();
+        if ( s_deflaterCount.incrementAndGet() <= s_maxPooled )
+            s_deflaters.offerFirst(deflater);
+        else
+        {
+            s_deflaterCount.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    static Inflater borrowInflater()
+    {
+        Inflater inflater = s_inflaters.pollFirst();
+        if ( inflater == null )
+            return new Inflater();
+        s_inflaterCount.decrementAndGet();
+        return inflater;
+    }
+
+    static void returnInflater(Inflater inflater)
+    {
+        inflater.reset();
+        if ( s_inflaterCount.incrementAndGet() <= s_maxPooled )
+            s_inflaters.offerFirst(inflater);
+        else
+        {
+            s_inflaterCount.decrementAndGet();
+            inflater.end();
+        }
+    }
+
+    /**
+     * @param minLength The smallest length needed
+     * @return This thread's scratch buffer, of at least <i>minLength</i> bytes.  The contents
+     * are undefined.  The buffer must not be kept once the caller returns.
+     */
+    static byte [] getScratch(int minLength)
+    {
+        SoftReference<byte[]> ref = s_scratch.get();
+        byte[] scratch = ref != null ? ref.get() : null;
+        if ( scratch == null || scratch.length < minLength )
+        {
+            // Leave some room so that slightly larger pages do not reallocate
+            scratch = new byte[minLength + minLength / 8];
+            s_scratch.set(new SoftReference<>(scratch));
+        }
+        return scratch;
+    }
+
+    /**
+     * Ends all of the pooled Deflater and Inflater objects.
+     */
+    static void clear()
+    {
+        Deflater deflater;
+        while ((deflater = s_deflaters.pollFirst()) != null)
+        {
+            s_deflaterCount.decrementAndGet();
+            deflater.end();
+        }
+        Inflater inflater;
+        while ((inflater = s_inflaters.pollFirst()) != null)
+        {
+            s_inflaterCount.decrementAndGet();
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.dynarithmic.twain.DTwainConstants.CompressionType;
+import com.dynarithmic.twain.DTwainConstants.PixelType;
+import com.dynarithmic.twain.lowlevel.TW_IMAGEINFO;
+
+/**
+ * <p>Writes the strips of a compressed buffered transfer (AcquireType.BUFFERED, with
+ * BufferedTransferInfo.setHandleStrips(true) and a compression type set) straight to a file, without
+ * decompressing them.  The strips of a page are the pieces of one compressed image, so they are appended
+ * to the file in the order they arrive, using gathering writes.</p>
+ * <ul>
+ * <li>GROUP31D, GROUP31DEOL, GROUP32D, GROUP4, LZW and PACKBITS pages are written to a (multi-page) TIFF file.
+ *     Each page is one TIFF strip.  Its IFD is written after the page data when {@link #endPage()} is called,
+ *     and the offset to it is patched into the previous IFD, or the file header.</li>
+ * <li>A JPEG page is already a complete JPEG file, so it is written as is.  Only one page can be written.</li>
+ * </ul>
+ * <pre>
+ *   public int onTransferStripDone(TwainSource source)
+ *   {
+ *       writer.addStrip(source.getBufferedStripInfo());
+ *       return 1;
+ *   }
+ *   public int onTransferDone(TwainSource source)
+ *   {
+ *       writer.endPage(source.getAcquiredImageInfo());
+ *       return 1;
+ *   }
+ * </pre>
+ * <p>This class is not thread safe.</p>
+ */
+public class CompressedStripWriter implements Closeable
+{
+    private static final int FLUSH_SIZE = 1 << 20;
+    private static final short TIFF_SHORT = 3;
+    private static final short TIFF_LONG = 4;
+    private static final short TIFF_RATIONAL = 5;
+
+    private final FileChannel channel;
+    private final List<ByteBuffer> pending = new ArrayList<>();
+    private long pendingBytes = 0;
+    private long position = 0;
+    private boolean tiff = false;
+    private boolean started = false;
+    private long nextIfdOffsetPosition = 4;
+    private int pageCount = 0;
+
+    // The current page
+    private TW_IMAGEINFO imageInfo = null;
+    private long pageStart = -1;
+    private long pageBytes = 0;
+
+    public CompressedStripWriter(Path file) throws IOException
+    {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                              StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Appends a strip to the current page.  The first strip of the file decides whether a TIFF or JPEG file is written.
+     * @param strip The strip, as returned by TwainSource.getBufferedStripInfo()
+     * @throws IOException if the strip cannot be written
+     */
+    public void addStrip(BufferedStripInfo strip) throws IOException
+    {
+        byte[] data = strip.getBufferedStripData();
+        int length = data != null ? Math.min(strip.getBytesWritten(), data.length) : 0;
+        if ( length <= 0 )
+            return;
+        if ( pageStart < 0 )
+            beginPage(strip.getImageInfo() != null ? strip.getImageInfo().getImageInfo() : new TW_IMAGEINFO());
+        pending.add(ByteBuffer.wrap(data, 0, length));
+        pendingBytes += length;
+        pageBytes += length;
+        if ( pendingBytes >= FLUSH_SIZE )
+            flush();
+    }
+
+    private void beginPage(TW_IMAGEINFO info) throws IOException
+    {
+        int compression = info.getCompression().getValue();
+        if ( !started )
+        {
+            started = true;
+            tiff = compression != CompressionType.JPEG.value();
+            if ( tiff )
+            {
+                // The offset of the first IFD is patched when the first page ends
+                ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+                header.put((byte)'I').put((byte)'I').putShort((short)42).putInt(0).flip();
+                pending.add(header);
+                pendingBytes += 8;
+            }
+        }
+        if ( !tiff && pageCount > 0 )
+            throw new IllegalStateException("A JPEG file can only hold one page");
+        if ( tiff && getTiffCompression(compression) == 0 )
+            throw new IllegalArgumentException("Compression " + compression + " cannot be written to a TIFF file");
+        imageInfo = info;
+        pageStart = position + pendingBytes;
+        pageBytes = 0;
+    }
+
+    /**
+     * Ends the current page, using the image information sent with its first strip.
+     * @throws IOException if the page cannot be written
+     */
+    public void endPage() throws IOException
+    {
+        endPage(null);
+    }
+
+    /**
+     * Ends the current page.
+     * @param finalInfo The image information of the page at the end of the transfer, such as returned by
+     * TwainSource.getAcquiredImageInfo().  Used if the image length was not known when the first strip was sent.
+     * May be null.
+     * @throws IOException if the page cannot be written
+     */
+    public void endPage(TwainImageInfo finalInfo) throws IOException
+    {
+        if ( pageStart < 0 )
+            return;
+        TW_IMAGEINFO info = imageInfo;
+        if ( finalInfo != null && finalInfo.getImageInfo() != null &&
+             finalInfo.getImageInfo().getImageLength().getValue() > 0 )
+            info = finalInfo.getImageInfo();
+        if ( tiff )
+            writeIfd(info);
+        flush();
+        ++pageCount;
+        pageStart = -1;
+        imageInfo = null;
+    }
+
+    private void writeIfd(TW_IMAGEINFO info) throws IOException
+    {
+        int width = info.getImageWidth().getValue();
+        int height = info.getImageLength().getValue();
+        if ( width <= 0 || height <= 0 )
+            throw new IOException("Image size of page " + (pageCount + 1) + " is unknown");
+        int bitsPerPixel = info.getBitsPerPixel().getValue();
+        int pixelType = info.getPixelType().getValue();
+        int compression = getTiffCompression(info.getCompression().getValue());
+        boolean rgb = pixelType == PixelType.RGB.value() && bitsPerPixel == 24;
+        boolean ccitt = compression == 2 || compression == 3 || compression == 4;
+        // Compression 2 (Modified Huffman) has no options tag
+        boolean ccittOptions = compression == 3 || compression == 4;
+        int photometric = rgb ? 2 : (ccitt ? 0 : 1);
+
+        // IFDs start on a word boundary
+        long dataEnd = position + pendingBytes;
+        int padding = (int)(dataEnd & 1);
+        long ifdOffset = dataEnd + padding;
+        int entryCount = 13 + (ccittOptions ? 1 : 0);
+        long extraOffset = ifdOffset + 2 + entryCount * 12 + 4;
+        ByteBuffer ifd = ByteBuffer.allocate(padding + 2 + entryCount * 12 + 4 + 16 + 6).order(ByteOrder.LITTLE_ENDIAN);
+        if ( padding > 0 )
+            ifd.put((byte)0);
+        ifd.putShort((short)entryCount);
+        putEntry(ifd, 254, TIFF_LONG, 1, pageCount > 0 ? 2 : 0);
+        putEntry(ifd, 256, TIFF_LONG, 1, width);
+        putEntry(ifd, 257, TIFF_LONG, 1, height);
+        if ( rgb )
+            putEntry(ifd, 258, TIFF_SHORT, 3, extraOffset + 16);
+        else
+            putEntry(ifd, 258, TIFF_SHORT, 1, bitsPerPixel);
+        putEntry(ifd, 259, TIFF_SHORT, 1, compression);
+        putEntry(ifd, 262, TIFF_SHORT, 1, photometric);
+        putEntry(ifd, 273, TIFF_LONG, 1, pageStart);
+        putEntry(ifd, 277, TIFF_SHORT, 1, rgb ? 3 : 1);
+        putEntry(ifd, 278, TIFF_LONG, 1, height);
+        putEntry(ifd, 279, TIFF_LONG, 1, pageBytes);
+        putEntry(ifd, 282, TIFF_RATIONAL, 1, extraOffset);
+        putEntry(ifd, 283, TIFF_RATIONAL, 1, extraOffset + 8);
+        if ( ccittOptions )
+        {
+            // TWAIN only says whether the data is 2-dimensional.  Nothing is reported about
+            // fill bits or uncompressed mode, so those options are left off.
+            int options = 0;
+            if ( info.getCompression().getValue() == CompressionType.GROUP32D.value() )
+                options = 1;
+            putEntry(ifd, compression == 3 ? 292 : 293, TIFF_LONG, 1, options);
+        }
+        putEntry(ifd, 296, TIFF_SHORT, 1, 2);
+        ifd.putInt(0);
+        ifd.putInt((int)Math.round(info.getXResolution().getValue() * 100)).putInt(100);
+        ifd.putInt((int)Math.round(info.getYResolution().getValue() * 100)).putInt(100);
+        ifd.putShort((short)8).putShort((short)8).putShort((short)8);
+        ifd.flip();
+        pending.add(ifd);
+        pendingBytes += ifd.remaining();
+        flush();
+
+        // Link the IFD to the one before it, or to the header
+        ByteBuffer link = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, (int)ifdOffset);
+        while (link.hasRemaining())
+            channel.write(link, nextIfdOffsetPosition + link.position());
+        nextIfdOffsetPosition = ifdOffset + 2 + entryCount * 12;
+    }
+
+    // The entries must be added in ascending tag order
+    private static void putEntry(ByteBuffer ifd, int tag, short type, int count, long value)
+    {
+        ifd.putShort((short)tag).putShort(type).putInt(count);
+        if ( type == TIFF_SHORT && count == 1 )
+            ifd.putShort((short)value).putShort((short)0);
+        else
+            ifd.putInt((int)value);
+    }
+
+    private static int getTiffCompression(int twainCompression)
+    {
+        if ( twainCompression == CompressionType.GROUP4.value() )
+            return 4;
+        // GROUP31D has no EOL codes, which is TIFF's Modified Huffman compression
+        if ( twainCompression == CompressionType.GROUP31D.value() )
+            return 2;
+        if ( twainCompression == CompressionType.GROUP31DEOL.value() ||
+             twainCompression == CompressionType.GROUP32D.value() )
+            return 3;
+        if ( twainCompression == CompressionType.LZW.value() )
+            return 5;
+        if ( twainCompression == CompressionType.PACKBITS.value() )
+            return 32773;
+        return 0;
+    }
+
+    private void flush() throws IOException
+    {
+        if ( pending.isEmpty() )
+            return;
+        ByteBuffer[] buffers = pending.toArray(new ByteBuffer[0]);
+        long remaining = pendingBytes;
+        while (remaining > 0)
+            remaining -= channel.write(buffers);
+        position += pendingBytes;
+        pending.clear();
+        pendingBytes = 0;
+    }
+
+    public int getPageCount()
+    {
+        return pageCount;
+    }
+
+    /**
+     * @return Number of bytes written to the file, including those not yet flushed
+     */
+    public long getBytesWritten()
+    {
+        return position + pendingBytes;
+    }
+
+    /**
+     * Ends any page still open, and closes the file.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            endPage();
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,348 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.dynarithmic.twain.DTwainConstants.AcquireType;
+import com.dynarithmic.twain.DTwainConstants.CompressionGoal;
+import com.dynarithmic.twain.DTwainConstants.CompressionType;
+import com.dynarithmic.twain.exceptions.DTwainJavaAPIException;
+import com.dynarithmic.twain.highlevel.acquirecharacteristics.AcquireCharacteristics;
+import com.dynarithmic.twain.highlevel.acquirecharacteristics.CompressionOptions;
+import com.dynarithmic.twain.highlevel.acquirecharacteristics.GeneralOptions;
+import com.dynarithmic.twain.highlevel.capabilityinterface.CapabilityInterface;
+import com.dynarithmic.twain.lowlevel.TW_IMAGEMEMXFER;
+import com.dynarithmic.twain.lowlevel.TwainConstants.ICAP_COMPRESSION;
+
+/**
+ * <p>Chooses the compression of buffered transfers by measuring each compression the source supports,
+ * instead of using a fixed order of preference.  {@link #calibrate()} acquires one sample page, without
+ * showing the user interface, for each value of ICAP_COMPRESSION, and records the number of bytes
+ * transferred, the transfer time, and the processor time used by the thread running the acquisition.
+ * {@link #plan(CompressionGoal)} then picks the compression for the goal from those measurements:</p>
+ * <ul>
+ * <li>CompressionGoal.MIN_BANDWIDTH -- the fewest bytes transferred per page</li>
+ * <li>CompressionGoal.MIN_CPU       -- the least processor time per page</li>
+ * <li>CompressionGoal.MIN_FILE_SIZE -- the fewest bytes per page among the compressions that
+ *     CompressedStripWriter can write to a file without re-encoding</li>
+ * </ul>
+ * <p>Calibrating scans real sheets: one page is scanned for each compression, so a feeder feeds that many
+ * sheets, while a flatbed scans the same page each time.  The sample pages are not returned.  Nothing is
+ * scanned unless calibrate() is called; plan() only uses measurements that are already there.  The results
+ * are kept for the rest of the process for each source, pixel type and resolution.</p>
+ */
+public class CompressionPlanner
+{
+    /**
+     * The measurements of one compression.
+     */
+    public static class CompressionProfile
+    {
+        private final CompressionType compression;
+        private final long bytesPerPage;
+        private final long transferNanos;
+        private final long cpuNanos;
+
+        CompressionProfile(CompressionType compression, long bytesPerPage, long transferNanos, long cpuNanos)
+        {
+            this.compression = compression;
+            this.bytesPerPage = bytesPerPage;
+            this.transferNanos = transferNanos;
+            this.cpuNanos = cpuNanos;
+        }
+
+        public CompressionType getCompression()
+        {
+            return compression;
+        }
+
+        public long getBytesPerPage()
+        {
+            return bytesPerPage;
+        }
+
+        /**
+         * @return Nanoseconds from the TRANSFERREADY to the TRANSFERDONE notification of the sample page
+         */
+        public long getTransferTime()
+        {
+            return transferNanos;
+        }
+
+        /**
+         * @return Processor time, in nanoseconds, used by the acquiring thread to transfer the sample page,
+         * or -1 if the JVM does not measure thread processor time
+         */
+        public long getCpuTime()
+        {
+            return cpuNanos;
+        }
+
+        @Override
+        public String toString()
+        {
+            return compression + ": " + bytesPerPage + " bytes, " + transferNanos / 1000000 + " ms, cpu " +
+                   (cpuNanos < 0 ? "n/a" : cpuNanos / 1000000 + " ms");
+        }
+    }
+
+    // Measures the sample page, using the notifications sent to the BufferedTransferInfo
+    static class Sample
+    {
+        private static final ThreadMXBean s_threadBean = ManagementFactory.getThreadMXBean();
+
+        private long bytes = 0;
+        private long startNanos = 0;
+        private long startCpu = 0;
+        private long transferNanos = 0;
+        private long cpuNanos = -1;
+        private boolean done = false;
+
+        private static long cpuTime()
+        {
+            return s_threadBean.isCurrentThreadCpuTimeSupported() ? s_threadBean.getCurrentThreadCpuTime() : -1;
+        }
+
+        void transferReady()
+        {
+            if ( done )
+                return;
+            bytes = 0;
+            startNanos = System.nanoTime();
+            startCpu = cpuTime();
+        }
+
+        void stripDone(TwainSource source)
+        {
+            if ( done )
+                return;
+            try
+            {
+                // Only the size of the strip is needed, so the strip data is not copied
+                TW_IMAGEMEMXFER memXfer = source.getTwainSession().getAPIHandle().DTWAIN_GetBufferedTransferInfo(source.getSourceHandle());
+                if ( memXfer != null )
+                    bytes += memXfer.getBytesWritten().getValue();
+            }
+            catch (DTwainJavaAPIException e)
+            {
+                // The strip is not counted
+            }
+        }
+
+        void transferDone()
+        {
+            if ( done || startNanos == 0 )
+                return;
+            transferNanos = System.nanoTime() - startNanos;
+            long cpu = cpuTime();
+            cpuNanos = cpu >= 0 && startCpu >= 0 ? cpu - startCpu : -1;
+            done = true;
+        }
+    }
+
+    private static final ConcurrentMap<String, Map<CompressionType, CompressionProfile>> s_profileCache = new ConcurrentHashMap<>();
+
+    private final TwainSource source;
+
+    public CompressionPlanner(TwainSource source)
+    {
+        this.source = source;
+    }
+
+    /**
+     * Measures each compression supported by the source by scanning one page with it, unless the source
+     * has already been measured at the current pixel type and resolution.  A feeder feeds one sheet for
+     * each compression, and the pages scanned are discarded.  The AcquireCharacteristics of the source
+     * are used for the sample pages, except for the acquire type, page count, compression and user interface,
+     * which are restored when calibrating is done.
+     * @return The measurements of each compression
+     * @throws DTwainJavaAPIException if the capabilities of the source cannot be read
+     */
+    public Map<CompressionType, CompressionProfile> calibrate() throws DTwainJavaAPIException
+    {
+        return calibrate(false);
+    }
+
+    /**
+     * @param reprofile If true, the compressions are measured again, even if the results are cached
+     * @return The measurements of each compression
+     * @throws DTwainJavaAPIException if the capabilities of the source cannot be read
+     * @see #calibrate()
+     */
+    public Map<CompressionType, CompressionProfile> calibrate(boolean reprofile) throws DTwainJavaAPIException
+    {
+        String key = getKey();
+        Map<CompressionType, CompressionProfile> profiles = s_profileCache.get(key);
+        if ( profiles != null && !reprofile )
+            return profiles;
+        profiles = Collections.unmodifiableMap(runProfiles());
+        s_profileCache.put(key, profiles);
+        return profiles;
+    }
+
+    /**
+     * @return The cached measurements of the source at the current pixel type and resolution, or null
+     * if the source has not been calibrated
+     * @throws DTwainJavaAPIException if the capabilities of the source cannot be read
+     */
+    public Map<CompressionType, CompressionProfile> getProfiles() throws DTwainJavaAPIException
+    {
+        return s_profileCache.get(getKey());
+    }
+
+    /**
+     * Chooses the compression for a goal from the measurements made by calibrate().  Nothing is scanned.
+     * @param goal The goal
+     * @return The compression, or CompressionType.NONE if the source has not been calibrated at the current
+     * pixel type and resolution, or no compression could be measured
+     * @throws DTwainJavaAPIException if the capabilities of the source cannot be read
+     */
+    public CompressionType plan(CompressionGoal goal) throws DTwainJavaAPIException
+    {
+        Map<CompressionType, CompressionProfile> profiles = getProfiles();
+        if ( profiles == null )
+            return CompressionType.NONE;
+        CompressionProfile best = null;
+        for (CompressionProfile p : profiles.values())
+        {
+            if ( goal == CompressionGoal.MIN_FILE_SIZE && !isWritableAsIs(p.getCompression()) )
+                continue;
+            if ( best == null || isBetter(goal, p, best) )
+                best = p;
+        }
+        if ( best == null && goal == CompressionGoal.MIN_FILE_SIZE )
+            return plan(CompressionGoal.MIN_BANDWIDTH);
+        return best != null ? best.getCompression() : CompressionType.NONE;
+    }
+
+    /**
+     * Forgets the measurements of all sources.
+     */
+    public static void clearCache()
+    {
+        s_profileCache.clear();
+    }
+
+    private static boolean isBetter(CompressionGoal goal, CompressionProfile p, CompressionProfile best)
+    {
+        if ( goal == CompressionGoal.MIN_CPU && p.getCpuTime() >= 0 && best.getCpuTime() >= 0 )
+        {
+            if ( p.getCpuTime() != best.getCpuTime() )
+                return p.getCpuTime() < best.getCpuTime();
+            return p.getTransferTime() < best.getTransferTime();
+        }
+        if ( goal == CompressionGoal.MIN_CPU )
+            return p.getTransferTime() < best.getTransferTime();
+        if ( p.getBytesPerPage() != best.getBytesPerPage() )
+            return p.getBytesPerPage() < best.getBytesPerPage();
+        return p.getTransferTime() < best.getTransferTime();
+    }
+
+    private static boolean isWritableAsIs(CompressionType compression)
+    {
+        switch (compression)
+        {
+            case GROUP31D:
+            case GROUP31DEOL:
+            case GROUP32D:
+            case GROUP4:
+            case LZW:
+            case PACKBITS:
+            case JPEG:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private String getKey() throws DTwainJavaAPIException
+    {
+        CapabilityInterface ci = source.getCapabilityInterface();
+        List<Integer> pixelType = ci.getPixelType(ci.getCurrent());
+        List<Double> resolution = ci.getXResolution(ci.getCurrent());
+        TwainSourceInfo info = source.getInfo();
+        return (info != null ? info.getManufacturer() + "/" + info.getProductName() : "") +
+               "/" + (pixelType.isEmpty() ? -1 : pixelType.get(0)) +
+               "/" + (resolution.isEmpty() ? 0 : resolution.get(0).intValue());
+    }
+
+    private Map<CompressionType, CompressionProfile> runProfiles() throws DTwainJavaAPIException
+    {
+        Map<CompressionType, CompressionProfile> profiles = new EnumMap<>(CompressionType.class);
+        CapabilityInterface ci = source.getCapabilityInterface();
+        List<Integer> supported = ci.getCompression(ci.get());
+        AcquireCharacteristics ac = source.getAcquireCharacteristics();
+        GeneralOptions gOpts = ac.getGeneralOptions();
+        CompressionOptions cOpts = ac.getCompressionSupportOptions();
+        BufferedTransferInfo bufferedInfo = source.getBufferedTransferInfo();
+
+        // Settings changed while profiling
+        AcquireType acquireType = gOpts.getAcquireType();
+        int maxPageCount = gOpts.getMaxPageCount();
+        boolean showUI = ac.getUserInterfaceOptions().isShowUI();
+        ICAP_COMPRESSION compression = cOpts.getCompression();
+        boolean handleStrips = bufferedInfo.isHandleStrips();
+        try
+        {
+            gOpts.setAcquireType(AcquireType.BUFFERED).setMaxPageCount(1);
+            ac.getUserInterfaceOptions().showUI(false);
+            bufferedInfo.setHandleStrips(true);
+            for (int value : supported)
+            {
+                if ( value < 0 || value >= ICAP_COMPRESSION.values().length )
+                    continue;
+                cOpts.setCompression(ICAP_COMPRESSION.values()[value]);
+                Sample sample = new Sample();
+                bufferedInfo.setCompressionSample(sample);
+                try
+                {
+                    source.acquire();
+                }
+                finally
+                {
+                    bufferedInfo.setCompressionSample(null);
+                }
+                if ( sample.done )
+                {
+                    CompressionType type = CompressionType.values()[value];
+                    profiles.put(type, new CompressionProfile(type, sample.bytes, sample.transferNanos, sample.cpuNanos));
+                }
+            }
+        }
+        finally
+        {
+            gOpts.setAcquireType(acquireType).setMaxPageCount(maxPageCount);
+            ac.getUserInterfaceOptions().showUI(showUI);
+            cOpts.setCompression(compression);
+            bufferedInfo.setHandleStrips(handleStrips);
+        }
+        return profiles;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.dynarithmic.twain.DTwainConstants;
+import com.dynarithmic.twain.exceptions.DTwainRuntimeException;
+
+/**
+ * Stores the page data using zlib (Deflate) compression at a given compression level.
+ * Levels 1 to 3 trade compression ratio for speed, while Deflater.BEST_COMPRESSION gives
+ * the smallest pages.
+ */
+public class DeflateImageStorageCodec implements ImageStorageCodec
+{
+    private final int level;
+
+    public DeflateImageStorageCodec(int level)
+    {
+        if ( level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION )
+            throw new IllegalArgumentException("Invalid Deflate compression level: " + level);
+        this.level = level;
+    }
+
+    public int getLevel()
+    {
+        return level;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "Deflate level " + level;
+    }
+
+    /**
+     * @param length Length of the uncompressed data
+     * @return The largest size the data can have once compressed, as computed by zlib's deflateBound()
+     */
+    static int deflateBound(int length)
+    {
+        long bound = (long)length + (length >> 12) + (length >> 14) + (length >> 25) + 13 + 6;
+        return (int)Math.min(bound, Integer.MAX_VALUE - 8);
+    }
+
+    @Override
+    public byte [] encode(byte [] data)
+    {
+        Deflater compressor = CodecResourcePool.borrowDeflater(level);
+        try
+        {
+            compressor.setInput(data);
+            compressor.finish();
+
+            // The scratch buffer is large enough for the worst case, so one pass normally
+            // compresses the whole page.  Only the compressed bytes are copied out.
+            byte[] out = CodecResourcePool.getScratch(deflateBound(data.length));
+            int total = 0;
+            while (!compressor.finished())
+            {
+                if ( total == out.length )
+                    out = Arrays.copyOf(out, out.length * 2);
+                total += compressor.deflate(out, total, out.length - total);
+            }
+            return Arrays.copyOf(out, total);
+        }
+        finally
+        {
+            CodecResourcePool.returnDeflater(compressor);
+        }
+    }
+
+    @Override
+    public byte [] decode(byte [] stored, int originalLength) throws DTwainRuntimeException
+    {
+        Inflater decompressor = CodecResourcePool.borrowInflater();
+        try
+        {
+            decompressor.setInput(stored);
+            byte[] out = new byte[originalLength];
+            int total = 0;
+            while (total < originalLength && !decompressor.finished())
+            {
+                int count = decompressor.inflate(out, total, originalLength - total);
+                if ( count == 0 && (decompressor.needsInput() || decompressor.needsDictionary()) )
+                    break;
+                total += count;
+            }
+            if ( total != originalLength )
+                throw new DTwainRuntimeException(DTwainConstants.ErrorCode.ERROR_DECOMPRESSION);
+            return out;
+        }
+        catch (DataFormatException e)
+        {
+            throw new DTwainRuntimeException(DTwainConstants.ErrorCode.ERROR_DECOMPRESSION);
+        }
+        finally
+        {
+            CodecResourcePool.returnInflater(decompressor);
+        }
+    }
+}
@@ -123,7 +123,10 @@ public class DeviceCameraInfo
         {
             DTwainJavaAPI handle = m_Source.getTwainSession().getAPIHandle();
             if ( isCamera(name))
+            {
                 ok = handle.DTWAIN_SetCamera(m_Source.getSourceHandle(), name);
+                m_Source.getCapabilityInterface().clearCache();
+            }
         }
         return ok;
     }
@@ -0,0 +1,189 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Describes the BITMAPFILEHEADER and BITMAPINFOHEADER of a page acquired as a BMP image.  The header
+ * is read from the first bytes of the page, so the dimensions and bit depth of a page are available
+ * without decoding the pixels.
+ */
+public class DibHeader
+{
+    public static final int FILE_HEADER_SIZE = 14;
+    public static final int INFO_HEADER_SIZE = 40;
+    public static final int BI_RGB = 0;
+    public static final int BI_BITFIELDS = 3;
+
+    private int pixelDataOffset;
+    private int headerSize;
+    private int width;
+    private int height;
+    private boolean topDown;
+    private int planes;
+    private int bitsPerPixel;
+    private int compression;
+    private int imageSize;
+    private int xPelsPerMeter;
+    private int yPelsPerMeter;
+    private int colorsUsed;
+
+    private DibHeader()
+    {}
+
+    /**
+     * @param data The page data, starting with the BITMAPFILEHEADER
+     * @return The header, or null if <i>data</i> is not a BMP image
+     */
+    public static DibHeader parse(byte[] data)
+    {
+        return parse(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * @param data The page data, from the buffer's position, starting with the BITMAPFILEHEADER.
+     * The buffer's position is not changed.
+     * @return The header, or null if <i>data</i> is not a BMP image
+     */
+    public static DibHeader parse(ByteBuffer data)
+    {
+        ByteBuffer buf = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int start = buf.position();
+        if ( buf.remaining() < FILE_HEADER_SIZE + INFO_HEADER_SIZE )
+            return null;
+        if ( buf.get(start) != 'B' || buf.get(start + 1) != 'M' )
+            return null;
+        DibHeader header = new DibHeader();
+        header.pixelDataOffset = buf.getInt(start + 10);
+        int info = start + FILE_HEADER_SIZE;
+        header.headerSize = buf.getInt(info);
+        if ( header.headerSize < INFO_HEADER_SIZE )
+            return null;
+        header.width = buf.getInt(info + 4);
+        int rawHeight = buf.getInt(info + 8);
+        header.topDown = rawHeight < 0;
+        header.height = Math.abs(rawHeight);
+        header.planes = buf.getShort(info + 12) & 0xFFFF;
+        header.bitsPerPixel = buf.getShort(info + 14) & 0xFFFF;
+        header.compression = buf.getInt(info + 16);
+        header.imageSize = buf.getInt(info + 20);
+        header.xPelsPerMeter = buf.getInt(info + 24);
+        header.yPelsPerMeter = buf.getInt(info + 28);
+        header.colorsUsed = buf.getInt(info + 32);
+        return header;
+    }
+
+    /**
+     * @return Offset, from the start of the page data, of the first pixel row (bfOffBits)
+     */
+    public int getPixelDataOffset()
+    {
+        return pixelDataOffset;
+    }
+
+    public int getHeaderSize()
+    {
+        return headerSize;
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * @return true if the first row in the data is the top row of the image
+     */
+    public boolean isTopDown()
+    {
+        return topDown;
+    }
+
+    public int getPlanes()
+    {
+        return planes;
+    }
+
+    public int getBitsPerPixel()
+    {
+        return bitsPerPixel;
+    }
+
+    public int getCompression()
+    {
+        return compression;
+    }
+
+    public int getImageSize()
+    {
+        return imageSize;
+    }
+
+    public int getXPelsPerMeter()
+    {
+        return xPelsPerMeter;
+    }
+
+    public int getYPelsPerMeter()
+    {
+        return yPelsPerMeter;
+    }
+
+    public int getColorsUsed()
+    {
+        return colorsUsed;
+    }
+
+    /**
+     * @return Number of entries in the color table.  Only images of 8 bits per pixel or less have one.
+     */
+    public int getPaletteSize()
+    {
+        if ( bitsPerPixel > 8 )
+            return 0;
+        if ( colorsUsed > 0 )
+            return Math.min(colorsUsed, 1 << bitsPerPixel);
+        return 1 << bitsPerPixel;
+    }
+
+    /**
+     * @return Number of bytes in each pixel row.  Rows are padded to a multiple of 4 bytes.
+     */
+    public int getStride()
+    {
+        return (int)((((long)width * bitsPerPixel + 31) / 32) * 4);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "width=" + width + ", height=" + height + ", bitsPerPixel=" + bitsPerPixel +
+               ", compression=" + compression + ", topDown=" + topDown;
+    }
+}
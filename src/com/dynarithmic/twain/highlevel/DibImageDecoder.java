@@ -0,0 +1,159 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+/**
+ * Builds a BufferedImage directly over the pixel rows of an uncompressed 1, 4, 8, 24 or 32 bit BMP
+ * page, without going through a general purpose image decoder.  The returned image shares the page's
+ * byte array; rows are addressed using the BMP row stride, so no pixel data is copied.  Bottom-up
+ * images (the usual BMP layout) have their rows reversed in place first.<p>
+ * Other BMP variants (16 bit, bit fields, RLE compression) are not handled, and should be decoded
+ * by other means.
+ */
+public class DibImageDecoder
+{
+    private DibImageDecoder()
+    {}
+
+    /**
+     * @param header The header of the page
+     * @return true if {@link #decode(byte[], DibHeader)} can build an image for this page
+     */
+    public static boolean isSupported(DibHeader header)
+    {
+        if ( header == null || header.getCompression() != DibHeader.BI_RGB || header.getPlanes() != 1 )
+            return false;
+        if ( header.getWidth() <= 0 || header.getHeight() <= 0 )
+            return false;
+        switch (header.getBitsPerPixel())
+        {
+            case 1:
+            case 4:
+            case 8:
+            case 24:
+            case 32:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @param data The full page data (BITMAPFILEHEADER onwards).  The array becomes the backing store of
+     * the returned image, and its rows may be reordered, so the caller must not use it afterwards.
+     * @param header The header of the page, as returned by DibHeader.parse(data)
+     * @return The image, or null if the page is not supported or the data is incomplete.
+     */
+    public static BufferedImage decode(byte[] data, DibHeader header)
+    {
+        if ( !isSupported(header) )
+            return null;
+        int width = header.getWidth();
+        int height = header.getHeight();
+        int bits = header.getBitsPerPixel();
+        int stride = header.getStride();
+        int offset = header.getPixelDataOffset();
+        if ( offset < 0 || (long)offset + (long)stride * height > data.length )
+            return null;
+
+        if ( !header.isTopDown() )
+            flipRows(data, offset, stride, height);
+
+        // The rasters address the pixels from the start of the array, so the position of the
+        // pixel data is given in the band (or bit) offsets
+        DataBufferByte dataBuffer = new DataBufferByte(data, data.length);
+        WritableRaster raster;
+        ColorModel colorModel;
+        switch (bits)
+        {
+            case 24:
+            case 32:
+                // BMP stores blue, green, red
+                raster = Raster.createInterleavedRaster(dataBuffer, width, height, stride, bits / 8,
+                                                        new int[] {offset + 2, offset + 1, offset}, null);
+                colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), false, false,
+                                                     Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+                break;
+
+            case 8:
+                raster = Raster.createInterleavedRaster(dataBuffer, width, height, stride, 1, new int[] {offset}, null);
+                colorModel = createPalette(data, header);
+                break;
+
+            default:
+                raster = Raster.createWritableRaster(
+                        new MultiPixelPackedSampleModel(DataBuffer.TYPE_BYTE, width, height, bits, stride, offset * 8),
+                        dataBuffer, null);
+                colorModel = createPalette(data, header);
+                break;
+        }
+        if ( colorModel == null )
+            return null;
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    private static IndexColorModel createPalette(byte[] data, DibHeader header)
+    {
+        int bits = header.getBitsPerPixel();
+        int paletteSize = header.getPaletteSize();
+        int paletteStart = DibHeader.FILE_HEADER_SIZE + header.getHeaderSize();
+        if ( paletteStart + paletteSize * 4 > header.getPixelDataOffset() )
+            return null;
+        byte[] red = new byte[paletteSize];
+        byte[] green = new byte[paletteSize];
+        byte[] blue = new byte[paletteSize];
+        // Each RGBQUAD entry is blue, green, red, reserved
+        for (int i = 0; i < paletteSize; ++i)
+        {
+            int entry = paletteStart + i * 4;
+            blue[i] = data[entry];
+            green[i] = data[entry + 1];
+            red[i] = data[entry + 2];
+        }
+        return new IndexColorModel(bits, paletteSize, red, green, blue);
+    }
+
+    private static void flipRows(byte[] data, int offset, int stride, int height)
+    {
+        byte[] row = new byte[stride];
+        for (int top = 0, bottom = height - 1; top < bottom; ++top, --bottom)
+        {
+            int topStart = offset + top * stride;
+            int bottomStart = offset + bottom * stride;
+            System.arraycopy(data, topStart, row, 0, stride);
+            System.arraycopy(data, bottomStart, data, topStart, stride);
+            System.arraycopy(row, 0, data, bottomStart, stride);
+        }
+    }
+}
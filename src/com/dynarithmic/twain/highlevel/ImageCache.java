@@ -0,0 +1,140 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of decoded page images, bounded by the total number of pixel bytes.
+ * The images are held by soft references, so the garbage collector may still reclaim them when
+ * memory is low.
+ */
+class ImageCache
+{
+    private static class Entry
+    {
+        final SoftReference<BufferedImage> image;
+        final long size;
+
+        Entry(BufferedImage image, long size)
+        {
+            this.image = new SoftReference<>(image);
+            this.size = size;
+        }
+    }
+
+    private final Map<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxBytes;
+    private long totalBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    ImageCache(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+    }
+
+    private static Long key(int acquisitionNumber, int page)
+    {
+        return ((long)acquisitionNumber << 32) | (page & 0xFFFFFFFFL);
+    }
+
+    static long pixelBytes(BufferedImage image)
+    {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long)buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    synchronized BufferedImage get(int acquisitionNumber, int page)
+    {
+        Long k = key(acquisitionNumber, page);
+        Entry entry = entries.get(k);
+        if ( entry != null )
+        {
+            BufferedImage image = entry.image.get();
+            if ( image != null )
+            {
+                ++hits;
+                return image;
+            }
+            // Reclaimed by the garbage collector
+            entries.remove(k);
+            totalBytes -= entry.size;
+        }
+        ++misses;
+        return null;
+    }
+
+    synchronized void put(int acquisitionNumber, int page, BufferedImage image)
+    {
+        long size = pixelBytes(image);
+        if ( size > maxBytes )
+            return;
+        Entry old = entries.put(key(acquisitionNumber, page), new Entry(image, size));
+        if ( old != null )
+            totalBytes -= old.size;
+        totalBytes += size;
+        trim();
+    }
+
+    private void trim()
+    {
+        Iterator<Entry> it = entries.values().iterator();
+        while (totalBytes > maxBytes && it.hasNext())
+        {
+            totalBytes -= it.next().size;
+            it.remove();
+        }
+    }
+
+    synchronized void setMaxBytes(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+        trim();
+    }
+
+    synchronized void clear()
+    {
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    synchronized long getTotalBytes()
+    {
+        return totalBytes;
+    }
+
+    synchronized long getHits()
+    {
+        return hits;
+    }
+
+    synchronized long getMisses()
+    {
+        return misses;
+    }
+}
@@ -23,6 +23,8 @@ package com.dynarithmic.twain.highlevel;
 
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.commons.imaging.ImageReadException;
 import org.apache.commons.imaging.Imaging;
@@ -32,6 +34,7 @@ import com.dynarithmic.twain.exceptions.DTwainRuntimeException;
 public class ImageHandler
 {
     TwainAcquisitionArray acquisitionArray = null;
+    private ImageCache imageCache = null;
     public ImageHandler()
     {}
 
@@ -74,8 +77,132 @@ public class ImageHandler
         return new byte[0];
     }
 
+    /**
+     * @return A read-only view of the page data.  For pages held in direct buffers
+     * (see ImageStorageOptions.enableDirectBuffers()), the data is not copied onto the Java heap.
+     */
+    public ByteBuffer getImageBuffer(int acquisitionNumber, int page) throws DTwainRuntimeException
+    {
+        int numImages = getNumImages(acquisitionNumber);
+        if ( numImages > 0 )
+        {
+            if ( page >= 0 && page < numImages )
+                return this.acquisitionArray.get(acquisitionNumber).getImageBuffer(page);
+        }
+        return ByteBuffer.allocate(0).asReadOnlyBuffer();
+    }
+
+    /**
+     * @return The BMP header (width, height, bit depth, etc.) of the page, read without decoding
+     * the page, or null if the page does not exist or is not a BMP image.
+     */
+    public DibHeader getImageHeader(int acquisitionNumber, int page)
+    {
+        if ( page >= 0 && page < getNumImages(acquisitionNumber) )
+            return this.acquisitionArray.get(acquisitionNumber).getImageDataObject(page).getImageHeader();
+        return null;
+    }
+
+    /**
+     * Keeps the images returned by getImage() so that later calls for the same page do not decode the
+     * page again.  The least recently used images are dropped once the total pixel data exceeds
+     * <i>maxBytes</i>, and the cached images may also be reclaimed by the garbage collector.<p>
+     * Note that when caching is enabled, callers requesting the same page share the same BufferedImage,
+     * so the returned image should not be modified.
+     * @param maxBytes Maximum number of pixel bytes to keep.  A value of 0 disables the cache.
+     * @return The current object.
+     */
+    public ImageHandler enableImageCache(long maxBytes)
+    {
+        if ( maxBytes <= 0 )
+            this.imageCache = null;
+        else if ( this.imageCache == null )
+            this.imageCache = new ImageCache(maxBytes);
+        else
+            this.imageCache.setMaxBytes(maxBytes);
+        return this;
+    }
+
+    public boolean isImageCacheEnabled()
+    {
+        return this.imageCache != null;
+    }
+
+    public void clearImageCache()
+    {
+        if ( this.imageCache != null )
+            this.imageCache.clear();
+    }
+
+    public long getImageCacheHits()
+    {
+        return this.imageCache != null ? this.imageCache.getHits() : 0;
+    }
+
+    public long getImageCacheMisses()
+    {
+        return this.imageCache != null ? this.imageCache.getMisses() : 0;
+    }
+
+    public ImageStorageStatistics getStorageStatistics()
+    {
+        if ( this.acquisitionArray != null )
+            return this.acquisitionArray.getStorageStatistics();
+        return new ImageStorageStatistics();
+    }
+
+    /**
+     * @param acquisitionNumber The acquisition
+     * @param page The page of the acquisition
+     * @param maxWidth Largest width of the preview, in pixels
+     * @param maxHeight Largest height of the preview, in pixels
+     * @return A reduced size preview of the page, created in the background and cached with the page
+     * @see TwainAcquisitionData#getThumbnail(int, int, int)
+     */
+    public CompletableFuture<BufferedImage> getThumbnail(int acquisitionNumber, int page, int maxWidth, int maxHeight)
+    {
+        if ( getNumImages(acquisitionNumber) > page && page >= 0 )
+            return this.acquisitionArray.get(acquisitionNumber).getThumbnail(page, maxWidth, maxHeight);
+        return CompletableFuture.completedFuture(null);
+    }
+
     public BufferedImage getImage(int acquisitionNumber, int page) throws DTwainRuntimeException, IOException, ImageReadException
     {
+        ImageCache cache = this.imageCache;
+        if ( cache == null )
+            return decodeImage(acquisitionNumber, page);
+        BufferedImage image = cache.get(acquisitionNumber, page);
+        if ( image == null )
+        {
+            image = decodeImage(acquisitionNumber, page);
+            if ( image != null )
+                cache.put(acquisitionNumber, page, image);
+        }
+        return image;
+    }
+
+    private BufferedImage decodeImage(int acquisitionNumber, int page) throws DTwainRuntimeException, IOException, ImageReadException
+    {
+        if ( getNumImages(acquisitionNumber) > page && page >= 0 )
+        {
+            TwainImageData pageData = this.acquisitionArray.get(acquisitionNumber).getImageDataObject(page);
+
+            // Uncompressed BMP pages are wrapped directly, other formats use commons-imaging
+            DibHeader header = pageData.getImageHeader();
+            if ( DibImageDecoder.isSupported(header) )
+            {
+                BufferedImage image = DibImageDecoder.decode(pageData.getImageData(), header);
+                if ( image != null )
+                    return image;
+            }
+            if ( pageData.isDirect() )
+            {
+                ByteBuffer buffer = pageData.getImageBuffer();
+                if ( buffer.hasRemaining() )
+                    return Imaging.getBufferedImage(new ByteBufferInputStream(buffer));
+                return null;
+            }
+        }
         byte [] imageData = getImageData(acquisitionNumber, page);
         if ( imageData.length > 0 )
             return Imaging.getBufferedImage(imageData);
@@ -0,0 +1,69 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel;
+
+import com.dynarithmic.twain.DTwainConstants.ImageStorageCodecType;
+import com.dynarithmic.twain.exceptions.DTwainRuntimeException;
+
+/**
+ * <p>An ImageStorageCodec determines how the image data of an acquired page is held by a
+ * TwainImageData object.  The data is encoded once when the page is received from the JNI
+ * layer, and decoded each time the page data is requested.</p>
+ * <p>The built-in codecs are obtained by calling {@link #from(ImageStorageCodecType)}.  Applications
+ * may supply their own implementation to TwainImageData or TwainAcquisitionData.</p>
+ */
+public interface ImageStorageCodec
+{
+    /**
+     * @return A descriptive name of the codec
+     */
+    public String getName();
+
+    /**
+     * @param data The uncompressed page data.
+     * @return The data to store.  The returned array may be <i>data</i> itself.
+     */
+    public byte [] encode(byte [] data);
+
+    /**
+     * @param stored The data previously returned by {@link #encode(byte[])}.
+     * @param originalLength The length of the data that was originally encoded.
+     * @return The uncompressed page data.
+     * @throws DTwainRuntimeException if the stored data cannot be decoded.
+     */
+    public byte [] decode(byte [] stored, int originalLength) throws DTwainRuntimeException;
+
+    public static ImageStorageCodec from(ImageStorageCodecType codecType)
+    {
+        switch(codecType)
+        {
+            case RAW:
+                return RawImageStorageCodec.INSTANCE;
+            case BLOCK_LZ:
+                return BlockImageStorageCodec.INSTANCE;
+            case RLE:
+                return RunLengthImageStorageCodec.INSTANCE;
+            default:
+                return new DeflateImageStorageCodec(codecType.value());
+        }
+    }
+}
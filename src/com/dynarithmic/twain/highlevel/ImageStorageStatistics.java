@@ -0,0 +1,173 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel;
+
+/**
+ * Reports how much memory the stored pages occupy, and how quickly pages were encoded and
+ * decoded by their ImageStorageCodec.  Use this to choose the codec that best suits a workload.
+ */
+public class ImageStorageStatistics
+{
+    private int pageCount = 0;
+    private long originalBytes = 0;
+    private long storedBytes = 0;
+    private int spilledPageCount = 0;
+    private long spilledBytes = 0;
+    private long transferNanos = 0;
+    private long encodeNanos = 0;
+    private long decodeNanos = 0;
+    private long decodeCount = 0;
+
+    void add(TwainImageData imageData)
+    {
+        ++pageCount;
+        originalBytes += imageData.getOriginalSize();
+        storedBytes += imageData.getStoredSize();
+        if ( imageData.isSpilled() )
+        {
+            ++spilledPageCount;
+            spilledBytes += imageData.getStoredSize();
+        }
+        transferNanos += imageData.getTransferTime();
+        encodeNanos += imageData.getEncodeTime();
+        decodeNanos += imageData.getDecodeTime();
+        decodeCount += imageData.getDecodeCount();
+    }
+
+    void add(ImageStorageStatistics other)
+    {
+        pageCount += other.pageCount;
+        originalBytes += other.originalBytes;
+        storedBytes += other.storedBytes;
+        spilledPageCount += other.spilledPageCount;
+        spilledBytes += other.spilledBytes;
+        transferNanos += other.transferNanos;
+        encodeNanos += other.encodeNanos;
+        decodeNanos += other.decodeNanos;
+        decodeCount += other.decodeCount;
+    }
+
+    public int getPageCount()
+    {
+        return pageCount;
+    }
+
+    public long getOriginalBytes()
+    {
+        return originalBytes;
+    }
+
+    /**
+     * @return Total number of bytes held in memory for all of the pages
+     */
+    public long getStoredBytes()
+    {
+        return storedBytes;
+    }
+
+    /**
+     * @return Number of pages that were moved to a memory mapped temporary file
+     */
+    public int getSpilledPageCount()
+    {
+        return spilledPageCount;
+    }
+
+    /**
+     * @return Number of stored bytes held in a memory mapped temporary file, and not on the Java heap
+     */
+    public long getSpilledBytes()
+    {
+        return spilledBytes;
+    }
+
+    public long getAverageStoredBytesPerPage()
+    {
+        return pageCount == 0 ? 0 : storedBytes / pageCount;
+    }
+
+    /**
+     * @return Original size divided by the stored size.  A value of 1.0 means no compression.
+     */
+    public double getCompressionRatio()
+    {
+        return storedBytes == 0 ? 1.0 : (double)originalBytes / storedBytes;
+    }
+
+    /**
+     * @return Total time, in nanoseconds, that storing the pages held up the thread transferring the pages.
+     * When the pages are encoded by the session's encoder pool, compare this with getEncodeTime() to see
+     * how much work was moved off of the transferring thread.
+     */
+    public long getTransferTime()
+    {
+        return transferNanos;
+    }
+
+    /**
+     * @return Total time, in nanoseconds, spent encoding the pages
+     */
+    public long getEncodeTime()
+    {
+        return encodeNanos;
+    }
+
+    /**
+     * @return Total time, in nanoseconds, spent decoding the pages
+     */
+    public long getDecodeTime()
+    {
+        return decodeNanos;
+    }
+
+    public long getDecodeCount()
+    {
+        return decodeCount;
+    }
+
+    /**
+     * @return Number of pages encoded per second
+     */
+    public double getEncodePagesPerSecond()
+    {
+        return encodeNanos == 0 ? 0.0 : pageCount * 1.0e9 / encodeNanos;
+    }
+
+    /**
+     * @return Number of pages decoded per second
+     */
+    public double getDecodePagesPerSecond()
+    {
+        return decodeNanos == 0 ? 0.0 : decodeCount * 1.0e9 / decodeNanos;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "pages=" + pageCount + ", originalBytes=" + originalBytes + ", storedBytes=" + storedBytes +
+               ", spilledPages=" + spilledPageCount + ", spilledBytes=" + spilledBytes +
+               ", bytesPerPage=" + getAverageStoredBytesPerPage() +
+               String.format(", ratio=%.2f, transferMs=%.1f, encodeMs=%.1f, encodePagesPerSec=%.1f, decodePagesPerSec=%.1f",
+                             getCompressionRatio(), transferNanos / 1.0e6, encodeNanos / 1.0e6,
+                             getEncodePagesPerSecond(), getDecodePagesPerSecond());
+    }
+}
@@ -21,10 +21,17 @@
  */
 package com.dynarithmic.twain.highlevel;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.dynarithmic.twain.exceptions.DTwainJavaAPIException;
 import com.dynarithmic.twain.highlevel.acquirecharacteristics.AcquireCharacteristics;
@@ -96,19 +103,42 @@ public class OptionsApplyer
         }
     }
     
+    /**
+     * @deprecated Use getOptionsApplyerList(), setOptionPriority() and getApplyOrder().  Changes made directly to
+     * this list are still used by applyAll().
+     */
+    @Deprecated
     public List<OptionsApplyerInfo> applyerInfoList = new ArrayList<>();
+    private final Map<OptionsApplyerFunction, EnumSet<OptionsApplyerFunction>> applyBefore = new EnumMap<>(OptionsApplyerFunction.class);
+    private List<OptionsApplyerInfo> applyOrder = null;
+    // The priority list the cached order was computed from
+    private List<OptionsApplyerInfo> applyOrderBasis = null;
+    private boolean skipUnchangedEnabled = true;
+    private boolean forceFullApply = false;
     
+    /**
+     * Creates an applyer with the default priorities and dependencies.  Because of the default dependencies (see
+     * resetDependencies()), applyAll() does not apply the groups strictly in OptionsApplyerFunction order: for example,
+     * DEVICEPARAMSOPTIONS and PAPERHANDLINGOPTIONS are applied before PAGESSUPPORTOPTIONS.  To apply the groups in
+     * priority order only, as earlier versions did, call removeDependency() for each of the default dependencies.
+     */
     public OptionsApplyer()
     {
         resetAllOptions();
+        resetDependencies();
     }
     
-    public List<OptionsApplyerInfo> getOptionsApplyerList() 
+    public synchronized List<OptionsApplyerInfo> getOptionsApplyerList() 
     {
         return new ArrayList<>(applyerInfoList);        
     }
     
-    public void setOptionPriority(OptionsApplyerFunction func, int priority, boolean enable) throws IllegalArgumentException
+    /**
+     * Moves an option group to the given position in the priority list.  The groups between the old and new
+     * positions move by one place, and the priorities of all the groups are renumbered to their new positions.
+     * @param priority The new position, or -1 to leave the position unchanged and only set whether the group is enabled
+     */
+    public synchronized void setOptionPriority(OptionsApplyerFunction func, int priority, boolean enable) throws IllegalArgumentException
     {
         if ( priority < -1 || priority >= OptionsApplyerFunction.values().length)
             throw new IllegalArgumentException();
@@ -121,24 +151,26 @@ public class OptionsApplyer
             OptionsApplyerInfo curInfo = myItr.next();
             if (curInfo.applyerFunction == func)
             {
-                int priorityToUse = curInfo.priority;
-                if ( priority != -1 )
-                    priorityToUse = priority;
-                else
-                {
-                    curInfo.enabled = enable;
+                curInfo.enabled = enable;
+                if ( priority == -1 )
                     break;
-                }
-                OptionsApplyerInfo copyInfo = new OptionsApplyerInfo(curInfo.applyerFunction, 
-                        priorityToUse, enable);
-                this.applyerInfoList.remove(curInfo);
-                this.applyerInfoList.add(priority, copyInfo);
+                myItr.remove();
+                this.applyerInfoList.add(priority, curInfo);
+                renumberPriorities();
                 break;
             }
         }        
     }
 
-    public OptionsApplyerInfo getOptionApplyerInfo(OptionsApplyerFunction func)
+    private void renumberPriorities()
+    {
+        int curPriority = 0;
+        for (OptionsApplyerInfo curInfo : applyerInfoList)
+            curInfo.priority = curPriority++;
+        applyOrder = null;
+    }
+
+    public synchronized OptionsApplyerInfo getOptionApplyerInfo(OptionsApplyerFunction func)
     {
         // Find the function
         Iterator<OptionsApplyerInfo> myItr = this.applyerInfoList.iterator();
@@ -152,7 +184,7 @@ public class OptionsApplyer
         return null;
     }
     
-    public void enableAllOptions(boolean enable)
+    public synchronized void enableAllOptions(boolean enable)
     {
         Iterator<OptionsApplyerInfo> myItr = this.applyerInfoList.iterator();
 
@@ -163,20 +195,200 @@ public class OptionsApplyer
         }
     }
     
-    public void resetAllOptions()
+    public synchronized void resetAllOptions()
     {
+        applyerInfoList.clear();
         int curPriority = 0;
         for (OptionsApplyerFunction value : OptionsApplyerFunction.values()) 
         { 
             applyerInfoList.add(new OptionsApplyerInfo(value, curPriority, true));
             ++curPriority;
         }
+        applyOrder = null;
+    }
+
+    /**
+     * Restores the default dependencies between the option groups.  A group that sets a capability which changes
+     * the values of another group's capabilities is applied first.  For example, DEVICEPARAMSOPTIONS sets ICAP_UNITS,
+     * so it is applied before PAGESSUPPORTOPTIONS (ICAP_FRAMES) and RESOLUTIONOPTIONS.
+     */
+    public synchronized void resetDependencies()
+    {
+        applyBefore.clear();
+        addDefaultDependencies(OptionsApplyerFunction.DEVICEPARAMSOPTIONS,
+                               OptionsApplyerFunction.PAGESSUPPORTOPTIONS,
+                               OptionsApplyerFunction.RESOLUTIONOPTIONS,
+                               OptionsApplyerFunction.IMAGETYPEOPTIONS);
+        addDefaultDependencies(OptionsApplyerFunction.PAPERHANDLINGOPTIONS,
+                               OptionsApplyerFunction.PAGESSUPPORTOPTIONS,
+                               OptionsApplyerFunction.AUTOSCANNINGOPTIONS);
+        addDefaultDependencies(OptionsApplyerFunction.IMAGEPARAMETEROPTIONS,
+                               OptionsApplyerFunction.PAGESSUPPORTOPTIONS);
+        addDefaultDependencies(OptionsApplyerFunction.AUTOADJUSTOPTIONS,
+                               OptionsApplyerFunction.PAGESSUPPORTOPTIONS);
+        applyOrder = null;
+    }
+
+    private void addDefaultDependencies(OptionsApplyerFunction func, OptionsApplyerFunction... dependents)
+    {
+        for (OptionsApplyerFunction dependent : dependents)
+            applyBefore.computeIfAbsent(func, k -> EnumSet.noneOf(OptionsApplyerFunction.class)).add(dependent);
+    }
+
+    /**
+     * Makes applyAll() apply one option group before another, regardless of their priorities.
+     * @throws IllegalArgumentException if the dependency would make the groups depend on each other
+     */
+    public synchronized void addDependency(OptionsApplyerFunction func, OptionsApplyerFunction dependent) throws IllegalArgumentException
+    {
+        if ( func == dependent || getDependents(dependent).contains(func) )
+            throw new IllegalArgumentException(func + " cannot be applied before " + dependent);
+        applyBefore.computeIfAbsent(func, k -> EnumSet.noneOf(OptionsApplyerFunction.class)).add(dependent);
+        applyOrder = null;
+    }
+
+    public synchronized void removeDependency(OptionsApplyerFunction func, OptionsApplyerFunction dependent)
+    {
+        EnumSet<OptionsApplyerFunction> dependents = applyBefore.get(func);
+        if ( dependents != null && dependents.remove(dependent) )
+            applyOrder = null;
+    }
+
+    /**
+     * @return The option groups that are applied after func, directly or through other groups
+     */
+    public synchronized Set<OptionsApplyerFunction> getDependents(OptionsApplyerFunction func)
+    {
+        EnumSet<OptionsApplyerFunction> dependents = EnumSet.noneOf(OptionsApplyerFunction.class);
+        Deque<OptionsApplyerFunction> toVisit = new ArrayDeque<>();
+        toVisit.add(func);
+        while (!toVisit.isEmpty())
+        {
+            EnumSet<OptionsApplyerFunction> next = applyBefore.get(toVisit.poll());
+            if ( next == null )
+                continue;
+            for (OptionsApplyerFunction dependent : next)
+            {
+                if ( dependents.add(dependent) )
+                    toVisit.add(dependent);
+            }
+        }
+        return dependents;
+    }
+
+    /**
+     * @return The order in which applyAll() applies the option groups.  Each group comes after the groups it
+     * depends on, and otherwise in priority order.  The order is computed when the priorities or dependencies change.
+     */
+    public synchronized List<OptionsApplyerInfo> getApplyOrder()
+    {
+        // applyerInfoList may have been changed directly, so the cached order is checked against it
+        if ( applyOrder == null || !applyerInfoList.equals(applyOrderBasis) )
+        {
+            applyOrderBasis = new ArrayList<>(applyerInfoList);
+            applyOrder = computeApplyOrder();
+        }
+        return applyOrder;
+    }
+
+    private List<OptionsApplyerInfo> computeApplyOrder()
+    {
+        Map<OptionsApplyerFunction, Integer> remaining = new EnumMap<>(OptionsApplyerFunction.class);
+        for (OptionsApplyerInfo curInfo : applyerInfoList)
+            remaining.put(curInfo.applyerFunction, 0);
+        for (EnumSet<OptionsApplyerFunction> dependents : applyBefore.values())
+        {
+            for (OptionsApplyerFunction dependent : dependents)
+                remaining.merge(dependent, 1, Integer::sum);
+        }
+
+        // Repeatedly take the first group in the priority list that has no groups left to wait for
+        List<OptionsApplyerInfo> pending = new ArrayList<>(applyerInfoList);
+        List<OptionsApplyerInfo> order = new ArrayList<>(pending.size());
+        while (!pending.isEmpty())
+        {
+            Iterator<OptionsApplyerInfo> myItr = pending.iterator();
+            OptionsApplyerInfo next = null;
+            while (myItr.hasNext())
+            {
+                OptionsApplyerInfo curInfo = myItr.next();
+                if ( remaining.get(curInfo.applyerFunction) == 0 )
+                {
+                    next = curInfo;
+                    myItr.remove();
+                    break;
+                }
+            }
+            // addDependency() does not allow cycles, so this only guards against an inconsistent graph
+            if ( next == null )
+            {
+                order.addAll(pending);
+                break;
+            }
+            order.add(next);
+            EnumSet<OptionsApplyerFunction> dependents = applyBefore.get(next.applyerFunction);
+            if ( dependents != null )
+            {
+                for (OptionsApplyerFunction dependent : dependents)
+                    remaining.merge(dependent, -1, Integer::sum);
+            }
+        }
+        return Collections.unmodifiableList(order);
     }
     
+    /**
+     * @param enable If true (the default), applyAll() only sends a capability to the source when its value differs
+     * from the value last applied to the source, or when a capability it depends on has been set since.  The number
+     * of capabilities not sent is returned by the source's CapabilityInterface.getSkippedSetCount().
+     */
+    public synchronized OptionsApplyer enableSkipUnchanged(boolean enable)
+    {
+        this.skipUnchangedEnabled = enable;
+        return this;
+    }
+
+    public synchronized boolean isSkipUnchangedEnabled()
+    {
+        return this.skipUnchangedEnabled;
+    }
+
+    /**
+     * Sends every capability on the next applyAll(), for example, if the settings of the source may have been changed
+     * by another application.
+     */
+    public synchronized OptionsApplyer forceFullApply()
+    {
+        this.forceFullApply = true;
+        return this;
+    }
+
+    private synchronized boolean takeForceFullApply()
+    {
+        boolean force = forceFullApply;
+        forceFullApply = false;
+        return force;
+    }
+
     public static void applyAll(TwainSource source) throws DTwainJavaAPIException
     {
-        List<OptionsApplyerInfo> optionsApplyerList = 
-                source.getOptionsApplyer().getOptionsApplyerList();
+        OptionsApplyer applyer = source.getOptionsApplyer();
+        CapabilityInterface ci = source.getCapabilityInterface();
+        if ( applyer.takeForceFullApply() )
+            ci.clearAppliedSets();
+        boolean wasSkipping = ci.isSkipUnchangedSetsEnabled();
+        ci.enableSkipUnchangedSets(applyer.isSkipUnchangedEnabled());
+        try
+        {
+            applyAll(source, applyer.getApplyOrder());
+        }
+        finally
+        {
+            ci.enableSkipUnchangedSets(wasSkipping);
+        }
+    }
+
+    private static void applyAll(TwainSource source, List<OptionsApplyerInfo> optionsApplyerList) throws DTwainJavaAPIException
+    {
         Iterator<OptionsApplyerInfo> myItr = optionsApplyerList.iterator();
         AcquireCharacteristics ac = source.getAcquireCharacteristics();
         while (myItr.hasNext()) 
@@ -0,0 +1,156 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Computes the hashes used to find duplicate pages.<p>
+ * The content hash is the 64 bit xxHash (XXH64, seed 0) of the page data, and only matches pages
+ * with identical data, such as a page pulled twice by the feeder.<p>
+ * The perceptual hash matches pages that look alike, such as a page scanned twice.  The page is
+ * reduced with a box filter to a 16 x 16 grid of average luminance, and each of the 256 bits records
+ * whether a cell is brighter than the median cell.  Every pixel contributes to its cell, so small
+ * shifts and noise between two scans of the same page change few bits.
+ */
+final class PageHasher
+{
+    private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME64_3 = 0x165667B19E3779F9L;
+    private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+    private static final int GRID_SIZE = 16;
+    // Pages with less luminance difference than this across the grid (blank pages) have no perceptual hash
+    private static final int MIN_CONTRAST = 8;
+
+    private PageHasher()
+    {}
+
+    /**
+     * @param data The data between the buffer's position and limit is hashed
+     * @return The XXH64 hash of the data
+     */
+    static long contentHash(ByteBuffer data)
+    {
+        ByteBuffer in = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int p = in.position();
+        int end = in.limit();
+        long length = end - p;
+        long hash;
+        if ( length >= 32 )
+        {
+            long v1 = PRIME64_1 + PRIME64_2;
+            long v2 = PRIME64_2;
+            long v3 = 0;
+            long v4 = -PRIME64_1;
+            int limit = end - 32;
+            for (; p <= limit; p += 32)
+            {
+                v1 = round(v1, in.getLong(p));
+                v2 = round(v2, in.getLong(p + 8));
+                v3 = round(v3, in.getLong(p + 16));
+                v4 = round(v4, in.getLong(p + 24));
+            }
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        }
+        else
+            hash = PRIME64_5;
+        hash += length;
+        for (; p + 8 <= end; p += 8)
+            hash = Long.rotateLeft(hash ^ round(0, in.getLong(p)), 27) * PRIME64_1 + PRIME64_4;
+        if ( p + 4 <= end )
+        {
+            hash = Long.rotateLeft(hash ^ ((in.getInt(p) & 0xFFFFFFFFL) * PRIME64_1), 23) * PRIME64_2 + PRIME64_3;
+            p += 4;
+        }
+        for (; p < end; ++p)
+            hash = Long.rotateLeft(hash ^ ((in.get(p) & 0xFFL) * PRIME64_5), 11) * PRIME64_1;
+        hash ^= hash >>> 33;
+        hash *= PRIME64_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME64_3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private static long round(long acc, long input)
+    {
+        return Long.rotateLeft(acc + input * PRIME64_2, 31) * PRIME64_1;
+    }
+
+    private static long mergeRound(long acc, long val)
+    {
+        return (acc ^ round(0, val)) * PRIME64_1 + PRIME64_4;
+    }
+
+    /**
+     * @param data The page data, starting at the buffer's position
+     * @param header The header of the page
+     * @return The 256 bit perceptual hash, or null if the page is not an uncompressed BMP
+     * supported by DibImageDecoder, or has too little contrast to be compared
+     */
+    static long[] perceptualHash(ByteBuffer data, DibHeader header)
+    {
+        if ( !DibImageDecoder.isSupported(header) || header.getWidth() < GRID_SIZE || header.getHeight() < GRID_SIZE )
+            return null;
+        BufferedImage grid = PageThumbnailer.reduceTo(data, header, GRID_SIZE, GRID_SIZE);
+        if ( grid == null )
+            return null;
+        int[] rgb = grid.getRGB(0, 0, GRID_SIZE, GRID_SIZE, null, 0, GRID_SIZE);
+        int[] luminance = new int[rgb.length];
+        for (int i = 0; i < rgb.length; ++i)
+            luminance[i] = (77 * ((rgb[i] >> 16) & 0xFF) + 150 * ((rgb[i] >> 8) & 0xFF) + 29 * (rgb[i] & 0xFF)) >> 8;
+        int[] sorted = luminance.clone();
+        Arrays.sort(sorted);
+        if ( sorted[sorted.length - 1] - sorted[0] < MIN_CONTRAST )
+            return null;
+        int median = sorted[sorted.length / 2];
+
+        long[] hash = new long[GRID_SIZE * GRID_SIZE / 64];
+        for (int bit = 0; bit < luminance.length; ++bit)
+        {
+            if ( luminance[bit] > median )
+                hash[bit >> 6] |= 1L << (bit & 63);
+        }
+        return hash;
+    }
+
+    /**
+     * @return The number of bits that differ between the two hashes
+     */
+    static int distance(long[] hash1, long[] hash2)
+    {
+        int distance = 0;
+        for (int i = 0; i < hash1.length; ++i)
+            distance += Long.bitCount(hash1[i] ^ hash2[i]);
+        return distance;
+    }
+}
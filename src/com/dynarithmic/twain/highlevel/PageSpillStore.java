@@ -0,0 +1,115 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Holds the pages of one acquisition run that do not fit within the heap budget set by
+ * ImageStorageOptions.setHeapBudget().  Pages are appended to a temporary file, and each page
+ * is handed back as a read-only memory mapped slice of that file.<p>
+ * The file is deleted when the store is closed.  The mapped slices remain valid after the
+ * store is closed, until they are garbage collected.
+ */
+final class PageSpillStore
+{
+    private final long heapBudget;
+    private long heapBytes = 0;
+    private long spilledBytes = 0;
+    private FileChannel channel;
+
+    PageSpillStore(String directory, long heapBudget) throws IOException
+    {
+        this.heapBudget = heapBudget;
+        Path dir = (directory == null || directory.isEmpty()) ?
+                Paths.get(System.getProperty("java.io.tmpdir")) : Paths.get(directory);
+        Path file = Files.createTempFile(dir, "dtwain", ".pages");
+        this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                                        StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    /**
+     * @param length Number of bytes about to be stored for a page
+     * @return true if the page would exceed the heap budget, and should be spilled to disk
+     */
+    synchronized boolean shouldSpill(int length)
+    {
+        return channel != null && length > 0 && heapBytes + length > heapBudget;
+    }
+
+    synchronized void addHeapBytes(int length)
+    {
+        heapBytes += length;
+    }
+
+    /**
+     * @param data The data to append to the file
+     * @return A read-only buffer mapped onto the appended data, or null if the data could not
+     * be written, in which case the caller should keep the data on the heap.
+     */
+    synchronized ByteBuffer append(byte[] data)
+    {
+        if ( channel == null )
+            return null;
+        try
+        {
+            long position = spilledBytes;
+            ByteBuffer src = ByteBuffer.wrap(data);
+            while (src.hasRemaining())
+                channel.write(src, position + src.position());
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, data.length);
+            spilledBytes += data.length;
+            return mapped;
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+
+    synchronized long getSpilledBytes()
+    {
+        return spilledBytes;
+    }
+
+    synchronized void close()
+    {
+        if ( channel != null )
+        {
+            try
+            {
+                channel.close();
+            }
+            catch (IOException e)
+            {
+                // The file is removed when the process ends
+            }
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.Imaging;
+
+import com.dynarithmic.twain.exceptions.DTwainRuntimeException;
+
+/**
+ * Creates reduced size previews of acquired pages.  Uncompressed 1, 4, 8, 24 and 32 bit BMP pages
+ * are reduced with a box filter that reads the pixel rows of the page directly, one row at a time,
+ * so the full size image is never built.  Other pages are decoded and then scaled.
+ */
+final class PageThumbnailer
+{
+    private PageThumbnailer()
+    {}
+
+    static BufferedImage createThumbnail(TwainImageData page, int maxWidth, int maxHeight)
+            throws DTwainRuntimeException, IOException, ImageReadException
+    {
+        if ( maxWidth <= 0 || maxHeight <= 0 )
+            throw new IllegalArgumentException("Invalid thumbnail size: " + maxWidth + "x" + maxHeight);
+        ByteBuffer data = page.getImageBuffer();
+        if ( !data.hasRemaining() )
+            return null;
+        DibHeader header = page.getImageHeader();
+        if ( DibImageDecoder.isSupported(header) )
+        {
+            BufferedImage thumbnail = reduce(data, header, maxWidth, maxHeight);
+            if ( thumbnail != null )
+                return thumbnail;
+        }
+        return scale(Imaging.getBufferedImage(new ByteBufferInputStream(data)), maxWidth, maxHeight);
+    }
+
+    private static int scaledLength(int length, double scale)
+    {
+        return Math.max(1, (int)Math.round(length * scale));
+    }
+
+    private static double getScale(int width, int height, int maxWidth, int maxHeight)
+    {
+        return Math.min(1.0, Math.min((double)maxWidth / width, (double)maxHeight / height));
+    }
+
+    private static BufferedImage scale(BufferedImage image, int maxWidth, int maxHeight)
+    {
+        if ( image == null )
+            return null;
+        double scale = getScale(image.getWidth(), image.getHeight(), maxWidth, maxHeight);
+        BufferedImage thumbnail = new BufferedImage(scaledLength(image.getWidth(), scale),
+                                                    scaledLength(image.getHeight(), scale),
+                                                    BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = thumbnail.createGraphics();
+        try
+        {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, thumbnail.getWidth(), thumbnail.getHeight(), null);
+        }
+        finally
+        {
+            g.dispose();
+        }
+        return thumbnail;
+    }
+
+    static BufferedImage reduce(ByteBuffer data, DibHeader header, int maxWidth, int maxHeight)
+    {
+        double scale = getScale(header.getWidth(), header.getHeight(), maxWidth, maxHeight);
+        return reduceTo(data, header, scaledLength(header.getWidth(), scale), scaledLength(header.getHeight(), scale));
+    }
+
+    /**
+     * Averages each box of source pixels into one pixel of the returned image.
+     * @param data The page data, starting at the buffer's position
+     * @param header The header of the page.  The page must be supported by DibImageDecoder.
+     * @param outWidth Width of the returned image
+     * @param outHeight Height of the returned image
+     * @return The reduced image, or null if the page data is incomplete
+     */
+    static BufferedImage reduceTo(ByteBuffer data, DibHeader header, int outWidth, int outHeight)
+    {
+        int width = header.getWidth();
+        int height = header.getHeight();
+        int bits = header.getBitsPerPixel();
+        int stride = header.getStride();
+        int base = data.position();
+        int offset = base + header.getPixelDataOffset();
+        if ( (long)offset + (long)stride * height > data.limit() )
+            return null;
+        int[] palette = null;
+        if ( bits <= 8 )
+        {
+            palette = readPalette(data, base, header);
+            if ( palette == null )
+                return null;
+        }
+
+        // Thumbnail column of each source column
+        int[] column = new int[width];
+        for (int x = 0; x < width; ++x)
+            column[x] = (int)((long)x * outWidth / width);
+
+        byte[] row = new byte[stride];
+        long[] red = new long[outWidth];
+        long[] green = new long[outWidth];
+        long[] blue = new long[outWidth];
+        int[] count = new int[outWidth];
+        int[] outRow = new int[outWidth];
+        BufferedImage thumbnail = new BufferedImage(outWidth, outHeight, BufferedImage.TYPE_INT_RGB);
+        // Rows are read through a duplicate, so the position of the page data is left unchanged
+        ByteBuffer rows = data.duplicate();
+        int y = 0;
+        for (int outY = 0; outY < outHeight; ++outY)
+        {
+            // Source rows are assigned to thumbnail rows the same way as the columns
+            for (; y < height && (long)y * outHeight / height == outY; ++y)
+            {
+                int fileRow = header.isTopDown() ? y : height - 1 - y;
+                rows.position(offset + fileRow * stride);
+                rows.get(row, 0, stride);
+                accumulateRow(row, bits, width, palette, column, red, green, blue, count);
+            }
+            for (int x = 0; x < outWidth; ++x)
+            {
+                int n = Math.max(1, count[x]);
+                outRow[x] = (int)(red[x] / n) << 16 | (int)(green[x] / n) << 8 | (int)(blue[x] / n);
+                red[x] = green[x] = blue[x] = 0;
+                count[x] = 0;
+            }
+            thumbnail.setRGB(0, outY, outWidth, 1, outRow, 0, outWidth);
+        }
+        return thumbnail;
+    }
+
+    private static void accumulateRow(byte[] row, int bits, int width, int[] palette, int[] column,
+                                      long[] red, long[] green, long[] blue, int[] count)
+    {
+        if ( bits >= 24 )
+        {
+            int bytesPerPixel = bits / 8;
+            for (int x = 0, p = 0; x < width; ++x, p += bytesPerPixel)
+            {
+                int c = column[x];
+                // BMP stores blue, green, red
+                blue[c] += row[p] & 0xFF;
+                green[c] += row[p + 1] & 0xFF;
+                red[c] += row[p + 2] & 0xFF;
+                ++count[c];
+            }
+            return;
+        }
+        if ( bits == 8 )
+        {
+            for (int x = 0; x < width; ++x)
+            {
+                int index = row[x] & 0xFF;
+                int rgb = index < palette.length ? palette[index] : 0;
+                int c = column[x];
+                red[c] += (rgb >> 16) & 0xFF;
+                green[c] += (rgb >> 8) & 0xFF;
+                blue[c] += rgb & 0xFF;
+                ++count[c];
+            }
+            return;
+        }
+        int pixelsPerByte = 8 / bits;
+        int mask = (1 << bits) - 1;
+        for (int x = 0; x < width; ++x)
+        {
+            int shift = 8 - bits * (x % pixelsPerByte + 1);
+            int index = ((row[x / pixelsPerByte] & 0xFF) >> shift) & mask;
+            int rgb = index < palette.length ? palette[index] : 0;
+            int c = column[x];
+            red[c] += (rgb >> 16) & 0xFF;
+            green[c] += (rgb >> 8) & 0xFF;
+            blue[c] += rgb & 0xFF;
+            ++count[c];
+        }
+    }
+
+    private static int[] readPalette(ByteBuffer data, int base, DibHeader header)
+    {
+        int paletteSize = header.getPaletteSize();
+        int paletteStart = base + DibHeader.FILE_HEADER_SIZE + header.getHeaderSize();
+        if ( paletteStart + paletteSize * 4 > base + header.getPixelDataOffset() )
+            return null;
+        int[] palette = new int[paletteSize];
+        // Each RGBQUAD entry is blue, green, red, reserved
+        for (int i = 0; i < paletteSize; ++i)
+        {
+            int entry = paletteStart + i * 4;
+            palette[i] = (data.get(entry + 2) & 0xFF) << 16 | (data.get(entry + 1) & 0xFF) << 8 | (data.get(entry) & 0xFF);
+        }
+        return palette;
+    }
+}
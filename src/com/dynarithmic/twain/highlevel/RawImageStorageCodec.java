@@ -0,0 +1,52 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel;
+
+import java.util.Arrays;
+
+/**
+ * Stores the page data uncompressed.  Fastest to store and retrieve, but each page
+ * occupies its full size in memory.
+ */
+public class RawImageStorageCodec implements ImageStorageCodec
+{
+    public static final RawImageStorageCodec INSTANCE = new RawImageStorageCodec();
+
+    @Override
+    public String getName()
+    {
+        return "Raw";
+    }
+
+    @Override
+    public byte [] encode(byte [] data)
+    {
+        return data;
+    }
+
+    @Override
+    public byte [] decode(byte [] stored, int originalLength)
+    {
+        // Copy, so that the caller cannot alter the stored page
+        return Arrays.copyOf(stored, originalLength);
+    }
+}
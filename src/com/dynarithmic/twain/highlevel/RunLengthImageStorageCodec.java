@@ -0,0 +1,115 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel;
+
+import java.util.Arrays;
+
+import com.dynarithmic.twain.DTwainConstants;
+import com.dynarithmic.twain.exceptions.DTwainRuntimeException;
+
+/**
+ * Stores the page data using PackBits run-length encoding.  This is very fast, and works well
+ * for bitonal (1 bit-per-pixel) pages, which consist mostly of long runs of white or black.
+ */
+public class RunLengthImageStorageCodec implements ImageStorageCodec
+{
+    public static final RunLengthImageStorageCodec INSTANCE = new RunLengthImageStorageCodec();
+
+    private static final int MAX_RUN = 128;
+
+    @Override
+    public String getName()
+    {
+        return "Run length";
+    }
+
+    @Override
+    public byte [] encode(byte [] src)
+    {
+        int srcLength = src.length;
+        byte[] dst = CodecResourcePool.getScratch(srcLength + (srcLength + MAX_RUN - 1) / MAX_RUN);
+        int ip = 0;
+        int op = 0;
+        while (ip < srcLength)
+        {
+            int run = 1;
+            while (ip + run < srcLength && run < MAX_RUN && src[ip + run] == src[ip])
+                ++run;
+            if ( run >= 3 )
+            {
+                dst[op++] = (byte)(1 - run);
+                dst[op++] = src[ip];
+                ip += run;
+            }
+            else
+            {
+                // Gather literals until a run of 3 or more starts
+                int start = ip;
+                int count = 0;
+                while (ip < srcLength && count < MAX_RUN)
+                {
+                    if ( ip + 2 < srcLength && src[ip] == src[ip + 1] && src[ip] == src[ip + 2] )
+                        break;
+                    ++ip;
+                    ++count;
+                }
+                dst[op++] = (byte)(count - 1);
+                System.arraycopy(src, start, dst, op, count);
+                op += count;
+            }
+        }
+        return Arrays.copyOf(dst, op);
+    }
+
+    @Override
+    public byte [] decode(byte [] stored, int originalLength) throws DTwainRuntimeException
+    {
+        byte[] out = new byte[originalLength];
+        int ip = 0;
+        int op = 0;
+        try
+        {
+            while (ip < stored.length)
+            {
+                int header = stored[ip++];
+                if ( header >= 0 )
+                {
+                    System.arraycopy(stored, ip, out, op, header + 1);
+                    ip += header + 1;
+                    op += header + 1;
+                }
+                else if ( header != -128 )
+                {
+                    Arrays.fill(out, op, op + 1 - header, stored[ip++]);
+                    op += 1 - header;
+                }
+            }
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            throw new DTwainRuntimeException(DTwainConstants.ErrorCode.ERROR_DECOMPRESSION);
+        }
+        if ( op != originalLength )
+            throw new DTwainRuntimeException(DTwainConstants.ErrorCode.ERROR_DECOMPRESSION);
+        return out;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel;
+
+import com.dynarithmic.twain.DTwainJavaAPI;
+import com.dynarithmic.twain.exceptions.DTwainJavaAPIException;
+
+/**
+ * A fixed set of strip buffers allocated with DTWAIN_AllocateMemory(), handed to the source one
+ * at a time with DTWAIN_SetAcquireStripBuffer().  The buffer is only changed between pages, when
+ * the previous page has ended, since DTWAIN is not known to honor a new strip buffer in the middle
+ * of a page.  Every strip of a page is transferred into the same buffer.  Strips are read into a
+ * set of BufferedStripInfo objects of the same size, so a strip that has been read stays unchanged
+ * until the other BufferedStripInfo objects have been used.
+ */
+final class StripBufferRing
+{
+    private final DTwainJavaAPI api;
+    private final long[] handles;
+    private final BufferedStripInfo[] strips;
+    private final int bufferSize;
+    private int current = 0;
+    private int currentStrip = 0;
+
+    StripBufferRing(DTwainJavaAPI api, int count, int bufferSize, BufferedStripInfo sizes) throws DTwainJavaAPIException
+    {
+        this.api = api;
+        this.bufferSize = bufferSize;
+        this.handles = new long[count];
+        this.strips = new BufferedStripInfo[count];
+        for (int i = 0; i < count; ++i)
+        {
+            handles[i] = api.DTWAIN_AllocateMemory(bufferSize);
+            if ( handles[i] == 0 )
+            {
+                free();
+                throw new DTwainJavaAPIException("Unable to allocate strip buffer of " + bufferSize + " bytes");
+            }
+            strips[i] = new BufferedStripInfo(sizes.getPreferredSize(), sizes.getMinimumSize(), sizes.getMaximumSize());
+            strips[i].setCompressionType(sizes.getCompressionType());
+            strips[i].setBufferSize(bufferSize);
+            strips[i].setBufferHandle(handles[0]);
+            strips[i].setAppAllocatesBuffer(true);
+        }
+    }
+
+    int getBufferSize()
+    {
+        return bufferSize;
+    }
+
+    int getCount()
+    {
+        return handles.length;
+    }
+
+    long getCurrentHandle()
+    {
+        return handles[current];
+    }
+
+    /**
+     * Gives the current buffer to the source for the strips of the next page.
+     */
+    void install(long source) throws DTwainJavaAPIException
+    {
+        api.DTWAIN_SetAcquireStripBuffer(source, handles[current]);
+    }
+
+    /**
+     * Reads the strip just transferred into the current buffer.
+     * @return The strip.  Its BufferedStripInfo is reused once the other BufferedStripInfo objects have been used.
+     */
+    BufferedStripInfo take(long source) throws DTwainJavaAPIException
+    {
+        BufferedStripInfo strip = strips[currentStrip];
+        strip.setBufferHandle(handles[current]);
+        api.DTWAIN_GetBufferedStripData(source, strip);
+        currentStrip = (currentStrip + 1) % strips.length;
+        return strip;
+    }
+
+    /**
+     * Gives the next buffer to the source.  Only called once a page has ended, so that all of the
+     * strips of a page use the same buffer.
+     */
+    void nextPage(long source) throws DTwainJavaAPIException
+    {
+        int next = (current + 1) % handles.length;
+        api.DTWAIN_SetAcquireStripBuffer(source, handles[next]);
+        current = next;
+    }
+
+    /**
+     * Takes the buffers back from the source, and frees them.
+     * @param source The source using the buffers, or 0 if the source is no longer open
+     */
+    void release(long source) throws DTwainJavaAPIException
+    {
+        try
+        {
+            // Let DTWAIN go back to allocating its own strip buffer
+            if ( source != 0 )
+                api.DTWAIN_SetAcquireStripBuffer(source, 0);
+        }
+        finally
+        {
+            free();
+        }
+    }
+
+    private void free()
+    {
+        for (int i = 0; i < handles.length; ++i)
+        {
+            if ( handles[i] != 0 )
+            {
+                try
+                {
+                    api.DTWAIN_FreeMemory(handles[i]);
+                }
+                catch (DTwainJavaAPIException e)
+                {
+                    // Nothing more can be done with the handle
+                }
+                handles[i] = 0;
+            }
+        }
+    }
+}
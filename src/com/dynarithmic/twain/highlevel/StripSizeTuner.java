@@ -0,0 +1,226 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Chooses the strip size of a buffered transfer by timing the strips.  Each of the first pages
+ * of a run is transferred using a different strip size between the minimum and maximum sizes of the
+ * source, and the rate of each page is measured from the TRANSFERSTRIPDONE notifications.  The remaining
+ * pages use the size with the highest rate, which is saved so that later runs with the same source,
+ * resolution and compression use it right away.
+ */
+final class StripSizeTuner
+{
+    private static final int MAX_CANDIDATES = 5;
+
+    private final String key;
+    private final Path storeFile;
+    private final int[] candidates;
+    private final double[] rates;
+    private final int pagesPerCandidate;
+    private int candidate = 0;
+    private int pagesMeasured = 0;
+    private int tunedSize = 0;
+
+    // Timing of the page being transferred
+    private long readyNanos = 0;
+    private long lastDoneNanos = 0;
+    private long previousDoneNanos = 0;
+    private int stripsDone = 0;
+
+    StripSizeTuner(String key, Path storeFile, int minimum, int maximum, int preferred, int pagesPerCandidate)
+    {
+        this.key = key;
+        this.storeFile = storeFile;
+        this.pagesPerCandidate = Math.max(1, pagesPerCandidate);
+        this.candidates = createCandidates(minimum, maximum, preferred);
+        this.rates = new double[candidates.length];
+        int stored = load(storeFile, key);
+        if ( stored >= minimum && stored <= maximum && stored > 0 )
+            tunedSize = stored;
+        else
+        if ( candidates.length == 1 )
+            tunedSize = candidates[0];
+    }
+
+    // The preferred size, then sizes above and below it by powers of 2
+    static int[] createCandidates(int minimum, int maximum, int preferred)
+    {
+        if ( maximum < minimum )
+            maximum = minimum;
+        int start = preferred >= minimum && preferred <= maximum && preferred > 0 ? preferred : Math.max(minimum, 1);
+        int[] sizes = new int[MAX_CANDIDATES];
+        int count = 0;
+        sizes[count++] = start;
+        long up = start;
+        long down = start;
+        while (count < MAX_CANDIDATES)
+        {
+            boolean added = false;
+            if ( up * 2 <= maximum )
+            {
+                up *= 2;
+                sizes[count++] = (int)up;
+                added = true;
+            }
+            if ( count < MAX_CANDIDATES && down / 2 >= minimum && down / 2 > 0 )
+            {
+                down /= 2;
+                sizes[count++] = (int)down;
+                added = true;
+            }
+            if ( !added )
+                break;
+        }
+        int[] result = new int[count];
+        System.arraycopy(sizes, 0, result, 0, count);
+        return result;
+    }
+
+    String getKey()
+    {
+        return key;
+    }
+
+    boolean isTuned()
+    {
+        return tunedSize > 0;
+    }
+
+    /**
+     * @return The strip size to use for the next page
+     */
+    int getStripSize()
+    {
+        return tunedSize > 0 ? tunedSize : candidates[candidate];
+    }
+
+    void transferReady(long nanos)
+    {
+        readyNanos = nanos;
+        lastDoneNanos = previousDoneNanos = 0;
+        stripsDone = 0;
+    }
+
+    void stripDone(long nanos)
+    {
+        if ( readyNanos == 0 )
+            readyNanos = nanos;
+        previousDoneNanos = lastDoneNanos;
+        lastDoneNanos = nanos;
+        ++stripsDone;
+    }
+
+    /**
+     * Records the rate of the page just transferred.
+     * @return true if the strip size for the next page is different
+     */
+    boolean transferDone()
+    {
+        if ( tunedSize > 0 || stripsDone == 0 )
+            return false;
+        int size = candidates[candidate];
+        // The last strip of a page is usually partially filled, so it is only
+        // counted when it is the only strip.
+        long bytes;
+        long nanos;
+        if ( stripsDone > 1 )
+        {
+            bytes = (long)(stripsDone - 1) * size;
+            nanos = previousDoneNanos - readyNanos;
+        }
+        else
+        {
+            bytes = size;
+            nanos = lastDoneNanos - readyNanos;
+        }
+        readyNanos = 0;
+        if ( nanos > 0 )
+            rates[candidate] += (double)bytes * 1_000_000_000L / nanos;
+        if ( ++pagesMeasured < pagesPerCandidate )
+            return false;
+        pagesMeasured = 0;
+        if ( ++candidate < candidates.length )
+            return true;
+
+        int best = 0;
+        for (int i = 1; i < candidates.length; ++i)
+        {
+            if ( rates[i] > rates[best] )
+                best = i;
+        }
+        tunedSize = candidates[best];
+        save(storeFile, key, tunedSize);
+        return tunedSize != size;
+    }
+
+    private static synchronized int load(Path storeFile, String key)
+    {
+        if ( storeFile == null || !Files.isRegularFile(storeFile) )
+            return 0;
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(storeFile))
+        {
+            props.load(in);
+            return Integer.parseInt(props.getProperty(key, "0"));
+        }
+        catch (IOException | NumberFormatException e)
+        {
+            return 0;
+        }
+    }
+
+    private static synchronized void save(Path storeFile, String key, int stripSize)
+    {
+        if ( storeFile == null )
+            return;
+        Properties props = new Properties();
+        try
+        {
+            if ( Files.isRegularFile(storeFile) )
+            {
+                try (InputStream in = Files.newInputStream(storeFile))
+                {
+                    props.load(in);
+                }
+            }
+            props.setProperty(key, Integer.toString(stripSize));
+            if ( storeFile.getParent() != null )
+                Files.createDirectories(storeFile.getParent());
+            try (OutputStream out = Files.newOutputStream(storeFile))
+            {
+                props.store(out, "DTWAIN buffered transfer strip sizes");
+            }
+        }
+        catch (IOException e)
+        {
+            // The size is only used for this run
+        }
+    }
+}
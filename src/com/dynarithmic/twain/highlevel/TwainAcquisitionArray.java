@@ -87,6 +87,14 @@ public class TwainAcquisitionArray
         return false;
     }
 
+    public ImageStorageStatistics getStorageStatistics()
+    {
+        ImageStorageStatistics stats = new ImageStorageStatistics();
+        for (TwainAcquisitionData acq : m_arrAcquisitions)
+            stats.add(acq.getStorageStatistics());
+        return stats;
+    }
+
     public int getStatus()
     {
         return status;
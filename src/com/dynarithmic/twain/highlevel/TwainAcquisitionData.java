@@ -21,9 +21,15 @@
  */
 package com.dynarithmic.twain.highlevel;
 
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
+import com.dynarithmic.twain.DTwainConstants.DuplicatePageAction;
 import com.dynarithmic.twain.exceptions.DTwainRuntimeException;
 
 /**
@@ -59,6 +65,12 @@ import com.dynarithmic.twain.exceptions.DTwainRuntimeException;
 public class TwainAcquisitionData
 {
     List<TwainImageData> imagePages;
+    private DuplicatePageAction duplicatePageAction = AcquisitionContext.current().getDuplicatePageAction();
+    private int duplicateDistance = AcquisitionContext.current().getDuplicateDistance();
+    private int discardedDuplicateCount = 0;
+    // Pages added but not yet checked for duplicates, and the first page of imagePages with each content hash
+    private final List<TwainImageData> uncheckedPages = new ArrayList<>();
+    private final Map<Long, Integer> pagesByHash = new HashMap<>();
 
     /**
      * @param allpages
@@ -76,14 +88,102 @@ public class TwainAcquisitionData
         imagePages = new ArrayList<>();
     }
 
-    public void setAcquisitionData(List<TwainImageData> allPages)
+    /**
+     * Replaces the pages of this acquisition.  The pages are not checked for duplicates.
+     * @param allPages The pages
+     */
+    public synchronized void setAcquisitionData(List<TwainImageData> allPages)
     {
         imagePages = allPages;
+        uncheckedPages.clear();
+        pagesByHash.clear();
+    }
+
+    /**
+     * Adds a page to this acquisition.  If duplicate pages are checked, the page is checked the next
+     * time the pages of this acquisition are read, so that adding a page does not wait for the
+     * encoder pool to hash it.
+     * @param theData The page
+     */
+    public synchronized void addImageData(TwainImageData theData)
+    {
+        if ( duplicatePageAction == DuplicatePageAction.NONE )
+            imagePages.add(theData);
+        else
+            uncheckedPages.add(theData);
+    }
+
+    // Checks the pages added since the last check, in the order they were added
+    private synchronized List<TwainImageData> getPages()
+    {
+        for (TwainImageData theData : uncheckedPages)
+        {
+            int original = findIdentical(theData);
+            if ( original >= 0 && duplicatePageAction == DuplicatePageAction.DISCARD )
+            {
+                ++discardedDuplicateCount;
+                continue;
+            }
+            // Pages that only look alike are flagged, never discarded
+            if ( original < 0 && duplicateDistance >= 0 )
+                original = findSimilar(theData);
+            if ( original >= 0 )
+                theData.setDuplicateOfPage(original);
+            imagePages.add(theData);
+        }
+        uncheckedPages.clear();
+        return imagePages;
+    }
+
+    // Returns the index of the first earlier page with the same data as theData, or -1.  The page
+    // is added to the index of content hashes if it is the first page with its hash.
+    private int findIdentical(TwainImageData theData)
+    {
+        try
+        {
+            Long hash = theData.getContentHash();
+            Integer first = pagesByHash.get(hash);
+            if ( first == null )
+            {
+                pagesByHash.put(hash, imagePages.size());
+                return -1;
+            }
+            // Pages with the same hash but a different size are not duplicates
+            return theData.isIdenticalTo(imagePages.get(first)) ? first : -1;
+        }
+        catch (DTwainRuntimeException e)
+        {
+            // A page that cannot be hashed is kept
+        }
+        return -1;
     }
 
-    public void addImageData(TwainImageData theData)
+    // Returns the index of the first earlier page that looks like theData, or -1
+    private int findSimilar(TwainImageData theData)
+    {
+        try
+        {
+            for (int i = 0; i < imagePages.size(); ++i)
+            {
+                if ( theData.looksLike(imagePages.get(i), duplicateDistance) )
+                    return i;
+            }
+        }
+        catch (DTwainRuntimeException e)
+        {
+            // A page that cannot be hashed is kept
+        }
+        return -1;
+    }
+
+    /**
+     * @return Number of pages that were not added to this acquisition because they duplicated an earlier page
+     * @see com.dynarithmic.twain.highlevel.acquirecharacteristics.ImageStorageOptions#setDuplicatePageAction(DuplicatePageAction)
+     */
+    public synchronized int getDiscardedDuplicateCount()
     {
-        imagePages.add(theData);
+        getPages();
+        return discardedDuplicateCount;
     }
 
     /**
@@ -91,7 +191,7 @@ public class TwainAcquisitionData
      */
     public int getNumPages()
     {
-        return imagePages.size();
+        return getPages().size();
     }
 
     /**
@@ -103,11 +203,12 @@ public class TwainAcquisitionData
      */
     public byte [] getImageData(int nWhichPage) throws DTwainRuntimeException
     {
-        if ( imagePages.isEmpty() )
+        List<TwainImageData> pages = getPages();
+        if ( pages.isEmpty() )
             return new byte[0];
-        if ( nWhichPage < 0 || nWhichPage >= imagePages.size() )
+        if ( nWhichPage < 0 || nWhichPage >= pages.size() )
             return new byte[0];
-        TwainImageData theData = imagePages.get(nWhichPage);
+        TwainImageData theData = pages.get(nWhichPage);
         try {
             return theData.getImageData();
         }
@@ -117,12 +218,82 @@ public class TwainAcquisitionData
         }
     }
 
+    /**
+     * @param nWhichPage
+     * Determines which page of the acquisition to retrieve the image data.<p>
+     * @return
+     * A read-only buffer containing the image data.  If the page is held in a direct buffer,
+     * no copy of the data is made.  An empty buffer is returned if the page does not exist.
+     */
+    public ByteBuffer getImageBuffer(int nWhichPage) throws DTwainRuntimeException
+    {
+        List<TwainImageData> pages = getPages();
+        if ( nWhichPage < 0 || nWhichPage >= pages.size() )
+            return ByteBuffer.allocate(0).asReadOnlyBuffer();
+        return pages.get(nWhichPage).getImageBuffer();
+    }
+
+    /**
+     * Changes how each page of this acquisition is stored in memory.  Pages already stored
+     * are re-encoded using <i>storageCodec</i>.
+     * @param storageCodec The codec to use for all pages of this acquisition
+     */
+    public void setStorageCodec(ImageStorageCodec storageCodec) throws DTwainRuntimeException
+    {
+        for (TwainImageData page : getPages())
+            page.setStorageCodec(storageCodec);
+    }
+
+    /**
+     * @return The memory used by, and the encode/decode times of, the pages of this acquisition
+     */
+    public ImageStorageStatistics getStorageStatistics()
+    {
+        ImageStorageStatistics stats = new ImageStorageStatistics();
+        for (TwainImageData page : getPages())
+            stats.add(page);
+        return stats;
+    }
+
+    /**
+     * @param nWhichPage
+     * Determines which page of the acquisition to retrieve the preview.<p>
+     * @param maxWidth Largest width of the preview, in pixels
+     * @param maxHeight Largest height of the preview, in pixels
+     * @return The preview, created in the background and cached with the page.  The future
+     * completes with null if the page does not exist.
+     * @see TwainImageData#getThumbnail(int, int, java.util.concurrent.Executor)
+     */
+    public CompletableFuture<BufferedImage> getThumbnail(int nWhichPage, int maxWidth, int maxHeight)
+    {
+        List<TwainImageData> pages = getPages();
+        if ( nWhichPage < 0 || nWhichPage >= pages.size() )
+            return CompletableFuture.completedFuture(null);
+        return pages.get(nWhichPage).getThumbnail(maxWidth, maxHeight);
+    }
+
+    /**
+     * Starts creating a preview of each page of this acquisition in the background.
+     * @param maxWidth Largest width of the previews, in pixels
+     * @param maxHeight Largest height of the previews, in pixels
+     * @return A future that completes when all of the previews have been created
+     */
+    public CompletableFuture<Void> generateThumbnails(int maxWidth, int maxHeight)
+    {
+        List<TwainImageData> pages = getPages();
+        CompletableFuture<?>[] all = new CompletableFuture<?>[pages.size()];
+        for (int i = 0; i < all.length; ++i)
+            all[i] = pages.get(i).getThumbnail(maxWidth, maxHeight);
+        return CompletableFuture.allOf(all);
+    }
+
     public TwainImageData getImageDataObject(int nWhichPage)
     {
-        if ( imagePages.isEmpty() )
+        List<TwainImageData> pages = getPages();
+        if ( pages.isEmpty() )
             return new TwainImageData(); //null;
-        if ( nWhichPage < 0 || nWhichPage >= imagePages.size() )
+        if ( nWhichPage < 0 || nWhichPage >= pages.size() )
             return null;
-        return imagePages.get(nWhichPage);
+        return pages.get(nWhichPage);
     }
 }
\ No newline at end of file
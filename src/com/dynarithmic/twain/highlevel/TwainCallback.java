@@ -148,6 +148,18 @@ public class TwainCallback
         activated = false;
     }
 
+    // Lets the buffered transfer of the source time its strips, once per notification
+    private static void notifyBufferedTransfer(int event, long sourceHandleEx)
+    {
+        if ( event != NotificationCode.TRANSFERREADY.value() &&
+             event != NotificationCode.TRANSFERSTRIPDONE.value() &&
+             event != NotificationCode.TRANSFERDONE.value() )
+            return;
+        TwainSource source = TwainSession.getTwainSourceFromHandle(sourceHandleEx);
+        if ( source != null && source.getBufferedTransferInfo() != null )
+            source.getBufferedTransferInfo().onTransferEvent(NotificationCode.from(event));
+    }
+
     public boolean isActivated()
     {
         return activated;
@@ -184,6 +196,8 @@ public class TwainCallback
         int nCallback = allCallbacks.size();
         int returner = 1;
         NotificationCode nc = null;
+        if ( isSourceHandle )
+            notifyBufferedTransfer(event, sourceHandleEx);
         for (int i = 0; i < nCallback; ++i)
         {
             TwainCallback theCallback = allCallbacks.get(i);
@@ -549,6 +563,21 @@ public class TwainCallback
                 }
             }
         }
+
+        // Hand the final page to the source's page stream, if one is being used
+        if ( isSourceHandle && event == NotificationCode.PROCESSEDDIBFINAL.value() )
+        {
+            TwainSource source = TwainSession.getTwainSourceFromHandle(sourceHandleEx);
+            if ( source != null )
+                source.onPageTransferred();
+        }
+        // A cancelled page stream stops the acquisition, since returning 0 cancels the transfer
+        if ( isSourceHandle && event == NotificationCode.TRANSFERREADY.value() )
+        {
+            TwainSource source = TwainSession.getTwainSourceFromHandle(sourceHandleEx);
+            if ( source != null && source.isPageStreamCancelled() )
+                return 0;
+        }
         return returner;
     }
 
@@ -20,19 +20,48 @@
 
  */
 package com.dynarithmic.twain.highlevel;
-import java.io.ByteArrayOutputStream;
+
+import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.util.zip.DataFormatException;
-import java.util.zip.Deflater;
-import java.util.zip.Inflater;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.commons.imaging.ImageReadException;
 
-import com.dynarithmic.twain.DTwainConstants;
+import com.dynarithmic.twain.DTwainConstants.DuplicatePageAction;
 import com.dynarithmic.twain.exceptions.DTwainRuntimeException;
 
 public class TwainImageData
 {
-   private byte[] dibdata = new byte [0];
-   private long origDibHandle = 0;
+    private byte[] dibdata = new byte [0];
+    private ByteBuffer directData = null;
+    private ByteBuffer spilledData = null;
+    private int originalLength = 0;
+    private DibHeader imageHeader = null;
+    private long origDibHandle = 0;
+    private ImageStorageCodec storageCodec = AcquisitionContext.current().getStorageCodec();
+    private boolean useDirectBuffer = AcquisitionContext.current().isDirectBuffers();
+    private PageSpillStore pageSpillStore = AcquisitionContext.current().getPageSpillStore();
+    private boolean discardData = AcquisitionContext.current().isDiscardPages();
+    private AcquisitionContext encodeContext = AcquisitionContext.current();
+    private volatile CompletableFuture<Void> pendingEncode = null;
+    private long transferTime = 0;
+    private long encodeTime = 0;
+    private long decodeTime = 0;
+    private long decodeCount = 0;
+    private final Map<Long, CompletableFuture<BufferedImage>> thumbnails = new ConcurrentHashMap<>();
+    private volatile BlankPageResult blankPageResult = null;
+    private boolean hashPages = AcquisitionContext.current().getDuplicatePageAction() != DuplicatePageAction.NONE;
+    private boolean hashed = false;
+    private long contentHash = 0;
+    private long[] perceptualHash = null;
+    private int duplicateOfPage = -1;
 
     public TwainImageData()
     {}
@@ -42,6 +71,39 @@ public class TwainImageData
         setImageData(data);
     }
 
+    public TwainImageData(byte[] data, ImageStorageCodec storageCodec)
+    {
+        this.storageCodec = storageCodec;
+        this.useDirectBuffer = false;
+        this.discardData = false;
+        this.encodeContext = null;
+        setImageData(data);
+    }
+
+    /**
+     * Creates a page that uses <i>buffer</i> as its storage, without copying the data.  The page
+     * data is the content of <i>buffer</i> between its position and limit.
+     * @param buffer The buffer holding the page data.  Usually this is a direct (off-heap) buffer.
+     * @return The page
+     */
+    public static TwainImageData wrap(ByteBuffer buffer)
+    {
+        TwainImageData imageData = new TwainImageData();
+        imageData.useDirectBuffer = true;
+        imageData.discardData = false;
+        imageData.directData = buffer.slice();
+        imageData.dibdata = new byte[0];
+        imageData.originalLength = imageData.directData.remaining();
+        imageData.imageHeader = DibHeader.parse(imageData.directData);
+        return imageData;
+    }
+
+    // Called by the JNI layer, which does not copy the data of a page that would be discarded
+    boolean isDataDiscarded()
+    {
+        return discardData;
+    }
+
     public void setDibHandle(long dibHandle)
     {
         origDibHandle = dibHandle;
@@ -54,27 +116,105 @@ public class TwainImageData
 
     public void setImageData(byte[] data)
     {
-        // Compress the bytes
-        Deflater compressor = new Deflater();
-        compressor.setLevel(Deflater.BEST_COMPRESSION);
-        compressor.setInput(data);
-        compressor.finish();
-
-        // Create an expandable byte array to hold the compressed data.
-        // You cannot use an array that's the same size as the orginal because
-        // there is no guarantee that the compressed data will be smaller than
-        // the uncompressed data.
-        ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length);
-
-        // Compress the data
-        byte[] buf = new byte[1024];
-        while (!compressor.finished())
+        if ( discardData )
+            return;
+        long startTime = System.nanoTime();
+        awaitEncode();
+        imageHeader = DibHeader.parse(data);
+        originalLength = data.length;
+        thumbnails.clear();
+        hashed = false;
+        if ( useDirectBuffer )
+        {
+            // Hashing is done here, while the uncompressed data is at hand
+            if ( hashPages )
+                computeHashes(ByteBuffer.wrap(data));
+            // Move the page off of the Java heap.  This is the only copy made.
+            directData = ByteBuffer.allocateDirect(data.length);
+            directData.put(data).flip();
+            spilledData = null;
+            dibdata = new byte[0];
+            encodeTime = System.nanoTime() - startTime;
+        }
+        else
+        {
+            // Hand the page to the session's encoder pool if there is one, so that the next
+            // page can be converted (or, with a page stream, transferred) while this one is hashed and encoded
+            pendingEncode = encodeContext != null ? encodeContext.encode(() -> hashAndEncode(data)) : null;
+            if ( pendingEncode == null )
+                hashAndEncode(data);
+        }
+        transferTime = System.nanoTime() - startTime;
+    }
+
+    private void hashAndEncode(byte[] data)
+    {
+        // Hashing is done here, while the uncompressed data is at hand
+        if ( hashPages )
+            computeHashes(ByteBuffer.wrap(data));
+        encode(data);
+    }
+
+    private void encode(byte[] data)
+    {
+        long startTime = System.nanoTime();
+        directData = null;
+        spilledData = null;
+        dibdata = storageCodec.encode(data);
+        if ( pageSpillStore != null )
+            spill();
+        encodeTime = System.nanoTime() - startTime;
+    }
+
+    // Waits for the page to be stored by the encoder pool.  Completing the future
+    // makes the fields set by the pool thread visible to this thread.
+    private void awaitEncode()
+    {
+        CompletableFuture<Void> future = pendingEncode;
+        if ( future == null )
+            return;
+        try
+        {
+            future.join();
+        }
+        catch (CompletionException e)
+        {
+            if ( e.getCause() instanceof RuntimeException )
+                throw (RuntimeException)e.getCause();
+            throw e;
+        }
+        finally
+        {
+            pendingEncode = null;
+        }
+    }
+
+    /**
+     * @return true if the page has been handed to the encoder pool, and has not yet been stored
+     * @see com.dynarithmic.twain.highlevel.acquirecharacteristics.ImageStorageOptions#setEncoderThreads(int)
+     */
+    public boolean isEncodePending()
+    {
+        CompletableFuture<Void> future = pendingEncode;
+        return future != null && !future.isDone();
+    }
+
+    private void spill()
+    {
+        if ( !pageSpillStore.shouldSpill(dibdata.length) )
         {
-            int count = compressor.deflate(buf);
-            bos.write(buf, 0, count);
+            pageSpillStore.addHeapBytes(dibdata.length);
+            return;
         }
-        //      Get the compressed data
-        dibdata = bos.toByteArray();
+        ByteBuffer mapped = pageSpillStore.append(dibdata);
+        if ( mapped == null )
+            return;
+        // Uncompressed pages in the file can be handed out directly
+        if ( storageCodec instanceof RawImageStorageCodec )
+            directData = mapped;
+        else
+            spilledData = mapped;
+        dibdata = new byte[0];
     }
 
     public void setImageDataType(int dType)
@@ -82,39 +222,310 @@ public class TwainImageData
         // origdatatype = dType;
     }
 
+    public ImageStorageCodec getStorageCodec()
+    {
+        return storageCodec;
+    }
+
+    /**
+     * @return The BMP header of the page, or null if the page is not a BMP image.  The header is
+     * read when the page is stored, so no decoding takes place.
+     */
+    public DibHeader getImageHeader()
+    {
+        return imageHeader;
+    }
+
+    /**
+     * @return true if the page data is held uncompressed in a ByteBuffer, usually a direct (off-heap) buffer
+     */
+    public boolean isDirect()
+    {
+        awaitEncode();
+        return directData != null;
+    }
+
+    /**
+     * @return true if the page data was moved out of the Java heap into a memory mapped temporary file
+     * @see com.dynarithmic.twain.highlevel.acquirecharacteristics.ImageStorageOptions#setHeapBudget(long)
+     */
+    public boolean isSpilled()
+    {
+        awaitEncode();
+        return spilledData != null || directData instanceof MappedByteBuffer;
+    }
+
+    /**
+     * Changes the codec used to store this page.  If the page already has image data, the
+     * data is re-encoded using the new codec.  A page held in a direct buffer is moved back
+     * onto the Java heap.
+     * @param storageCodec The new codec
+     * @throws DTwainRuntimeException if the existing data could not be decoded
+     */
+    public void setStorageCodec(ImageStorageCodec storageCodec) throws DTwainRuntimeException
+    {
+        awaitEncode();
+        if ( storageCodec == this.storageCodec )
+            return;
+        byte[] data = originalLength == 0 ? null : getImageData();
+        this.storageCodec = storageCodec;
+        this.useDirectBuffer = false;
+        this.discardData = false;
+        this.encodeContext = null;
+        if ( data != null )
+            setImageData(data);
+    }
+
+    /**
+     * @return The size, in bytes, of the page data before it was stored
+     */
+    public int getOriginalSize()
+    {
+        return originalLength;
+    }
+
+    /**
+     * @return The number of bytes used to hold the page data in memory
+     */
+    public int getStoredSize()
+    {
+        awaitEncode();
+        if ( directData != null )
+            return directData.capacity();
+        if ( spilledData != null )
+            return spilledData.capacity();
+        return dibdata.length;
+    }
+
+    /**
+     * @return Time, in nanoseconds, taken to encode the page data.  If the page was encoded by the
+     * session's encoder pool, this is the time spent in the pool.
+     */
+    public long getEncodeTime()
+    {
+        awaitEncode();
+        return encodeTime;
+    }
+
+    /**
+     * @return Time, in nanoseconds, that storing the page held up the thread transferring the pages.
+     * If the page was encoded by the session's encoder pool, this does not include the encoding.
+     */
+    public long getTransferTime()
+    {
+        return transferTime;
+    }
+
+    /**
+     * @return Total time, in nanoseconds, taken by all calls to getImageData()
+     */
+    public synchronized long getDecodeTime()
+    {
+        return decodeTime;
+    }
+
+    public synchronized long getDecodeCount()
+    {
+        return decodeCount;
+    }
+
+    private synchronized void recordDecode(long elapsed)
+    {
+        decodeTime += elapsed;
+        ++decodeCount;
+    }
+
     public byte [] getImageData() throws DTwainRuntimeException
     {
-        if ( dibdata.length == 0 )
+        awaitEncode();
+        if ( originalLength == 0 )
             return new byte[0];
-        // Decompress the bytes
-        Inflater decompressor = new Inflater();
-        decompressor.setInput(dibdata);
+        long startTime = System.nanoTime();
+        byte[] data;
+        if ( directData != null )
+        {
+            data = new byte[originalLength];
+            directData.duplicate().get(data);
+        }
+        else if ( spilledData != null )
+        {
+            byte[] stored = new byte[spilledData.capacity()];
+            spilledData.duplicate().get(stored);
+            data = storageCodec.decode(stored, originalLength);
+        }
+        else
+            data = storageCodec.decode(dibdata, originalLength);
+        recordDecode(System.nanoTime() - startTime);
+        return data;
+    }
 
-        // Create an expandable byte array to hold the decompressed data
-        ByteArrayOutputStream bos = new ByteArrayOutputStream(dibdata.length);
+    /**
+     * @return A read-only view of the page data.  If the page is held in a direct buffer, the
+     * view shares the buffer's memory, and no copy is made.  Otherwise the page is decoded
+     * into a new heap buffer.
+     */
+    public ByteBuffer getImageBuffer() throws DTwainRuntimeException
+    {
+        awaitEncode();
+        if ( directData != null )
+            return directData.asReadOnlyBuffer();
+        return ByteBuffer.wrap(getImageData()).asReadOnlyBuffer();
+    }
 
-        // Decompress the data
-        byte[] buf = new byte[1024];
-        while (!decompressor.finished())
+    /**
+     * @return The result of the blank page check made when the page was delivered by a TwainPageStream,
+     * or null if the page was not checked.
+     * @see TwainPageStream#setBlankPageDetector(BlankPageDetector, boolean)
+     */
+    public BlankPageResult getBlankPageResult()
+    {
+        return blankPageResult;
+    }
+
+    void setBlankPageResult(BlankPageResult blankPageResult)
+    {
+        this.blankPageResult = blankPageResult;
+    }
+
+    private synchronized void computeHashes(ByteBuffer data)
+    {
+        contentHash = PageHasher.contentHash(data);
+        perceptualHash = PageHasher.perceptualHash(data, imageHeader);
+        hashed = true;
+    }
+
+    private void ensureHashed() throws DTwainRuntimeException
+    {
+        // The encoder pool may be hashing the page, so wait for it before taking the lock
+        awaitEncode();
+        synchronized (this)
+        {
+            if ( !hashed && originalLength > 0 )
+                computeHashes(getImageBuffer());
+        }
+    }
+
+    /**
+     * @return The 64 bit xxHash (XXH64) of the page data.  Pages with the same content hash and size
+     * have the same data.
+     * @throws DTwainRuntimeException if the page has to be hashed, and its data cannot be decoded
+     */
+    public long getContentHash() throws DTwainRuntimeException
+    {
+        ensureHashed();
+        return contentHash;
+    }
+
+    /**
+     * @return A copy of the 256 bit perceptual hash of the page, or null if the page is not an
+     * uncompressed BMP, or is too uniform (for example, blank) to be compared by appearance.
+     * @throws DTwainRuntimeException if the page has to be hashed, and its data cannot be decoded
+     */
+    public long[] getPerceptualHash() throws DTwainRuntimeException
+    {
+        ensureHashed();
+        return perceptualHash == null ? null : perceptualHash.clone();
+    }
+
+    /**
+     * @param other The page to compare with
+     * @param maxDistance The largest number of perceptual hash bits that may differ.  If negative,
+     * only pages with identical data are duplicates.
+     * @return true if the pages have identical data, or look alike
+     * @throws DTwainRuntimeException if either page has to be hashed, and its data cannot be decoded
+     */
+    public boolean isDuplicateOf(TwainImageData other, int maxDistance) throws DTwainRuntimeException
+    {
+        if ( isIdenticalTo(other) )
+            return true;
+        return maxDistance >= 0 && looksLike(other, maxDistance);
+    }
+
+    // Compares the perceptual hashes only
+    boolean looksLike(TwainImageData other, int maxDistance) throws DTwainRuntimeException
+    {
+        ensureHashed();
+        other.ensureHashed();
+        return perceptualHash != null && other.perceptualHash != null &&
+               PageHasher.distance(perceptualHash, other.perceptualHash) <= maxDistance;
+    }
+
+    /**
+     * @param other The page to compare with
+     * @return true if the pages have the same size and content hash
+     * @throws DTwainRuntimeException if either page has to be hashed, and its data cannot be decoded
+     */
+    public boolean isIdenticalTo(TwainImageData other) throws DTwainRuntimeException
+    {
+        ensureHashed();
+        other.ensureHashed();
+        if ( originalLength == 0 || other.originalLength == 0 )
+            return false;
+        return originalLength == other.originalLength && contentHash == other.contentHash;
+    }
+
+    /**
+     * @return true if the page duplicates an earlier page of its acquisition
+     * @see com.dynarithmic.twain.highlevel.acquirecharacteristics.ImageStorageOptions#setDuplicatePageAction(DuplicatePageAction)
+     */
+    public boolean isDuplicate()
+    {
+        return duplicateOfPage >= 0;
+    }
+
+    /**
+     * @return The index, in its acquisition, of the earlier page this page duplicates, or -1
+     */
+    public int getDuplicateOfPage()
+    {
+        return duplicateOfPage;
+    }
+
+    void setDuplicateOfPage(int duplicateOfPage)
+    {
+        this.duplicateOfPage = duplicateOfPage;
+    }
+
+    /**
+     * Returns a reduced size preview of the page, keeping the page's aspect ratio.  The preview is
+     * created once in the background, and cached with the page.  Requesting the same size again
+     * returns the same result.  Uncompressed BMP pages are reduced directly from their pixel rows,
+     * without decoding the full size image.
+     * @param maxWidth Largest width of the preview, in pixels
+     * @param maxHeight Largest height of the preview, in pixels
+     * @param executor The executor that creates the preview
+     * @return The preview.  The future completes with null if the page has no image data, or
+     * exceptionally if the page could not be read.
+     */
+    public CompletableFuture<BufferedImage> getThumbnail(int maxWidth, int maxHeight, Executor executor)
+    {
+        long key = (long)maxWidth << 32 | (maxHeight & 0xFFFFFFFFL);
+        return thumbnails.computeIfAbsent(key, k -> CompletableFuture.supplyAsync(() ->
         {
             try
             {
-                int count = decompressor.inflate(buf);
-                bos.write(buf, 0, count);
-            } catch (DataFormatException e)
+                return PageThumbnailer.createThumbnail(this, maxWidth, maxHeight);
+            }
+            catch (DTwainRuntimeException | IOException | ImageReadException e)
             {
-                throw new DTwainRuntimeException(DTwainConstants.ErrorCode.ERROR_DECOMPRESSION);
+                throw new CompletionException(e);
             }
-        }
-        try
-        {
-            bos.close();
-        } catch (IOException e)
-        {
-            throw new DTwainRuntimeException(DTwainConstants.ErrorCode.ERROR_DECOMPRESSION);
-        }
+        }, executor));
+    }
 
-        // Get the decompressed data
-        return bos.toByteArray();
+    /**
+     * Same as {@link #getThumbnail(int, int, Executor)}, using the common ForkJoinPool.
+     */
+    public CompletableFuture<BufferedImage> getThumbnail(int maxWidth, int maxHeight)
+    {
+        return getThumbnail(maxWidth, maxHeight, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Removes the cached previews of the page.
+     */
+    public void clearThumbnails()
+    {
+        thumbnails.clear();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,305 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.dynarithmic.twain.DTwainConstants.ErrorCode;
+
+/**
+ * <p>A TwainPageStream delivers each page of an acquisition to memory as soon as the page has been
+ * transferred and processed (the PROCESSEDDIBFINAL notification), instead of waiting for the entire
+ * acquisition to finish.</p>
+ * <p>The acquisition itself runs on the thread that calls {@link TwainSource#acquire(TwainPageStream)}, so
+ * the pages must be consumed on a different thread, using {@link #iterator()} or {@link #stream()}.  At most
+ * <i>capacity</i> pages are held by the stream.  If the consumer falls behind, the acquisition waits until a page
+ * is taken.  If no page is taken within the consumer timeout (see {@link #setConsumerTimeout(long)}), the stream
+ * is cancelled, and the acquisition is stopped at the next page.</p>
+ * <pre>
+ *   TwainPageStream pages = new TwainPageStream(4);
+ *   executor.submit(() -&gt; pages.stream().forEach(page -&gt; process(page)));
+ *   source.acquire(pages);
+ * </pre>
+ * <p>Pages may be checked for blank content as they arrive, by calling
+ * {@link #setBlankPageDetector(BlankPageDetector, boolean)}.  The checks run in parallel with the
+ * acquisition, and the pages are still delivered in the order they were acquired.</p>
+ */
+public class TwainPageStream implements Iterable<TwainImageData>
+{
+    private static final Object END_OF_PAGES = new Object();
+    private static final long OFFER_WAIT_MILLIS = 100;
+    public static final long defaultConsumerTimeout = 60000;
+
+    private final int capacity;
+    private final BlockingQueue<Object> pageQueue = new LinkedBlockingQueue<>();
+    private final Semaphore freeSlots;
+    private long consumerTimeout = defaultConsumerTimeout;
+    private volatile boolean cancelled = false;
+    private volatile boolean finished = false;
+    private volatile ErrorCode returnCode = ErrorCode.ERROR_NONE;
+    private volatile int pageCount = 0;
+    private BlankPageDetector blankPageDetector = null;
+    private boolean discardBlankPages = false;
+    private Executor detectionExecutor = ForkJoinPool.commonPool();
+    private final AtomicInteger blankPageCount = new AtomicInteger();
+
+    public TwainPageStream(int capacity)
+    {
+        if ( capacity < 1 )
+            throw new IllegalArgumentException("Page stream capacity must be at least 1");
+        this.capacity = capacity;
+        this.freeSlots = new Semaphore(capacity);
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * @param millis The longest time, in milliseconds, that the acquisition waits for the consumer to take a page
+     * when the stream is full.  When the time runs out, the stream is cancelled.  The default is 60 seconds.
+     * @return The current object.
+     */
+    public TwainPageStream setConsumerTimeout(long millis)
+    {
+        if ( millis < 0 )
+            throw new IllegalArgumentException("Consumer timeout cannot be negative");
+        this.consumerTimeout = millis;
+        return this;
+    }
+
+    public long getConsumerTimeout()
+    {
+        return consumerTimeout;
+    }
+
+    /**
+     * @return Number of pages delivered to the stream so far
+     */
+    public int getPageCount()
+    {
+        return pageCount;
+    }
+
+    /**
+     * Checks each page for blank content before it is delivered.  The result of the check is
+     * available from TwainImageData.getBlankPageResult().  Must be called before the acquisition starts.
+     * @param detector The detector used to check the pages, or null to stop checking pages
+     * @param discardBlankPages If true, blank pages are not delivered
+     * @param executor Executor that runs the checks
+     * @return The current object.
+     */
+    public TwainPageStream setBlankPageDetector(BlankPageDetector detector, boolean discardBlankPages, Executor executor)
+    {
+        this.blankPageDetector = detector;
+        this.discardBlankPages = discardBlankPages;
+        this.detectionExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Same as {@link #setBlankPageDetector(BlankPageDetector, boolean, Executor)}, running the checks on the
+     * common ForkJoinPool.
+     */
+    public TwainPageStream setBlankPageDetector(BlankPageDetector detector, boolean discardBlankPages)
+    {
+        return setBlankPageDetector(detector, discardBlankPages, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @return Number of pages found to be blank so far
+     */
+    public int getBlankPageCount()
+    {
+        return blankPageCount.get();
+    }
+
+    public boolean isFinished()
+    {
+        return finished;
+    }
+
+    /**
+     * @return The return code of the acquisition.  Only meaningful once {@link #isFinished()} is true.
+     */
+    public ErrorCode getReturnCode()
+    {
+        return returnCode;
+    }
+
+    /**
+     * Stops delivering pages.  Pages not yet taken are dropped, and the acquisition is stopped
+     * before the next page is transferred.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+        pageQueue.clear();
+        if ( finished )
+            pageQueue.offer(END_OF_PAGES);
+    }
+
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * @return A blocking iterator over the pages.  hasNext() waits until a page arrives or the
+     * acquisition ends.  Only one consumer should iterate the stream.
+     */
+    @Override
+    public Iterator<TwainImageData> iterator()
+    {
+        return new Iterator<TwainImageData>()
+        {
+            private Object nextPage = null;
+
+            @Override
+            public boolean hasNext()
+            {
+                // A page that was discarded by the blank page check is skipped
+                while (nextPage == null)
+                {
+                    Object entry;
+                    try
+                    {
+                        entry = pageQueue.take();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                    // Leave the marker for any other iterator
+                    if ( entry == END_OF_PAGES )
+                    {
+                        pageQueue.offer(END_OF_PAGES);
+                        nextPage = END_OF_PAGES;
+                    }
+                    else
+                    {
+                        freeSlots.release();
+                        nextPage = ((CompletableFuture<?>)entry).join();
+                    }
+                }
+                return nextPage != END_OF_PAGES;
+            }
+
+            @Override
+            public TwainImageData next()
+            {
+                if ( !hasNext() )
+                    throw new NoSuchElementException();
+                TwainImageData page = (TwainImageData)nextPage;
+                nextPage = null;
+                return page;
+            }
+        };
+    }
+
+    public Stream<TwainImageData> stream()
+    {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(),
+                                    Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    // Called on the acquiring thread.  Blocks while the stream is full, for at most the consumer timeout.
+    void addPage(TwainImageData page)
+    {
+        if ( cancelled )
+            return;
+        ++pageCount;
+        try
+        {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(consumerTimeout);
+            while (!freeSlots.tryAcquire(OFFER_WAIT_MILLIS, TimeUnit.MILLISECONDS))
+            {
+                if ( cancelled )
+                    return;
+                // The consumer has stopped taking pages
+                if ( System.nanoTime() - deadline >= 0 )
+                {
+                    cancel();
+                    return;
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        pageQueue.offer(checkPage(page));
+    }
+
+    // Completes with the page, or null if the page is blank and is to be discarded
+    private CompletableFuture<TwainImageData> checkPage(TwainImageData page)
+    {
+        BlankPageDetector detector = blankPageDetector;
+        if ( detector == null )
+            return CompletableFuture.completedFuture(page);
+        return CompletableFuture.supplyAsync(() ->
+        {
+            BlankPageResult result;
+            try
+            {
+                result = detector.detect(page);
+            }
+            catch (Exception e)
+            {
+                // A page that cannot be checked is delivered
+                return page;
+            }
+            page.setBlankPageResult(result);
+            if ( result != null && result.isBlank() )
+            {
+                blankPageCount.incrementAndGet();
+                if ( discardBlankPages )
+                    return null;
+            }
+            return page;
+        }, detectionExecutor);
+    }
+
+    // Called on the acquiring thread when the acquisition ends
+    void finish(ErrorCode code)
+    {
+        returnCode = code;
+        finished = true;
+        pageQueue.offer(END_OF_PAGES);
+    }
+}
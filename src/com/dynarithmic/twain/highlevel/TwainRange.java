@@ -23,11 +23,26 @@ package com.dynarithmic.twain.highlevel;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
 
+/**
+ * A TWAIN range of integer or TW_FIX32 (Double) values.  The values of the range are not stored.
+ * Membership and the number of values are computed with integer arithmetic, in units of 1/65536
+ * (the precision of TW_FIX32) for Double ranges, and the values can be iterated lazily with
+ * {@link #intStream()} or {@link #doubleStream()} instead of being expanded into a list.
+ */
 public class TwainRange<T>
 {
     private List<T> allValues = new ArrayList<>();
     private boolean isValid = false;
+    private boolean isDouble = false;
+    // The minimum, maximum and step as integers: the values themselves for an integer range,
+    // or units of 1/65536 for a Double range
+    private long minUnits = 0;
+    private long maxUnits = 0;
+    private long stepUnits = 0;
     public static final int MINPOS = 0;
     public static final int MAXPOS = 1;
     public static final int STEPPOS = 2;
@@ -35,6 +50,7 @@ public class TwainRange<T>
     public static final int DEFAULTPOS = 4;
     public static final int RANGESIZE = 5;
     private static final String INVALIDRANGE = "Invalid TwainRange";
+    private static final double FIX32_SCALE = 65536.0;
 
     @SuppressWarnings("unchecked")
     private void Init(T dummy)
@@ -53,6 +69,7 @@ public class TwainRange<T>
                 iList.add(0);
             }
         }
+        isDouble = dummy instanceof Double;
     }
 
     @SuppressWarnings("unchecked")
@@ -71,10 +88,48 @@ public class TwainRange<T>
         }
     }
 
+    private void initUnits()
+    {
+        if ( allValues.isEmpty() )
+            return;
+        minUnits = toUnits((Number)allValues.get(MINPOS));
+        maxUnits = toUnits((Number)allValues.get(MAXPOS));
+        stepUnits = toUnits((Number)allValues.get(STEPPOS));
+    }
+
+    private long toUnits(Number value)
+    {
+        if ( isDouble )
+            return toFix32Units(value.doubleValue());
+        return value.longValue();
+    }
+
+    /**
+     * @return The value in units of 1/65536, the precision of TW_FIX32
+     */
+    public static long toFix32Units(double value)
+    {
+        return Math.round(value * FIX32_SCALE);
+    }
+
+    /**
+     * @return true if <i>units</i> is one of the values of the range with the given minimum, maximum and step.
+     * The values are integers, or TW_FIX32 values in units of 1/65536 (see toFix32Units()).  A range
+     * whose step is not positive holds only its minimum.
+     */
+    public static boolean containsUnits(long minUnits, long maxUnits, long stepUnits, long units)
+    {
+        if ( units < minUnits || units > maxUnits )
+            return false;
+        if ( stepUnits <= 0 )
+            return units == minUnits;
+        return (units - minUnits) % stepUnits == 0;
+    }
+
     public TwainRange(T dummy)
     {
-        for (int i = 0; i < RANGESIZE; ++i)
-            Init(dummy);
+        Init(dummy);
+        initUnits();
         isValid = true;
     }
 
@@ -94,13 +149,13 @@ public class TwainRange<T>
 
         if ( !TwainRangeUtils.isValidRange(values) )
             throw new TwainRangeException(INVALIDRANGE);
+        initUnits();
         isValid = true;
     }
 
     public TwainRange(T low, T high, T step, T current, T defaultVal) throws TwainRangeException
     {
-        for (int i = 0; i < RANGESIZE; ++i)
-            Init(low);
+        Init(low);
         Init(MINPOS, low);
         Init(MAXPOS, high);
         Init(STEPPOS, step);
@@ -108,64 +163,92 @@ public class TwainRange<T>
         Init(DEFAULTPOS, defaultVal);
         if ( !TwainRangeUtils.isValidRange(allValues) )
             throw new TwainRangeException(INVALIDRANGE);
+        initUnits();
         this.isValid = true;
     }
 
-    @SuppressWarnings("unchecked")
     public int getExpandCount()
     {
-        if ( allValues.isEmpty())
+        if ( allValues.isEmpty() || !this.isValid )
             return 0;
-        if ( this.isValid )
-        {
-            if ( this.allValues.get(0) instanceof Double )
-            {
-                List<Double> dList = (List<Double>)(allValues);
-                return (int)(Math.abs(dList.get(MAXPOS) - dList.get(MINPOS)) / dList.get(STEPPOS) + 1);
-            }
-            List<Integer> dList = (List<Integer>)(allValues);
-            return Math.abs(dList.get(MAXPOS) - dList.get(MINPOS)) / dList.get(STEPPOS) + 1;
-        }
-        return 0;
+        if ( stepUnits <= 0 )
+            return 1;
+        return (int)Math.min(Integer.MAX_VALUE, (maxUnits - minUnits) / stepUnits + 1);
     }
 
     public boolean valueExists(T testValue)
     {
-        if (testValue instanceof Double)
-        {
-            double actualValue = (Double)testValue;
-            double lBias = 0.0;
-            double aMinValue = (Double)allValues.get(MINPOS);
-            double aMaxValue = (Double)allValues.get(MAXPOS);
-            if ( actualValue < aMinValue || actualValue > aMaxValue )
-                return false;
-            double a2Value = (Double)allValues.get(STEPPOS);
-            if ( aMinValue != 0.0 )
-                lBias = -aMinValue;
-            actualValue += lBias;
-            double res = actualValue % a2Value;
-            if ( res == 0 )
-                return true;
-        }
-        else
-        {
-            int actualValue = (Integer)testValue;
-            int lBias = 0;
-            int aMinValue = (Integer)allValues.get(MINPOS);
-            int aMaxValue = (Integer)allValues.get(MAXPOS);
-            int a2Value = (Integer)allValues.get(STEPPOS);
-            if ( actualValue < aMinValue || actualValue > aMaxValue )
-                return false;
-            if ( aMinValue != 0 )
-                lBias = -aMinValue;
-            actualValue += lBias;
-            int res = actualValue % a2Value;
-            if ( res == 0 )
-                return true;
-        }
+        if ( testValue instanceof Double )
+            return contains(((Double)testValue).doubleValue());
+        if ( testValue instanceof Integer )
+            return contains(((Integer)testValue).intValue());
         return false;
     }
 
+    /**
+     * @return true if the value is one of the values of the range.  For a Double range, the value
+     * is compared in units of 1/65536.
+     */
+    public boolean contains(double value)
+    {
+        if ( allValues.isEmpty() )
+            return false;
+        return containsUnits(isDouble ? toFix32Units(value) : (long)value) &&
+               (isDouble || value == Math.rint(value));
+    }
+
+    public boolean contains(int value)
+    {
+        if ( allValues.isEmpty() )
+            return false;
+        return containsUnits(isDouble ? toFix32Units(value) : value);
+    }
+
+    private boolean containsUnits(long units)
+    {
+        return containsUnits(minUnits, maxUnits, stepUnits, units);
+    }
+
+    /**
+     * @return The position, in the expanded range, of the value nearest to <i>value</i>.  Values
+     * outside of the range give the first or last position.
+     */
+    public int getNearestIndex(double value)
+    {
+        if ( allValues.isEmpty() )
+            throw new IllegalStateException(INVALIDRANGE);
+        double units = isDouble ? value * FIX32_SCALE : value;
+        if ( stepUnits <= 0 || units <= minUnits )
+            return 0;
+        int last = getExpandCount() - 1;
+        double position = (units - minUnits) / stepUnits;
+        return (int)Math.min(last, Math.round(position));
+    }
+
+    /**
+     * @return The value of the range nearest to <i>value</i>
+     */
+    public double getNearestValue(double value)
+    {
+        int where = getNearestIndex(value);
+        return isDouble ? getDoubleValue(where) : getIntValue(where);
+    }
+
+    public int getNearestValue(int value)
+    {
+        int where = getNearestIndex(value);
+        return isDouble ? (int)Math.round(getDoubleValue(where)) : getIntValue(where);
+    }
+
+    /**
+     * @return The value of the range nearest to <i>value</i>, as the type of the range
+     */
+    public T snap(T value)
+    {
+        int where = getNearestIndex(((Number)value).doubleValue());
+        return getValue(where);
+    }
+
     public T getMin() { return allValues.get(MINPOS); }
     public T getMax() { return allValues.get(MAXPOS); }
     public T getStep() { return allValues.get(STEPPOS); }
@@ -179,7 +262,7 @@ public class TwainRange<T>
             return Double.MIN_VALUE;
         if ( where >= getExpandCount())
             throw new ArrayIndexOutOfBoundsException();
-        if ( allValues.get(0) instanceof Double )
+        if ( isDouble )
         {
             double a0Value = (Double)(allValues.get(MINPOS));
             double a2Value = (Double)(allValues.get(STEPPOS));
@@ -195,38 +278,63 @@ public class TwainRange<T>
             return Integer.MIN_VALUE;
         if ( where >= getExpandCount())
             throw new ArrayIndexOutOfBoundsException();
-        if ( allValues.get(0) instanceof Integer )
-        {
-            int a0Value = (Integer)(allValues.get(MINPOS));
-            int a2Value = (Integer)(allValues.get(STEPPOS));
-            return (int)(a0Value + where * a2Value);
-        }
+        if ( !isDouble )
+            return (int)(minUnits + where * stepUnits);
         else
             throw new IllegalArgumentException();
     }
-    
+
     @SuppressWarnings("unchecked")
     public T getValue(int where)
     {
-        if ( allValues.get(0) instanceof Double )
+        if ( isDouble )
             return (T)(Double)getDoubleValue(where);
         return (T)(Integer)getIntValue(where);
     }
-    
+
+    /**
+     * @return The values of an integer range, computed as they are consumed
+     */
+    public IntStream intStream()
+    {
+        if ( isDouble )
+            throw new IllegalStateException("The range holds Double values");
+        final long min = minUnits;
+        final long step = stepUnits;
+        return IntStream.range(0, getExpandCount()).map(i -> (int)(min + i * step));
+    }
+
+    /**
+     * @return The values of the range as doubles, computed as they are consumed
+     */
+    public DoubleStream doubleStream()
+    {
+        if ( !isDouble )
+            return intStream().asDoubleStream();
+        final double min = (Double)allValues.get(MINPOS);
+        final double step = (Double)allValues.get(STEPPOS);
+        return IntStream.range(0, getExpandCount()).mapToDouble(i -> min + i * step);
+    }
+
+    public PrimitiveIterator.OfInt intIterator()
+    {
+        return intStream().iterator();
+    }
+
+    public PrimitiveIterator.OfDouble doubleIterator()
+    {
+        return doubleStream().iterator();
+    }
+
+    @SuppressWarnings("unchecked")
     public List<T> expand()
     {
         int expCount = getExpandCount();
-        List<T> retList = new ArrayList<T>();
-        if ( allValues.get(0) instanceof Double )
-        {
-            for (int i = 0; i < expCount; ++i)
-                retList.add((T)(Double)getDoubleValue(i));
-        }
+        List<T> retList = new ArrayList<T>(expCount);
+        if ( isDouble )
+            doubleStream().forEach(value -> retList.add((T)(Double)value));
         else
-        {
-            for (int i = 0; i < expCount; ++i)
-                retList.add((T)(Integer)getIntValue(i));
-        }
+            intStream().forEach(value -> retList.add((T)(Integer)value));
         return retList;
     }
 }
@@ -29,6 +29,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.UUID;
 
@@ -68,6 +71,7 @@ public class TwainSession
     private Map<Integer, SupportedFileTypeInfo> singlepageFileTypeInfoMap = new HashMap<>();
     private Map<Integer, SupportedFileTypeInfo> multipageFileTypeInfoMap = new HashMap<>();
     private Map<TwainSource, TwainCallbackInfo> callbackMap = new HashMap<>();
+    private ThreadPoolExecutor pageEncoder = null;
     
     private static final TwainConstantMapper<JNIVersion> s_map = new TwainConstantMapper<>(JNIVersion.class);
 
@@ -269,6 +273,8 @@ public class TwainSession
                     throw new DTwainJavaAPIException(e.getMessage());
                 }
                 dtwainAPI.DTWAIN_SysDestroy();
+                shutdownPageEncoder();
+                CodecResourcePool.clear();
                 s_TwainLogger.setInterface(null);
                 started = false;
                 dtwainAPI = null;
@@ -276,6 +282,53 @@ public class TwainSession
         }
     }
 
+    /**
+     * Returns the pool used to encode pages acquired to memory, creating it if necessary.
+     * The pool is shared by all sources of the session.  When the pool's queue is full, the
+     * page is encoded on the thread that stored it, so the number of unencoded pages held in
+     * memory is bounded.
+     * @param numThreads Number of threads in the pool
+     * @return The pool
+     */
+    synchronized ExecutorService getPageEncoder(int numThreads)
+    {
+        if ( pageEncoder == null )
+        {
+            pageEncoder = new ThreadPoolExecutor(numThreads, numThreads, 30, TimeUnit.SECONDS,
+                                                 new LinkedBlockingQueue<>(numThreads * 2),
+                                                 r ->
+                                                 {
+                                                     Thread t = new Thread(r, "dtwain-page-encoder");
+                                                     t.setDaemon(true);
+                                                     return t;
+                                                 },
+                                                 new ThreadPoolExecutor.CallerRunsPolicy());
+            pageEncoder.allowCoreThreadTimeOut(true);
+        }
+        else if ( pageEncoder.getMaximumPoolSize() != numThreads )
+        {
+            if ( numThreads > pageEncoder.getMaximumPoolSize() )
+            {
+                pageEncoder.setMaximumPoolSize(numThreads);
+                pageEncoder.setCorePoolSize(numThreads);
+            }
+            else
+            {
+                pageEncoder.setCorePoolSize(numThreads);
+                pageEncoder.setMaximumPoolSize(numThreads);
+            }
+        }
+        return pageEncoder;
+    }
+
+    private synchronized void shutdownPageEncoder()
+    {
+        // Pages still being encoded are finished before the threads end
+        if ( pageEncoder != null )
+            pageEncoder.shutdown();
+        pageEncoder = null;
+    }
+
     public List<TwainSourceInfo> getAllSourceInfo()
     {
         return this.twainSourceCache;
@@ -20,6 +20,7 @@
 
  */
 package com.dynarithmic.twain.highlevel;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -38,6 +39,7 @@ import com.dynarithmic.twain.highlevel.acquirecharacteristics.AcquireCharacteris
 import com.dynarithmic.twain.highlevel.acquirecharacteristics.BlankPageHandlingOptions;
 import com.dynarithmic.twain.highlevel.acquirecharacteristics.FileTransferOptions;
 import com.dynarithmic.twain.highlevel.acquirecharacteristics.GeneralOptions;
+import com.dynarithmic.twain.highlevel.acquirecharacteristics.ImageStorageOptions;
 import com.dynarithmic.twain.highlevel.acquirecharacteristics.JobControlOptions;
 import com.dynarithmic.twain.highlevel.acquirecharacteristics.PDFOptions;
 import com.dynarithmic.twain.highlevel.acquirecharacteristics.PaperHandlingOptions;
@@ -51,6 +53,7 @@ import com.dynarithmic.twain.highlevel.acquirecharacteristics.PaperHandlingOptio
 import com.dynarithmic.twain.highlevel.capabilityinterface.CapabilityInterface;
 import com.dynarithmic.twain.highlevel.capabilityinterface.CapabilityInterface.*;
 import com.dynarithmic.twain.lowlevel.TwainConstants.CAP_JOBCONTROL;
+import com.dynarithmic.twain.lowlevel.TwainConstants.CAPS;
 import com.dynarithmic.twain.lowlevel.TW_IDENTITY;
 import org.apache.commons.lang3.time.StopWatch;
 
@@ -94,6 +97,9 @@ public class TwainSource
     private byte [] customDSData = new byte[0];
     private TW_IDENTITY m_SourceID = new TW_IDENTITY();
     private OptionsApplyer m_OptionsApplyer = new OptionsApplyer();
+    private AcquisitionPlan acquisitionPlan = null;
+    private TwainPageStream pageStream = null;
+    private AcquisitionContext activeContext = null;
 
     public TwainSource()
     {}
@@ -210,6 +216,33 @@ public class TwainSource
     public TwainSource setAcquireCharacteristics(AcquireCharacteristics acquireCharacteristics)
     {
         this.acquireCharacteristics = acquireCharacteristics;
+        this.acquisitionPlan = null;
+        return this;
+    }
+
+    /**
+     * Compiles the current AcquireCharacteristics into an AcquisitionPlan for this source.  Until the
+     * characteristics are replaced with setAcquireCharacteristics(), or clearAcquisitionPlan() is called,
+     * every acquisition replays the plan.  If the pixel type, resolution, compression or duplex values of the
+     * characteristics are changed, the plan is compiled again before the next acquisition.
+     * @return The plan
+     * @throws DTwainJavaAPIException if the source does not support the values in the characteristics
+     */
+    public AcquisitionPlan compileAcquisitionPlan() throws DTwainJavaAPIException
+    {
+        isValidSource();
+        this.acquisitionPlan = AcquisitionPlan.compile(this);
+        return this.acquisitionPlan;
+    }
+
+    public AcquisitionPlan getAcquisitionPlan()
+    {
+        return this.acquisitionPlan;
+    }
+
+    public TwainSource clearAcquisitionPlan()
+    {
+        this.acquisitionPlan = null;
         return this;
     }
 
@@ -278,26 +311,53 @@ public class TwainSource
 
     private void prepareAcquisitions() throws DTwainJavaAPIException
     {
+        if ( acquisitionPlan != null )
+        {
+            if ( !acquisitionPlan.isCompiledFor(this) )
+                acquisitionPlan = AcquisitionPlan.compile(this);
+            acquisitionPlan.replay();
+            return;
+        }
         if ( !preAcquireSetup() )
             return;
         startApply();
         if ( !postAcquireSetup())
             return;
+        setAcquireArea();
+        setJobControl();
+        setManualDuplex();
+        setAcquisitionOptions();
+        setPDFOptions();
+    }
 
+    void setAcquireArea() throws DTwainJavaAPIException
+    {
         AcquireCharacteristics ac = acquireCharacteristics;
         DTwainJavaAPI handle = twainSession.getAPIHandle();
         TwainAcquireArea tAcquire = new TwainAcquireArea(ac.getPagesSupportOptions().getFrame());
         if (tAcquire.isFrameValid())
         {
             handle.DTWAIN_SetAcquireArea(sourceHandle,DTwainConstants.DTWAIN_AREASET,tAcquire);
+            capabilityInterface.invalidateCache(CAPS.ICAP_UNITS);
         }
+    }
+
+    void setJobControl() throws DTwainJavaAPIException
+    {
         // If job control is enabled, then get JNI layer to recognize this
         JobControlOptions jobOptions = acquireCharacteristics.getJobControlOptions();
-        handle.DTWAIN_EnableJobFileHandling(sourceHandle,
+        twainSession.getAPIHandle().DTWAIN_EnableJobFileHandling(sourceHandle,
                 (jobOptions.getJobControl() != CAP_JOBCONTROL.TWJC_NONE));
+    }
+
+    void setManualDuplex() throws DTwainJavaAPIException
+    {
+        AcquireCharacteristics ac = acquireCharacteristics;
+        DTwainJavaAPI handle = twainSession.getAPIHandle();
 
         // Disable the manual duplex mode
         handle.DTWAIN_SetManualDuplexMode(sourceHandle, 0, false);
+        capabilityInterface.invalidateCache(CAPS.CAP_DUPLEXENABLED);
 
         // Get the duplex mode
         ManualDuplexMode mduplex = ac.getPaperHandlingOptions().getManualDuplexMode();
@@ -311,8 +371,15 @@ public class TwainSource
 
                 // Turn on manual duplex mode
                 handle.DTWAIN_SetManualDuplexMode(sourceHandle, mduplex.ordinal(), true);
+                capabilityInterface.invalidateCache(CAPS.CAP_DUPLEXENABLED);
                 break;
         }
+    }
+
+    void setAcquisitionOptions() throws DTwainJavaAPIException
+    {
+        AcquireCharacteristics ac = acquireCharacteristics;
+        DTwainJavaAPI handle = twainSession.getAPIHandle();
 
         // Set the polarity
         handle.DTWAIN_SetAcquireImageNegative(sourceHandle, ac.getImageTypeOptions().isNegateImageEnabled());
@@ -334,11 +401,9 @@ public class TwainSource
         // general options
         GeneralOptions gopts = ac.getGeneralOptions();
         handle.DTWAIN_SetMaxAcquisitions(sourceHandle, gopts.getMaxAcquisitions());
-
-        setPDFOptions();
     }
 
-    private void setPDFOptions() throws DTwainJavaAPIException
+    void setPDFOptions() throws DTwainJavaAPIException
     {
         PDFOptions po = acquireCharacteristics.getPDFOptions();
         DTwainJavaAPI handle = twainSession.getAPIHandle();
@@ -485,19 +550,93 @@ public class TwainSource
                 handle.DTWAIN_EnableFeeder(sourceHandle, false);
             bFstatus = true;
         }
+        capabilityInterface.invalidateCache(CAPS.CAP_FEEDERENABLED);
 
         if ( bFstatus )
         {
             AcquireType transtype = acquireCharacteristics.getGeneralOptions().getAcquireType();
-            if ( transtype == AcquireType.NATIVEFILE ||
-                 transtype == AcquireType.BUFFEREDFILE ||
-                 transtype == AcquireType.DEVICEFILE )
-                return acquireToFile(transtype);
-            return acquireToImageHandles(transtype);
+            try
+            {
+                if ( transtype == AcquireType.NATIVEFILE ||
+                     transtype == AcquireType.BUFFEREDFILE ||
+                     transtype == AcquireType.DEVICEFILE )
+                    return acquireToFile(transtype);
+                return acquireToImageHandles(transtype);
+            }
+            finally
+            {
+                // Any capability may have been changed in the source's user interface, and a source closed
+                // after the acquisition is reopened with the driver's default values, so the cached values
+                // and the sets the source has accepted no longer apply
+                if ( acquireCharacteristics.getUserInterfaceOptions().isShowUI() ||
+                     acquireCharacteristics.getGeneralOptions().getSourceStateAfterAcquire() == SourceStateAfterAcquire.CLOSED )
+                    capabilityInterface.clearCache();
+            }
         }
         return new AcquireReturnInfo(ErrorCode.ERROR_NONE, null);
     }
 
+    /**
+     * Acquires images to memory, delivering each page to <i>stream</i> as soon as it has been
+     * transferred, rather than when the entire acquisition completes.  The stream must be consumed
+     * on another thread.  When this function returns, the stream is finished.<p>
+     * The ImageHandler in the returned AcquireReturnInfo describes the acquisitions, but holds
+     * no page data, since all of the pages were delivered to <i>stream</i>.
+     * @param stream The stream that receives the pages
+     * @return The result of the acquisition
+     * @throws DTwainJavaAPIException
+     */
+    public AcquireReturnInfo acquire(TwainPageStream stream) throws DTwainJavaAPIException
+    {
+        AcquireReturnInfo returnInfo = null;
+        this.pageStream = stream;
+        try
+        {
+            returnInfo = acquire();
+            return returnInfo;
+        }
+        finally
+        {
+            this.pageStream = null;
+            stream.finish(returnInfo != null ? returnInfo.getReturnCode() : ErrorCode.ERROR_ACQUIRECANCELLED);
+        }
+    }
+
+    // Called on the acquiring thread before each page is transferred
+    boolean isPageStreamCancelled()
+    {
+        TwainPageStream stream = this.pageStream;
+        return stream != null && stream.isCancelled();
+    }
+
+    // Called on the acquiring thread when a page has been fully processed
+    void onPageTransferred()
+    {
+        TwainPageStream stream = this.pageStream;
+        AcquisitionContext context = this.activeContext;
+        if ( stream == null || context == null || stream.isCancelled() || twainSession == null )
+            return;
+        try
+        {
+            DTwainJavaAPI handle = twainSession.getAPIHandle();
+            if ( handle.DTWAIN_GetCurrentAcquiredRawImage(sourceHandle) == 0 )
+                return;
+            context.setDiscardPages(false);
+            try
+            {
+                stream.addPage(handle.DTWAIN_GetCurrentAcquiredImage(sourceHandle));
+            }
+            finally
+            {
+                context.setDiscardPages(true);
+            }
+        }
+        catch (DTwainJavaAPIException e)
+        {
+            // The page stays in the acquisition, and will not be streamed
+        }
+    }
+
     private AcquireReturnInfo acquireToFile(AcquireType transtype) throws DTwainJavaAPIException
     {
         DTwainJavaAPI handle = twainSession.getAPIHandle();
@@ -514,6 +653,7 @@ public class TwainSource
         {
             dtwain_transfer_type += AcquireFileOptions.USESOURCEMODE.value();
             handle.DTWAIN_SetCompressionType(sourceHandle, ft.value(), true);
+            capabilityInterface.invalidateCache(CAPS.ICAP_COMPRESSION);
         }
 
         FilenameIncrementOptions inc = ftOptions.getFilenameIncrementOptions();
@@ -537,6 +677,10 @@ public class TwainSource
                 gopts.getMaxPageCount(),
                 ui.isShowUI(),
                 gopts.getSourceStateAfterAcquire() == SourceStateAfterAcquire.CLOSED?true:false);
+        // DTWAIN sets ICAP_XFERMECH for the acquire type, and ICAP_PIXELTYPE to the pixel type given to it
+        capabilityInterface.invalidateCache(CAPS.ICAP_XFERMECH);
+        if ( curPixelType != PixelType.DEFAULT )
+            capabilityInterface.invalidateCache(CAPS.ICAP_PIXELTYPE);
         if ( retval == -1 )
             return new AcquireReturnInfo(ErrorCode.from(handle.DTWAIN_GetLastError()), null);
         return new AcquireReturnInfo( ErrorCode.ERROR_NONE, null );
@@ -548,44 +692,79 @@ public class TwainSource
         AcquireCharacteristics ac = acquireCharacteristics;
         GeneralOptions gOpts = ac.getGeneralOptions();
         CapabilityInterface ci = this.capabilityInterface;
-        List<Integer> curPixelTypes = this.capabilityInterface.getPixelType(ci.getCurrent());
-        if ( curPixelTypes.isEmpty() )
+        boolean usePlan = acquisitionPlan != null && acquisitionPlan.isCompiledFor(this);
+        int ct;
+        if ( usePlan )
+            ct = acquisitionPlan.getCurrentPixelType();
+        else
+        {
+            List<Integer> curPixelTypes = this.capabilityInterface.getPixelType(ci.getCurrent());
+            ct = curPixelTypes.isEmpty() ? -1 : curPixelTypes.get(0);
+        }
+        if ( ct == -1 )
             return new AcquireReturnInfo(ErrorCode.from(handle.DTWAIN_GetLastError()), null);
-        int ct = curPixelTypes.get(0);
         TwainAcquisitionArray acqArray = null;
         UserInterfaceOptions ui = ac.getUserInterfaceOptions();
 
         if ( transtype == AcquireType.NATIVE || transtype == AcquireType.BUFFERED)
         {
-            if ( transtype == AcquireType.NATIVE )
-            {
-                acqArray = handle.DTWAIN_AcquireNative(sourceHandle,
-                        ct,
-                        gOpts.getMaxPageCount(),
-                        ui.isShowUI(),
-                        gOpts.getSourceStateAfterAcquire() == SourceStateAfterAcquire.CLOSED?true:false);
-            }
-            else
+            // The pages are created on this thread by the JNI layer, and will
+            // use the storage options chosen for this acquisition
+            AcquisitionContext context = new AcquisitionContext(ac.getImageStorageOptions());
+            PageSpillStore spillStore = createPageSpillStore(ac.getImageStorageOptions());
+            context.setPageSpillStore(spillStore);
+            context.setDiscardPages(pageStream != null);
+            if ( ac.getImageStorageOptions().getEncoderThreads() > 0 )
+                context.setPageEncoder(twainSession.getPageEncoder(ac.getImageStorageOptions().getEncoderThreads()));
+            AcquisitionContext.begin(context);
+            this.activeContext = context;
+            try
             {
-                int nStripSize = bufferedTransferInfo.getStripSize();
-                if ( bufferedTransferInfo.isHandleStrips() )
+                if ( transtype == AcquireType.NATIVE )
                 {
-                    OptionsApplyer.apply(this, ac.getCompressionSupportOptions());
-                    bufferedTransferInfo.attach(this);
-                    List<Integer> currentCompression = ci.getCompression(ci.getCurrent());
-                    bufferedTransferInfo.setStripSize(nStripSize);
-                    bufferedTransferInfo.initTransfer(CompressionType.values()[currentCompression.get(0)]);
+                    acqArray = handle.DTWAIN_AcquireNative(sourceHandle,
+                            ct,
+                            gOpts.getMaxPageCount(),
+                            ui.isShowUI(),
+                            gOpts.getSourceStateAfterAcquire() == SourceStateAfterAcquire.CLOSED?true:false);
                 }
                 else
                 {
-                    bufferedTransferInfo.setStripSize(nStripSize);
-                    bufferedTransferInfo.initTransfer(CompressionType.NONE);
+                    int nStripSize = bufferedTransferInfo.getStripSize();
+                    if ( bufferedTransferInfo.isHandleStrips() )
+                    {
+                        OptionsApplyer.apply(this, ac.getCompressionSupportOptions());
+                        bufferedTransferInfo.attach(this);
+                        int currentCompression;
+                        if ( usePlan )
+                            currentCompression = acquisitionPlan.getCurrentCompression();
+                        else
+                            currentCompression = ci.getCompression(ci.getCurrent()).get(0);
+                        bufferedTransferInfo.setStripSize(nStripSize);
+                        bufferedTransferInfo.initTransfer(CompressionType.values()[currentCompression]);
+                    }
+                    else
+                    {
+                        bufferedTransferInfo.setStripSize(nStripSize);
+                        bufferedTransferInfo.initTransfer(CompressionType.NONE);
+                    }
+                    acqArray = handle.DTWAIN_AcquireBuffered(sourceHandle,
+                            ct,
+                            gOpts.getMaxPageCount(),
+                            ui.isShowUI(),
+                            gOpts.getSourceStateAfterAcquire() == SourceStateAfterAcquire.CLOSED?true:false);
                 }
-                acqArray = handle.DTWAIN_AcquireBuffered(sourceHandle,
-                        ct,
-                        gOpts.getMaxPageCount(),
-                        ui.isShowUI(),
-                        gOpts.getSourceStateAfterAcquire() == SourceStateAfterAcquire.CLOSED?true:false);
+            }
+            finally
+            {
+                // DTWAIN sets ICAP_XFERMECH for the acquire type, and ICAP_PIXELTYPE to the pixel type given to it
+                capabilityInterface.invalidateCache(CAPS.ICAP_XFERMECH);
+                if ( ct != PixelType.DEFAULT.value() )
+                    capabilityInterface.invalidateCache(CAPS.ICAP_PIXELTYPE);
+                this.activeContext = null;
+                AcquisitionContext.end();
+                // Spilled pages stay mapped after the store is closed
+                context.finish();
             }
 
             int last_error = this.twainSession.getLastError();
@@ -599,6 +778,21 @@ public class TwainSource
         return new AcquireReturnInfo(ErrorCode.ERROR_ACQUIRECANCELLED, null);
     }
 
+    private PageSpillStore createPageSpillStore(ImageStorageOptions storageOptions) throws DTwainJavaAPIException
+    {
+        if ( storageOptions.getHeapBudget() < 0 || storageOptions.isDirectBuffersEnabled() )
+            return null;
+        try
+        {
+            return new PageSpillStore(twainSession.getAPIHandle().DTWAIN_GetTempFileDirectory(),
+                                      storageOptions.getHeapBudget());
+        }
+        catch (IOException e)
+        {
+            throw new DTwainJavaAPIException(e.getMessage());
+        }
+    }
+
     // Override this for custom setup before options are applied
     public boolean preAcquireSetup()
     {
@@ -616,6 +810,8 @@ public class TwainSource
         if ( sourceHandle != 0 && twainSession != null && isOpened)
         {
             DTwainJavaAPI handle = twainSession.getAPIHandle();
+            bufferedTransferInfo.releaseStripBuffers();
+            capabilityInterface.saveSnapshot();
             int retVal = handle.DTWAIN_CloseSource(sourceHandle);
             int last_error = this.twainSession.getLastError();
             if ( last_error != DTwainConstants.ErrorCode.ERROR_NONE.value() )
@@ -703,6 +899,13 @@ public class TwainSource
         return new BufferedStripInfo();
     }
 
+    public BufferedTileInfo getBufferedTileInfo() throws DTwainJavaAPIException
+    {
+        if ( sourceHandle != 0 && twainSession != null && isOpened)
+            return twainSession.getAPIHandle().DTWAIN_GetBufferedTileInfo(sourceHandle);
+        return new BufferedTileInfo();
+    }
+
     public void writePDFTextElement(PDFTextElement textElement) throws DTwainJavaAPIException
     {
         if ( sourceHandle != 0 && twainSession != null && isOpened)
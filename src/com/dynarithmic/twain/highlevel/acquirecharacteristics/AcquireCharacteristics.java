@@ -58,6 +58,7 @@ public class AcquireCharacteristics
     private GeneralOptions generalOptions              = new GeneralOptions();
     private ImageInformationOptions  imageInformation  = new ImageInformationOptions();
     private ImageParameterOptions    imageParameter    = new ImageParameterOptions();
+    private ImageStorageOptions      imageStorage      = new ImageStorageOptions();
     private ImageTypeOptions imageType                 = new ImageTypeOptions();
     private ImprinterOptions imprinterSupport   = new ImprinterOptions();
     private JobControlOptions jobControl        = new JobControlOptions();
@@ -190,6 +191,14 @@ public class AcquireCharacteristics
         return imageParameter;
     }
 
+    /**
+     * @return The ImageStorageOptions used when holding images acquired to memory
+     */
+    public ImageStorageOptions getImageStorageOptions()
+    {
+        return imageStorage;
+    }
+
     /**
      * @return The ImageTypeOptions (see "Image Type", Chapter 10-3 of the TWAIN 2.4 specification)
      */
@@ -0,0 +1,202 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel.acquirecharacteristics;
+
+import com.dynarithmic.twain.DTwainConstants.DuplicatePageAction;
+import com.dynarithmic.twain.DTwainConstants.ImageStorageCodecType;
+
+/**
+ * @author Dynarithmic Software
+ * <p>ImageStorageOptions gets/sets how pages acquired to memory (AcquireType.NATIVE or AcquireType.BUFFERED)<br>
+ *    are held by the TwainImageData objects returned in the ImageHandler.  These options are used solely<br>
+ *    by the Java layer, and are not sent to the TWAIN device.
+ */
+public class ImageStorageOptions
+{
+    private ImageStorageCodecType codecType = defaultCodecType;
+    private boolean directBuffersEnabled = false;
+    private long heapBudget = noHeapBudget;
+    private int encoderThreads = defaultEncoderThreads;
+    private DuplicatePageAction duplicatePageAction = defaultDuplicatePageAction;
+    private int duplicateDistance = defaultDuplicateDistance;
+
+    public static final ImageStorageCodecType defaultCodecType = ImageStorageCodecType.DEFLATE_BEST;
+    public static final long noHeapBudget = -1;
+    public static final int defaultEncoderThreads = 0;
+    public static final DuplicatePageAction defaultDuplicatePageAction = DuplicatePageAction.NONE;
+    public static final int defaultDuplicateDistance = -1;
+
+    /**
+     * @return The codec used to store each acquired page.
+     * @see #setCodecType(ImageStorageCodecType)
+     */
+    public ImageStorageCodecType getCodecType()
+    {
+        return codecType;
+    }
+
+    /**
+     * @param codecType The codec used to store each acquired page.  The valid values are as follows:
+     * <ul>
+       <li>ImageStorageCodecType.RAW          -- Page is stored uncompressed</li>
+       <li>ImageStorageCodecType.DEFLATE_1 to DEFLATE_3 -- Page is stored using fast zlib compression</li>
+       <li>ImageStorageCodecType.DEFLATE_BEST -- Page is stored using zlib's best compression (default)</li>
+       <li>ImageStorageCodecType.BLOCK_LZ     -- Page is stored using LZ4-style block compression</li>
+       <li>ImageStorageCodecType.RLE          -- Page is stored using run-length (PackBits) compression, suited for bitonal pages</li>
+       </ul>
+     * @return The current object.
+     * @see #getCodecType()
+     */
+    public ImageStorageOptions setCodecType(ImageStorageCodecType codecType)
+    {
+        this.codecType = codecType;
+        return this;
+    }
+
+    /**
+     * @return true if acquired pages are held uncompressed in direct (off-heap) buffers.
+     * @see #enableDirectBuffers(boolean)
+     */
+    public boolean isDirectBuffersEnabled()
+    {
+        return directBuffersEnabled;
+    }
+
+    /**
+     * @param enable If true, each acquired page is moved once into a direct (off-heap) ByteBuffer<br>
+     * and held uncompressed.  The codec type is ignored.  Use ImageHandler.getImageBuffer() to access the<br>
+     * page data without copying it onto the Java heap.
+     * @return The current object.
+     * @see #isDirectBuffersEnabled()
+     */
+    public ImageStorageOptions enableDirectBuffers(boolean enable)
+    {
+        this.directBuffersEnabled = enable;
+        return this;
+    }
+
+    /**
+     * @return The number of bytes of stored page data that an acquisition may keep on the Java heap.
+     * @see #setHeapBudget(long)
+     */
+    public long getHeapBudget()
+    {
+        return heapBudget;
+    }
+
+    /**
+     * @param heapBudget The number of bytes of stored (encoded) page data that an acquisition may keep on the<br>
+     * Java heap.  Once the budget is used, further pages are appended to a temporary file in the DTWAIN temporary<br>
+     * directory, and are accessed through memory mapped buffers.  The default, ImageStorageOptions.noHeapBudget,<br>
+     * keeps all pages on the heap.
+     * @return The current object.
+     * @see #getHeapBudget()
+     */
+    public ImageStorageOptions setHeapBudget(long heapBudget)
+    {
+        this.heapBudget = heapBudget;
+        return this;
+    }
+
+    /**
+     * @return The number of threads used to encode acquired pages.
+     * @see #setEncoderThreads(int)
+     */
+    public int getEncoderThreads()
+    {
+        return encoderThreads;
+    }
+
+    /**
+     * @param encoderThreads The number of threads in the TwainSession's pool used to encode acquired pages.<br>
+     * If greater than 0, each page is handed to the pool when it is converted to a TwainImageData, and the<br>
+     * thread creating the page does not wait for it to be encoded.  Accessing the page waits for its encoding<br>
+     * to finish.<br>
+     * For acquire() with a NATIVE or BUFFERED transfer, the pages are converted after the source has transferred<br>
+     * all of them, so the pages are encoded in parallel with each other, not with the transfer.  With a<br>
+     * TwainPageStream, each page is converted as soon as it is transferred, so its encoding also overlaps the<br>
+     * transfer of the following pages.<br>
+     * The default, ImageStorageOptions.defaultEncoderThreads (0), encodes each page on the thread creating it.
+     * @return The current object.
+     * @see #getEncoderThreads()
+     */
+    public ImageStorageOptions setEncoderThreads(int encoderThreads)
+    {
+        this.encoderThreads = encoderThreads;
+        return this;
+    }
+
+    /**
+     * @return What is done with a page that duplicates an earlier page of the same acquisition.
+     * @see #setDuplicatePageAction(DuplicatePageAction)
+     */
+    public DuplicatePageAction getDuplicatePageAction()
+    {
+        return duplicatePageAction;
+    }
+
+    /**
+     * @param duplicatePageAction What is done with a page that duplicates an earlier page of the same acquisition,<br>
+     * such as a page pulled twice by the feeder, or rescanned by the operator.  Each page is hashed as it is stored,<br>
+     * and is checked when the pages of the acquisition are first read.  Only pages acquired to memory with<br>
+     * TwainSource.acquire() are checked.  Pages acquired with a file acquire type (NATIVEFILE, BUFFEREDFILE or<br>
+     * DEVICEFILE) are written by DTWAIN without reaching Java, and pages delivered to a TwainPageStream are not checked.<br>
+     * The valid values are as follows:
+     * <ul>
+       <li>DuplicatePageAction.NONE    -- Pages are not hashed or checked (default)</li>
+       <li>DuplicatePageAction.FLAG    -- Duplicate pages are kept, and TwainImageData.isDuplicate() returns true</li>
+       <li>DuplicatePageAction.DISCARD -- Pages with identical data are not added to the acquisition.  Pages that<br>
+       only look alike (see setDuplicateDistance()) are kept and flagged.</li>
+       </ul>
+     * @return The current object.
+     * @see #getDuplicatePageAction()
+     */
+    public ImageStorageOptions setDuplicatePageAction(DuplicatePageAction duplicatePageAction)
+    {
+        this.duplicatePageAction = duplicatePageAction;
+        return this;
+    }
+
+    /**
+     * @return The largest perceptual hash distance at which two pages are duplicates.
+     * @see #setDuplicateDistance(int)
+     */
+    public int getDuplicateDistance()
+    {
+        return duplicateDistance;
+    }
+
+    /**
+     * @param duplicateDistance The largest number of bits (0 to 256) by which the perceptual hashes of two pages may<br>
+     * differ for the pages to be flagged as duplicates.  Pages with identical data are always duplicates.  A negative<br>
+     * value only matches pages with identical data (default).  Different pages with the same layout, such as pages<br>
+     * of text or forms, can have very similar hashes, so keep the distance small.  Pages that only look alike are<br>
+     * never discarded.
+     * @return The current object.
+     * @see #getDuplicateDistance()
+     */
+    public ImageStorageOptions setDuplicateDistance(int duplicateDistance)
+    {
+        this.duplicateDistance = duplicateDistance;
+        return this;
+    }
+}
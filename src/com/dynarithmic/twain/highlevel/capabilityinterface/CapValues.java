@@ -0,0 +1,231 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel.capabilityinterface;
+
+import java.util.List;
+
+import com.dynarithmic.twain.DTwainConstants.ContainerType;
+import com.dynarithmic.twain.highlevel.TwainFrameDouble;
+import com.dynarithmic.twain.lowlevel.TwainConstants.MSG;
+import com.dynarithmic.twain.lowlevel.TwainConstants.TWTY;
+
+/**
+ * @author Dynarithmic Software
+ * <p>The values of a capability, held in a primitive array of the capability's type instead of a list of objects.
+ * The subclasses are IntCapValues (integer and boolean capabilities), DoubleCapValues (TW_FIX32 capabilities),
+ * StringCapValues and FrameCapValues.</p>
+ * <p>For a range (getContainerType() is ContainerType.RANGE), the values are the minimum, maximum, step, current and
+ * default values, in that order (see TwainRange).  For an enumeration returned by MSG_GET, getCurrentIndex() and
+ * getDefaultIndex() give the positions of the current and default values.</p>
+ */
+public abstract class CapValues
+{
+    private final int cap;
+    private final int containerType;
+    int currentIndex = -1;
+    int defaultIndex = -1;
+
+    // Set for an enumeration returned by MSG_GET.  The current and default values are only requested when asked for.
+    CapabilityInterface indexSource = null;
+    int dataType = 0;
+    private boolean currentRequested = false;
+    private boolean defaultRequested = false;
+
+    CapValues(int cap, int containerType)
+    {
+        this.cap = cap;
+        this.containerType = containerType;
+    }
+
+    public int getCap()
+    {
+        return cap;
+    }
+
+    public int getContainerType()
+    {
+        return containerType;
+    }
+
+    public boolean isRange()
+    {
+        return containerType == ContainerType.RANGE.value();
+    }
+
+    public abstract int size();
+
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * @return The position of the current value, or -1 if not known.  For an enumeration returned by MSG_GET, the
+     * current value is requested from the source the first time this is called.
+     */
+    public int getCurrentIndex()
+    {
+        if ( currentIndex == -1 && containerType == ContainerType.ONEVALUE.value() && size() == 1 )
+            return 0;
+        if ( currentIndex == -1 && indexSource != null && !currentRequested )
+        {
+            currentRequested = true;
+            currentIndex = indexSource.getValueIndex(this, MSG.MSG_GETCURRENT);
+        }
+        return currentIndex;
+    }
+
+    /**
+     * @return The position of the default value, or -1 if not known.  For an enumeration returned by MSG_GET, the
+     * default value is requested from the source the first time this is called.
+     */
+    public int getDefaultIndex()
+    {
+        if ( defaultIndex == -1 && containerType == ContainerType.ONEVALUE.value() && size() == 1 )
+            return 0;
+        if ( defaultIndex == -1 && indexSource != null && !defaultRequested )
+        {
+            defaultRequested = true;
+            defaultIndex = indexSource.getValueIndex(this, MSG.MSG_GETDEFAULT);
+        }
+        return defaultIndex;
+    }
+
+    /**
+     * @param value An Integer, Boolean, Double, String or TwainFrameDouble
+     * @return true if value is one of the values, or for a range, is one of the values between the minimum and
+     * maximum using the step
+     */
+    public abstract boolean containsValue(Object value);
+
+    /**
+     * @return true if the values are a range with five values, a minimum no greater than the maximum, and a step that
+     * is not negative
+     */
+    boolean isValidRange()
+    {
+        return false;
+    }
+
+    /**
+     * @return The position of the value, or -1.  Ranges are not expanded.
+     */
+    abstract int indexOf(Object value);
+
+    /**
+     * @return The values as objects, the same as returned by CapabilityInterface.getCapValues()
+     */
+    public abstract List<Object> toList();
+
+    int resolveIndex(int index, String which)
+    {
+        if ( index < 0 || index >= size() )
+            throw new IllegalStateException("The " + which + " value of capability " + cap + " is not known");
+        return index;
+    }
+
+    /**
+     * Creates the values of a capability from the values returned by CapabilityInterface.getCapValues().
+     */
+    static CapValues fromList(int cap, int containerType, int dataType, List<Object> values)
+    {
+        Object first = values.isEmpty() ? null : values.get(0);
+        if ( first instanceof Integer || first instanceof Boolean )
+        {
+            int[] ints = new int[values.size()];
+            for (int i = 0; i < ints.length; ++i)
+            {
+                Object obj = values.get(i);
+                ints[i] = obj instanceof Boolean ? ((Boolean)obj ? 1 : 0) : ((Number)obj).intValue();
+            }
+            return new IntCapValues(cap, containerType, ints, first instanceof Boolean);
+        }
+        if ( first instanceof Double )
+        {
+            double[] doubles = new double[values.size()];
+            for (int i = 0; i < doubles.length; ++i)
+                doubles[i] = ((Number)values.get(i)).doubleValue();
+            return new DoubleCapValues(cap, containerType, doubles);
+        }
+        if ( first instanceof String )
+            return new StringCapValues(cap, containerType, values.toArray(new String[0]));
+        if ( first instanceof TwainFrameDouble )
+        {
+            double[] frames = new double[values.size() * 4];
+            for (int i = 0; i < values.size(); ++i)
+            {
+                TwainFrameDouble frame = (TwainFrameDouble)values.get(i);
+                frames[i * 4] = frame.getLeft();
+                frames[i * 4 + 1] = frame.getTop();
+                frames[i * 4 + 2] = frame.getRight();
+                frames[i * 4 + 3] = frame.getBottom();
+            }
+            return new FrameCapValues(cap, containerType, frames);
+        }
+        return empty(cap, containerType, dataType);
+    }
+
+    /**
+     * Creates the values of entry <i>index</i> of a batch result, copying the primitive values directly.
+     */
+    static CapValues fromBatch(CapabilityBatchResult result, int index, int containerType, int dataType)
+    {
+        int cap = result.getCap(index);
+        if ( !result.isSuccess(index) )
+            return empty(cap, containerType, dataType);
+        switch (result.getValueKind(index))
+        {
+            case CapabilityBatchResult.KIND_INT:
+            case CapabilityBatchResult.KIND_BOOL:
+                return new IntCapValues(cap, containerType, result.copyInts(index),
+                                        result.getValueKind(index) == CapabilityBatchResult.KIND_BOOL);
+            case CapabilityBatchResult.KIND_DOUBLE:
+                return new DoubleCapValues(cap, containerType, result.copyDoubles(index));
+            case CapabilityBatchResult.KIND_STRING:
+                return new StringCapValues(cap, containerType, result.copyStrings(index));
+            case CapabilityBatchResult.KIND_FRAME:
+                return new FrameCapValues(cap, containerType, result.copyDoubles(index));
+            default:
+                return empty(cap, containerType, dataType);
+        }
+    }
+
+    static CapValues empty(int cap, int containerType, int dataType)
+    {
+        switch (dataType)
+        {
+            case TWTY.TWTY_FIX32:
+                return new DoubleCapValues(cap, containerType, new double[0]);
+            case TWTY.TWTY_FRAME:
+                return new FrameCapValues(cap, containerType, new double[0]);
+            case TWTY.TWTY_STR32:
+            case TWTY.TWTY_STR64:
+            case TWTY.TWTY_STR128:
+            case TWTY.TWTY_STR255:
+            case TWTY.TWTY_STR1024:
+                return new StringCapValues(cap, containerType, new String[0]);
+            default:
+                return new IntCapValues(cap, containerType, new int[0],
+                                        dataType == TWTY.TWTY_BOOL);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel.capabilityinterface;
+
+import java.util.Arrays;
+
+import com.dynarithmic.twain.highlevel.capabilityinterface.CapabilityInterface.GetCapOperation;
+
+/**
+ * @author Dynarithmic Software
+ * <p>A list of capabilities to get in one call to CapabilityInterface.getCapValues(CapabilityBatch).<br>
+ * Each capability is added with the GetCapOperation to use, and the same capability may be added more than once<br>
+ * with different operations.  The results are returned in a CapabilityBatchResult, in the order the capabilities<br>
+ * were added.
+ */
+public class CapabilityBatch
+{
+    private int[] caps = new int[16];
+    private int[] getTypes = new int[16];
+    private int[] containerTypes = new int[16];
+    private int[] dataTypes = new int[16];
+    private int size = 0;
+
+    /**
+     * @param cap The capability
+     * @param gcType The operation, such as CapabilityInterface.get() or getCurrent()
+     * @return The current object.
+     */
+    public CapabilityBatch add(int cap, GetCapOperation gcType)
+    {
+        if ( gcType == null )
+            throw new IllegalArgumentException("Capability get type cannot be null");
+        if ( size == caps.length )
+        {
+            caps = Arrays.copyOf(caps, size * 2);
+            getTypes = Arrays.copyOf(getTypes, size * 2);
+            containerTypes = Arrays.copyOf(containerTypes, size * 2);
+            dataTypes = Arrays.copyOf(dataTypes, size * 2);
+        }
+        caps[size] = cap;
+        getTypes[size] = gcType.getOperation();
+        containerTypes[size] = gcType.getContainerType();
+        dataTypes[size] = gcType.getDataType();
+        ++size;
+        return this;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public int getCap(int index)
+    {
+        return caps[index];
+    }
+
+    public int getOperation(int index)
+    {
+        return getTypes[index];
+    }
+
+    int getContainerType(int index)
+    {
+        return containerTypes[index];
+    }
+
+    int getDataType(int index)
+    {
+        return dataTypes[index];
+    }
+
+    public CapabilityBatch clear()
+    {
+        size = 0;
+        return this;
+    }
+}
@@ -0,0 +1,404 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel.capabilityinterface;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.dynarithmic.twain.highlevel.TwainFrameDouble;
+
+/**
+ * @author Dynarithmic Software
+ * <p>The values of the capabilities of a CapabilityBatch.  The values of all the capabilities are held in one array<br>
+ * per kind of value (int, double or String), so no object is created for each value.  For the capability at <i>index</i>,<br>
+ * getValueKind(index) tells which array holds its values, and getInt(), getBoolean(), getDouble(), getString() or getFrame()<br>
+ * return each of its getValueCount(index) values.
+ */
+public class CapabilityBatchResult
+{
+    public static final int KIND_NONE = 0;
+    public static final int KIND_INT = 1;
+    public static final int KIND_BOOL = 2;
+    public static final int KIND_DOUBLE = 3;
+    public static final int KIND_STRING = 4;
+    public static final int KIND_FRAME = 5;
+
+    // Entries of each capability in meta
+    private static final int META_ERROR = 0;
+    private static final int META_KIND = 1;
+    private static final int META_OFFSET = 2;
+    private static final int META_COUNT = 3;
+    private static final int META_SIZE = 4;
+
+    private final int[] caps;
+    private final int[] meta;
+    private final int[] intValues;
+    private final double[] doubleValues;
+    private final String[] stringValues;
+
+    private CapabilityBatchResult(int[] caps, int[] meta, int[] intValues, double[] doubleValues, String[] stringValues)
+    {
+        this.caps = caps;
+        this.meta = meta;
+        this.intValues = intValues;
+        this.doubleValues = doubleValues;
+        this.stringValues = stringValues;
+    }
+
+    public int size()
+    {
+        return caps.length;
+    }
+
+    public int getCap(int index)
+    {
+        return caps[index];
+    }
+
+    /**
+     * @return The index of the first result for the capability, or -1 if the capability is not in the batch
+     */
+    public int indexOf(int cap)
+    {
+        for (int i = 0; i < caps.length; ++i)
+        {
+            if ( caps[i] == cap )
+                return i;
+        }
+        return -1;
+    }
+
+    public boolean isSuccess(int index)
+    {
+        return meta[index * META_SIZE + META_ERROR] == 0;
+    }
+
+    /**
+     * @return The DTWAIN error code of the capability, or 0 if its values were returned
+     */
+    public int getErrorCode(int index)
+    {
+        return meta[index * META_SIZE + META_ERROR];
+    }
+
+    public int getValueKind(int index)
+    {
+        return meta[index * META_SIZE + META_KIND];
+    }
+
+    public int getValueCount(int index)
+    {
+        return meta[index * META_SIZE + META_COUNT];
+    }
+
+    public int getInt(int index, int value)
+    {
+        return intValues[valueIndex(index, value, 1)];
+    }
+
+    public boolean getBoolean(int index, int value)
+    {
+        return intValues[valueIndex(index, value, 1)] != 0;
+    }
+
+    public double getDouble(int index, int value)
+    {
+        return doubleValues[valueIndex(index, value, 1)];
+    }
+
+    public String getString(int index, int value)
+    {
+        return stringValues[valueIndex(index, value, 1)];
+    }
+
+    public TwainFrameDouble getFrame(int index, int value)
+    {
+        int i = valueIndex(index, value, 4);
+        return new TwainFrameDouble(doubleValues[i], doubleValues[i + 1], doubleValues[i + 2], doubleValues[i + 3]);
+    }
+
+    private int valueIndex(int index, int value, int width)
+    {
+        if ( value < 0 || value >= getValueCount(index) )
+            throw new IndexOutOfBoundsException("Value " + value + " of capability " + caps[index]);
+        return meta[index * META_SIZE + META_OFFSET] + value * width;
+    }
+
+    int[] copyInts(int index)
+    {
+        int offset = meta[index * META_SIZE + META_OFFSET];
+        return Arrays.copyOfRange(intValues, offset, offset + getValueCount(index));
+    }
+
+    // Frames are returned as four doubles each
+    double[] copyDoubles(int index)
+    {
+        int width = getValueKind(index) == KIND_FRAME ? 4 : 1;
+        int offset = meta[index * META_SIZE + META_OFFSET];
+        return Arrays.copyOfRange(doubleValues, offset, offset + getValueCount(index) * width);
+    }
+
+    String[] copyStrings(int index)
+    {
+        int offset = meta[index * META_SIZE + META_OFFSET];
+        return Arrays.copyOfRange(stringValues, offset, offset + getValueCount(index));
+    }
+
+    /**
+     * @return The values of the capability as objects, the same as returned by CapabilityInterface.getCapValues()
+     */
+    public List<Object> getValues(int index)
+    {
+        int count = getValueCount(index);
+        List<Object> values = new ArrayList<>(count);
+        int kind = getValueKind(index);
+        for (int i = 0; i < count; ++i)
+        {
+            switch (kind)
+            {
+                case KIND_INT:
+                    values.add(getInt(index, i));
+                    break;
+                case KIND_BOOL:
+                    values.add(getBoolean(index, i));
+                    break;
+                case KIND_DOUBLE:
+                    values.add(getDouble(index, i));
+                    break;
+                case KIND_STRING:
+                    values.add(getString(index, i));
+                    break;
+                case KIND_FRAME:
+                    values.add(getFrame(index, i));
+                    break;
+                default:
+                    break;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Collects the results of the capabilities, which may come from the cache, from the batch call to the
+     * JNI layer, or from single calls.
+     */
+    static class Builder
+    {
+        private final int[] caps;
+        private final int[] meta;
+        private int[] intValues = new int[64];
+        private double[] doubleValues = new double[64];
+        private String[] stringValues = new String[8];
+        private int intCount = 0;
+        private int doubleCount = 0;
+        private int stringCount = 0;
+
+        Builder(CapabilityBatch batch)
+        {
+            caps = new int[batch.size()];
+            for (int i = 0; i < caps.length; ++i)
+                caps[i] = batch.getCap(i);
+            meta = new int[caps.length * META_SIZE];
+        }
+
+        void setError(int index, int errorCode)
+        {
+            meta[index * META_SIZE + META_ERROR] = errorCode != 0 ? errorCode : -1;
+        }
+
+        void setValues(int index, List<Object> values)
+        {
+            int base = index * META_SIZE;
+            meta[base + META_ERROR] = 0;
+            meta[base + META_COUNT] = values.size();
+            if ( values.isEmpty() )
+                return;
+            Object first = values.get(0);
+            if ( first instanceof Integer || first instanceof Boolean )
+            {
+                meta[base + META_KIND] = first instanceof Boolean ? KIND_BOOL : KIND_INT;
+                meta[base + META_OFFSET] = intCount;
+                ensureInts(values.size());
+                for (Object obj : values)
+                    intValues[intCount++] = obj instanceof Boolean ? ((Boolean)obj ? 1 : 0) : ((Number)obj).intValue();
+            }
+            else
+            if ( first instanceof Double )
+            {
+                meta[base + META_KIND] = KIND_DOUBLE;
+                meta[base + META_OFFSET] = doubleCount;
+                ensureDoubles(values.size());
+                for (Object obj : values)
+                    doubleValues[doubleCount++] = ((Number)obj).doubleValue();
+            }
+            else
+            if ( first instanceof String )
+            {
+                meta[base + META_KIND] = KIND_STRING;
+                meta[base + META_OFFSET] = stringCount;
+                ensureStrings(values.size());
+                for (Object obj : values)
+                    stringValues[stringCount++] = (String)obj;
+            }
+            else
+            if ( first instanceof TwainFrameDouble )
+            {
+                meta[base + META_KIND] = KIND_FRAME;
+                meta[base + META_OFFSET] = doubleCount;
+                ensureDoubles(values.size() * 4);
+                for (Object obj : values)
+                {
+                    TwainFrameDouble frame = (TwainFrameDouble)obj;
+                    doubleValues[doubleCount++] = frame.getLeft();
+                    doubleValues[doubleCount++] = frame.getTop();
+                    doubleValues[doubleCount++] = frame.getRight();
+                    doubleValues[doubleCount++] = frame.getBottom();
+                }
+            }
+            else
+                meta[base + META_COUNT] = 0;
+        }
+
+        // Copies typed values from the cache, without creating an object for each value
+        void setValues(int index, CapValues values)
+        {
+            int base = index * META_SIZE;
+            int count = values.size();
+            meta[base + META_ERROR] = 0;
+            meta[base + META_COUNT] = count;
+            if ( values instanceof IntCapValues )
+            {
+                IntCapValues ints = (IntCapValues)values;
+                meta[base + META_KIND] = ints.isBoolean() ? KIND_BOOL : KIND_INT;
+                meta[base + META_OFFSET] = intCount;
+                ensureInts(count);
+                for (int i = 0; i < count; ++i)
+                    intValues[intCount++] = ints.get(i);
+            }
+            else
+            if ( values instanceof DoubleCapValues )
+            {
+                DoubleCapValues doubles = (DoubleCapValues)values;
+                meta[base + META_KIND] = KIND_DOUBLE;
+                meta[base + META_OFFSET] = doubleCount;
+                ensureDoubles(count);
+                for (int i = 0; i < count; ++i)
+                    doubleValues[doubleCount++] = doubles.get(i);
+            }
+            else
+            if ( values instanceof StringCapValues )
+            {
+                StringCapValues strings = (StringCapValues)values;
+                meta[base + META_KIND] = KIND_STRING;
+                meta[base + META_OFFSET] = stringCount;
+                ensureStrings(count);
+                for (int i = 0; i < count; ++i)
+                    stringValues[stringCount++] = strings.get(i);
+            }
+            else
+            if ( values instanceof FrameCapValues )
+            {
+                FrameCapValues frames = (FrameCapValues)values;
+                meta[base + META_KIND] = KIND_FRAME;
+                meta[base + META_OFFSET] = doubleCount;
+                ensureDoubles(count * 4);
+                for (int i = 0; i < count; ++i)
+                {
+                    doubleValues[doubleCount++] = frames.getLeft(i);
+                    doubleValues[doubleCount++] = frames.getTop(i);
+                    doubleValues[doubleCount++] = frames.getRight(i);
+                    doubleValues[doubleCount++] = frames.getBottom(i);
+                }
+            }
+            else
+                meta[base + META_COUNT] = 0;
+        }
+
+        /**
+         * Copies the result of entry <i>from</i> of the arrays returned by DTWAIN_GetCapValuesBatch.
+         */
+        void setPacked(int index, Object[] packed, int from)
+        {
+            int[] packedMeta = (int[])packed[0];
+            int src = from * META_SIZE;
+            int base = index * META_SIZE;
+            int kind = packedMeta[src + META_KIND];
+            int count = packedMeta[src + META_COUNT];
+            int offset = packedMeta[src + META_OFFSET];
+            meta[base + META_ERROR] = packedMeta[src + META_ERROR];
+            meta[base + META_KIND] = kind;
+            meta[base + META_COUNT] = count;
+            switch (kind)
+            {
+                case KIND_INT:
+                case KIND_BOOL:
+                    meta[base + META_OFFSET] = intCount;
+                    ensureInts(count);
+                    System.arraycopy((int[])packed[1], offset, intValues, intCount, count);
+                    intCount += count;
+                    break;
+                case KIND_DOUBLE:
+                case KIND_FRAME:
+                    int width = kind == KIND_FRAME ? 4 : 1;
+                    meta[base + META_OFFSET] = doubleCount;
+                    ensureDoubles(count * width);
+                    System.arraycopy((double[])packed[2], offset, doubleValues, doubleCount, count * width);
+                    doubleCount += count * width;
+                    break;
+                case KIND_STRING:
+                    meta[base + META_OFFSET] = stringCount;
+                    ensureStrings(count);
+                    System.arraycopy((String[])packed[3], offset, stringValues, stringCount, count);
+                    stringCount += count;
+                    break;
+                default:
+                    meta[base + META_COUNT] = 0;
+                    break;
+            }
+        }
+
+        private void ensureInts(int n)
+        {
+            if ( intCount + n > intValues.length )
+                intValues = Arrays.copyOf(intValues, Math.max(intValues.length * 2, intCount + n));
+        }
+
+        private void ensureDoubles(int n)
+        {
+            if ( doubleCount + n > doubleValues.length )
+                doubleValues = Arrays.copyOf(doubleValues, Math.max(doubleValues.length * 2, doubleCount + n));
+        }
+
+        private void ensureStrings(int n)
+        {
+            if ( stringCount + n > stringValues.length )
+                stringValues = Arrays.copyOf(stringValues, Math.max(stringValues.length * 2, stringCount + n));
+        }
+
+        // The value arrays are handed over as they are, since meta only refers to the values set
+        CapabilityBatchResult build()
+        {
+            return new CapabilityBatchResult(caps, meta, intValues, doubleValues, stringValues);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel.capabilityinterface;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.dynarithmic.twain.lowlevel.TwainConstants.CAPS;
+
+/**
+ * @author Dynarithmic Software
+ * <p>The capabilities whose values may change when another capability is set.  For example, setting ICAP_PIXELTYPE
+ * changes the values of ICAP_BITDEPTH that a source supports, and setting ICAP_UNITS changes the values of ICAP_FRAMES
+ * and the resolution capabilities.  When a capability is set or reset, CapabilityInterface removes the cached values of
+ * the capability and of all the capabilities that depend on it, directly or through other capabilities.</p>
+ * <p>Setting a capability that is registered with {@link #addGlobalCap(int)} (for example, CAP_CAMERASIDE) clears the
+ * whole cache.  Additional rules, for example for custom capabilities, can be added with {@link #addDependency(int, int)}.</p>
+ */
+public final class CapabilityDependencies
+{
+    private static final Map<Integer, Set<Integer>> s_dependents = new ConcurrentHashMap<>();
+    private static final Set<Integer> s_globalCaps = ConcurrentHashMap.newKeySet();
+
+    static
+    {
+        addDependencies(CAPS.ICAP_PIXELTYPE, CAPS.ICAP_BITDEPTH, CAPS.ICAP_BITDEPTHREDUCTION, CAPS.ICAP_THRESHOLD,
+                        CAPS.ICAP_HALFTONES, CAPS.ICAP_COMPRESSION, CAPS.ICAP_JPEGPIXELTYPE);
+        addDependencies(CAPS.ICAP_BITDEPTH, CAPS.ICAP_BITDEPTHREDUCTION, CAPS.ICAP_COMPRESSION);
+        addDependencies(CAPS.ICAP_BITDEPTHREDUCTION, CAPS.ICAP_THRESHOLD, CAPS.ICAP_HALFTONES);
+        addDependencies(CAPS.ICAP_UNITS, CAPS.ICAP_FRAMES, CAPS.ICAP_XRESOLUTION, CAPS.ICAP_YRESOLUTION,
+                        CAPS.ICAP_XNATIVERESOLUTION, CAPS.ICAP_YNATIVERESOLUTION, CAPS.ICAP_PHYSICALWIDTH,
+                        CAPS.ICAP_PHYSICALHEIGHT, CAPS.ICAP_MINIMUMWIDTH, CAPS.ICAP_MINIMUMHEIGHT);
+        addDependencies(CAPS.ICAP_XRESOLUTION, CAPS.ICAP_YRESOLUTION);
+        addDependencies(CAPS.ICAP_YRESOLUTION, CAPS.ICAP_XRESOLUTION);
+        addDependencies(CAPS.ICAP_SUPPORTEDSIZES, CAPS.ICAP_FRAMES);
+        addDependencies(CAPS.ICAP_FRAMES, CAPS.ICAP_SUPPORTEDSIZES);
+        addDependencies(CAPS.ICAP_ORIENTATION, CAPS.ICAP_FRAMES);
+        addDependencies(CAPS.ICAP_AUTOMATICBORDERDETECTION, CAPS.ICAP_UNDEFINEDIMAGESIZE, CAPS.ICAP_FRAMES);
+        addDependencies(CAPS.ICAP_UNDEFINEDIMAGESIZE, CAPS.ICAP_FRAMES);
+        addDependencies(CAPS.ICAP_LIGHTPATH, CAPS.ICAP_PIXELTYPE);
+        addDependencies(CAPS.ICAP_XFERMECH, CAPS.ICAP_IMAGEFILEFORMAT, CAPS.ICAP_COMPRESSION);
+        addDependencies(CAPS.ICAP_IMAGEFILEFORMAT, CAPS.ICAP_COMPRESSION);
+        addDependencies(CAPS.ICAP_COMPRESSION, CAPS.ICAP_JPEGQUALITY, CAPS.ICAP_JPEGSUBSAMPLING, CAPS.ICAP_JPEGPIXELTYPE);
+        addDependencies(CAPS.CAP_FEEDERENABLED, CAPS.CAP_DUPLEXENABLED, CAPS.CAP_AUTOFEED, CAPS.CAP_AUTOSCAN,
+                        CAPS.CAP_FEEDERPREP, CAPS.CAP_FEEDERPOCKET, CAPS.ICAP_FEEDERTYPE, CAPS.ICAP_PHYSICALWIDTH,
+                        CAPS.ICAP_PHYSICALHEIGHT, CAPS.ICAP_SUPPORTEDSIZES, CAPS.ICAP_FRAMES);
+        addDependencies(CAPS.CAP_DUPLEXENABLED, CAPS.ICAP_FRAMES);
+        addGlobalCap(CAPS.CAP_CAMERASIDE);
+        addGlobalCap(CAPS.CAP_CAMERAENABLED);
+    }
+
+    private CapabilityDependencies()
+    {}
+
+    /**
+     * @param cap The capability that is set
+     * @param dependentCap The capability whose values may change when <i>cap</i> is set
+     */
+    public static void addDependency(int cap, int dependentCap)
+    {
+        s_dependents.computeIfAbsent(cap, k -> ConcurrentHashMap.newKeySet()).add(dependentCap);
+    }
+
+    public static void addDependencies(int cap, int... dependentCaps)
+    {
+        for (int dependentCap : dependentCaps)
+            addDependency(cap, dependentCap);
+    }
+
+    public static void removeDependency(int cap, int dependentCap)
+    {
+        Set<Integer> dependents = s_dependents.get(cap);
+        if ( dependents != null )
+            dependents.remove(dependentCap);
+    }
+
+    /**
+     * @param cap A capability that, when set, may change the values of any other capability
+     */
+    public static void addGlobalCap(int cap)
+    {
+        s_globalCaps.add(cap);
+    }
+
+    public static boolean isGlobalCap(int cap)
+    {
+        return s_globalCaps.contains(cap);
+    }
+
+    /**
+     * @return The capabilities that directly depend on <i>cap</i>
+     */
+    public static Set<Integer> getDependents(int cap)
+    {
+        Set<Integer> dependents = s_dependents.get(cap);
+        return dependents == null ? Collections.emptySet() : Collections.unmodifiableSet(dependents);
+    }
+
+    /**
+     * @return <i>cap</i>, and all the capabilities that depend on it, directly or through other capabilities
+     */
+    public static Set<Integer> getAffectedCaps(int cap)
+    {
+        Set<Integer> affected = new HashSet<>();
+        Deque<Integer> toVisit = new ArrayDeque<>();
+        toVisit.add(cap);
+        while (!toVisit.isEmpty())
+        {
+            Integer current = toVisit.poll();
+            if ( affected.add(current) )
+                toVisit.addAll(getDependents(current));
+        }
+        return affected;
+    }
+}
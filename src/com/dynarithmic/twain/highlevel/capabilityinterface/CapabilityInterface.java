@@ -21,9 +21,12 @@
  */
 package com.dynarithmic.twain.highlevel.capabilityinterface;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -37,6 +40,7 @@ import com.dynarithmic.twain.DTwainConstants.*;
 import com.dynarithmic.twain.exceptions.DTwainJavaAPIException;
 import com.dynarithmic.twain.DTwainJavaAPI;
 import com.dynarithmic.twain.highlevel.TwainSource;
+import com.dynarithmic.twain.highlevel.TwainSourceInfo;
 import com.dynarithmic.twain.lowlevel.TW_FIX32;
 import com.dynarithmic.twain.lowlevel.TwainConstants;
 import com.dynarithmic.twain.lowlevel.TwainConstants.*;
@@ -45,7 +49,6 @@ import com.dynarithmic.twain.highlevel.TwainCapabilityHandler;
 import com.dynarithmic.twain.highlevel.TwainFrame;
 import com.dynarithmic.twain.highlevel.TwainFrameDouble;
 import com.dynarithmic.twain.highlevel.TwainRange;
-import com.dynarithmic.twain.highlevel.TwainRangeException;
 import com.dynarithmic.twain.highlevel.TwainRangeUtils;
 /**
  * @author Dynarithmic Software
@@ -324,12 +327,85 @@ public class CapabilityInterface
     private Map<Integer, TwainCapInfo> extendedImageCapsMap = new HashMap<>();
     private Map<Integer, List<Object>> capCacheMap = new HashMap<>();
     private Set<Integer> capCacheSet = new HashSet<>();
+    private Map<Integer, CapValues> typedCacheMap = new HashMap<>();
+    private long cacheHits = 0;
+    private long cacheMisses = 0;
+    private long cacheInvalidations = 0;
+
+    // The last set of each capability that the source accepted, so that sets that would not change anything can be skipped
+    private Map<Integer, AppliedSet> appliedSets = new HashMap<>();
+    private boolean skipUnchangedSets = false;
+    private long skippedSets = 0;
+
+    private static final class AppliedSet
+    {
+        private final int operation;
+        private final int containerType;
+        private final int dataType;
+        private final List<Object> values;
+
+        AppliedSet(int operation, int containerType, int dataType, List<?> values)
+        {
+            this.operation = operation;
+            this.containerType = containerType;
+            this.dataType = dataType;
+            this.values = new ArrayList<>(values);
+        }
+
+        boolean isSameAs(AppliedSet rhs)
+        {
+            return rhs != null && operation == rhs.operation && containerType == rhs.containerType &&
+                   dataType == rhs.dataType && values.equals(rhs.values);
+        }
+    }
     private Deque<CapReturnType> capReturnTypeDeque = new ArrayDeque<>();
     private CapReturnType capReturnType = new CapReturnType();
     private TwainSource twainSource = null;
     private DTwainJavaAPI apiHandle = null;
     private int maxErrorBufferSize = 100;
 
+    // Snapshots of the capability information, saved between sessions
+    private static volatile boolean s_snapshotsEnabled = false;
+    private static volatile String s_snapshotDirectory = null;
+    private Map<Integer, List<Object>> msgGetValues = new HashMap<>();
+    private Set<Integer> unverifiedCaps = new HashSet<>();
+    // Set when the application first changes a capability.  The MSG_GET values returned after that depend on the
+    // application's settings, and are not saved in the snapshot.
+    private boolean capsModified = false;
+
+    /**
+     * @param enable If true, the capability information of each source (the supported capabilities, their names,
+     * data types, operations and container types, and the values returned by MSG_GET) is saved to a snapshot file
+     * when the source is closed.  When the same source, with the same driver version, is opened again, the information
+     * is loaded from the file instead of being queried one capability at a time.  Only the list of supported
+     * capabilities is queried when the source is opened.  The first MSG_GET of each capability is still sent to the
+     * source, and if the values differ from the snapshot, the snapshot is discarded and all of the information is
+     * queried from the source again.  The default is false.
+     */
+    public static void enableSnapshots(boolean enable)
+    {
+        s_snapshotsEnabled = enable;
+    }
+
+    public static boolean isSnapshotsEnabled()
+    {
+        return s_snapshotsEnabled;
+    }
+
+    /**
+     * @param directory The directory holding the snapshot files.  If null (the default), the DTWAIN
+     * temporary directory is used.
+     */
+    public static void setSnapshotDirectory(String directory)
+    {
+        s_snapshotDirectory = directory;
+    }
+
+    public static String getSnapshotDirectory()
+    {
+        return s_snapshotDirectory;
+    }
+
     public CapabilityInterface setMaxErrorBufferSize(int sz)
     {
         if ( sz < maxErrorBufferSize )
@@ -428,14 +504,18 @@ public class CapabilityInterface
 
     private void initializeCachedSet()
     {
+        // Capabilities that are changed by the device, and not by setting a capability.  Capabilities
+        // that change when another capability is set are invalidated using CapabilityDependencies, and
+        // TwainSource invalidates the capabilities that it changes by calling DTWAIN directly.
         Set<Integer> excludedSet = new HashSet<>();
         excludedSet.add(CAPS.CAP_DEVICEONLINE);
-        excludedSet.add(CAPS.CAP_DUPLEXENABLED);
         excludedSet.add(CAPS.CAP_ENABLEDSUIONLY);
-        excludedSet.add(CAPS.ICAP_BITDEPTH);
-        excludedSet.add(CAPS.ICAP_FRAMES);
-        excludedSet.add(CAPS.ICAP_XRESOLUTION);
-        excludedSet.add(CAPS.ICAP_YRESOLUTION);
+        excludedSet.add(CAPS.CAP_FEEDERLOADED);
+        excludedSet.add(CAPS.CAP_DEVICEEVENT);
+        excludedSet.add(CAPS.CAP_DEVICETIMEDATE);
+        excludedSet.add(CAPS.CAP_POWERSUPPLY);
+        excludedSet.add(CAPS.CAP_BATTERYMINUTES);
+        excludedSet.add(CAPS.CAP_BATTERYPERCENTAGE);
         for ( Integer i : excludedSet)
             this.capCacheSet.remove(i);
     }
@@ -458,6 +538,7 @@ public class CapabilityInterface
                 newList.add(obj);
         }
         this.capCacheMap.put(capValue, newList);
+        this.typedCacheMap.remove(capValue);
     }
 
     private void copyFromCache(List<Object> lObjects, int capValue)
@@ -472,6 +553,31 @@ public class CapabilityInterface
                     lObjects.add(obj);
             }
         }
+        else
+        if ( this.typedCacheMap.containsKey(capValue) )
+        {
+            // Values cached by the batch path are only turned into objects when they are asked for as objects
+            lObjects.addAll(this.typedCacheMap.get(capValue).toList());
+        }
+    }
+
+    private boolean isCached(int capValue)
+    {
+        return this.capCacheMap.containsKey(capValue) || this.typedCacheMap.containsKey(capValue);
+    }
+
+    // Creates the typed values of entry <i>index</i> of a batch result
+    private CapValues toCapValues(CapabilityBatchResult result, int index, int getOperation, int dataType)
+    {
+        int cap = result.getCap(index);
+        int containerType = getCapContainerType(cap, get().setOperation(getOperation));
+        CapValues values = CapValues.fromBatch(result, index, containerType, getCapDataType(cap));
+        if ( getOperation == MSG.MSG_GET && containerType == DTwainConstants.ContainerType.ENUMERATION.value() )
+        {
+            values.indexSource = this;
+            values.dataType = dataType;
+        }
+        return values;
     }
 
     private CapReturnType addReturnInfo(CapReturnType cr)
@@ -492,13 +598,21 @@ public class CapabilityInterface
         boolean isCacheFriendly = (gcType.getOperation() == MSG.MSG_GET) &&
                                   this.capCacheSet.contains(cap);
 
-        if (isCacheFriendly && this.capCacheMap.containsKey(cap))
+        // The first MSG_GET of a capability loaded from a snapshot is checked against the source
+        List<Object> snapshotValues = null;
+        if (isCacheFriendly && this.unverifiedCaps.remove(cap))
+            snapshotValues = this.msgGetValues.get(cap);
+        else
+        if (isCacheFriendly && isCached(cap))
         {
+            ++this.cacheHits;
             lObjects.clear();
             copyFromCache(lObjects, cap);
             return addReturnInfo(new CapReturnType(cap, gcType, null, true, DTwainConstants.ErrorCode.ERROR_NONE));
         }
 
+        if ( isCacheFriendly )
+            ++this.cacheMisses;
         int getToUse = gcType.getOperation();
         int containerType = gcType.getContainerType();
         int dataType = gcType.getDataType();
@@ -516,8 +630,25 @@ public class CapabilityInterface
             return addReturnInfo(new CapReturnType(cap, gcType, null, false, lastError));
         }
 
-        copyToCache(lValues, cap);
-        copyFromCache(lObjects, cap);
+        // Only MSG_GET values are cached, so a MSG_GETCURRENT or MSG_GETDEFAULT does not replace them
+        if ( !isCacheFriendly )
+        {
+            lObjects.clear();
+            for (Object obj : lValues)
+            {
+                if ( isTwainObject(obj) )
+                    lObjects.add(obj);
+            }
+        }
+        else
+        {
+            copyToCache(lValues, cap);
+            copyFromCache(lObjects, cap);
+            if ( !this.capsModified )
+                this.msgGetValues.put(cap, new ArrayList<>(lObjects));
+            if ( snapshotValues != null && !snapshotValues.equals(lObjects) )
+                discardSnapshot();
+        }
         return addReturnInfo(new CapReturnType(cap, gcType, null, true, DTwainConstants.ErrorCode.ERROR_NONE));
     }
 
@@ -532,28 +663,260 @@ public class CapabilityInterface
             int cType = getCapContainerType(cap, gcType);
             if ( cType == DTwainConstants.ContainerType.RANGE.value() && TwainRangeUtils.isValidRange(ret))
             {
-                List<Object> ret2 = new ArrayList<>();
-                if ( this.getCapDataType(cap) == TWTY.TWTY_FIX32)
+                return new TwainRange<>(ret).expand();
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Gets the values of a capability in a primitive array of the capability's type (see CapValues), without
+     * creating an object for each value.  For an enumeration returned by MSG_GET, the current and default values
+     * are only requested from the source when getCurrentIndex() or getDefaultIndex() is first called.
+     * @param cap The capability
+     * @param gcType The operation, such as get() or getCurrent()
+     * @return The values.  If the values cannot be retrieved, the values are empty, and getLastError() returns the error.
+     */
+    public CapValues getTypedCapValues(int cap, GetCapOperation gcType) throws DTwainJavaAPIException
+    {
+        if ( gcType == null )
+            throw new DTwainJavaAPIException("Capability get type cannot be null");
+        boolean isSupported = twainSource != null && (capMap.isEmpty() || capMap.containsKey(cap));
+        boolean isCacheFriendly = isSupported && gcType.getOperation() == MSG.MSG_GET &&
+                                  this.capCacheSet.contains(cap) && !this.unverifiedCaps.contains(cap);
+        CapValues cached = isCacheFriendly ? this.typedCacheMap.get(cap) : null;
+        if ( cached != null )
+        {
+            ++this.cacheHits;
+            this.capReturnType = addReturnInfo(new CapReturnType(cap, gcType, null, true, DTwainConstants.ErrorCode.ERROR_NONE));
+            return cached;
+        }
+
+        CapabilityBatchResult result = getCapValues(new CapabilityBatch().add(cap, gcType));
+        this.capReturnType = new CapReturnType(cap, gcType, null, result.isSuccess(0), result.getErrorCode(0));
+        if ( !isSupported )
+            return CapValues.fromBatch(result, 0, DTwainConstants.ContainerType.INVALID.value(), getCapDataType(cap));
+
+        // Values retrieved from the source by a MSG_GET are already cached as typed values by the batch
+        CapValues values = isCacheFriendly && result.isSuccess(0) ? this.typedCacheMap.get(cap) : null;
+        if ( values == null )
+        {
+            values = toCapValues(result, 0, gcType.getOperation(), gcType.getDataType());
+            if ( isCacheFriendly && result.isSuccess(0) )
+                this.typedCacheMap.put(cap, values);
+        }
+        return values;
+    }
+
+    // Requests the current (MSG_GETCURRENT) or default (MSG_GETDEFAULT) value of an enumeration, and returns its position
+    int getValueIndex(CapValues values, int operation)
+    {
+        if ( twainSource == null )
+            return -1;
+        try
+        {
+            List<Object> lValues = new ArrayList<>();
+            CapReturnType ret = getCapValues(lValues, values.getCap(), get().setOperation(operation).setDataType(values.dataType));
+            if ( !ret.getReturn() || lValues.isEmpty() )
+                return -1;
+            return values.indexOf(lValues.get(0));
+        }
+        catch (DTwainJavaAPIException e)
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * @return The values of an integer or boolean capability.  The values are empty if the capability is of another type.
+     */
+    public IntCapValues getIntCapValues(int cap, GetCapOperation gcType) throws DTwainJavaAPIException
+    {
+        CapValues values = getTypedCapValues(cap, gcType);
+        if ( values instanceof IntCapValues )
+            return (IntCapValues)values;
+        return new IntCapValues(cap, values.getContainerType(), new int[0], false);
+    }
+
+    /**
+     * @return The values of a TW_FIX32 capability.  The values are empty if the capability is of another type.
+     */
+    public DoubleCapValues getDoubleCapValues(int cap, GetCapOperation gcType) throws DTwainJavaAPIException
+    {
+        CapValues values = getTypedCapValues(cap, gcType);
+        if ( values instanceof DoubleCapValues )
+            return (DoubleCapValues)values;
+        return new DoubleCapValues(cap, values.getContainerType(), new double[0]);
+    }
+
+    /**
+     * @return The values of a string capability.  The values are empty if the capability is of another type.
+     */
+    public StringCapValues getStringCapValues(int cap, GetCapOperation gcType) throws DTwainJavaAPIException
+    {
+        CapValues values = getTypedCapValues(cap, gcType);
+        if ( values instanceof StringCapValues )
+            return (StringCapValues)values;
+        return new StringCapValues(cap, values.getContainerType(), new String[0]);
+    }
+
+    /**
+     * @return The values of a frame capability.  The values are empty if the capability is of another type.
+     */
+    public FrameCapValues getFrameCapValues(int cap, GetCapOperation gcType) throws DTwainJavaAPIException
+    {
+        CapValues values = getTypedCapValues(cap, gcType);
+        if ( values instanceof FrameCapValues )
+            return (FrameCapValues)values;
+        return new FrameCapValues(cap, values.getContainerType(), new double[0]);
+    }
+
+    private static boolean s_batchNativeAvailable = true;
+
+    /**
+     * Gets the values of all the capabilities of a batch.  Capabilities that can be returned from the cache are
+     * returned from the cache, and the others are negotiated with the source in one call to the DTWAIN library.
+     * @param batch The capabilities, and the operation for each
+     * @return The values of the capabilities, in the order they were added to the batch
+     */
+    public CapabilityBatchResult getCapValues(CapabilityBatch batch) throws DTwainJavaAPIException
+    {
+        if ( batch == null )
+            throw new DTwainJavaAPIException("Capability batch cannot be null");
+        CapabilityBatchResult.Builder result = new CapabilityBatchResult.Builder(batch);
+        int[] pending = new int[batch.size()];
+        int pendingCount = 0;
+        for (int i = 0; i < batch.size(); ++i)
+        {
+            int cap = batch.getCap(i);
+            if ( twainSource == null )
+                result.setError(i, DTwainConstants.ErrorCode.ERROR_BAD_SOURCE.value());
+            else
+            if (!capMap.isEmpty() && !capMap.containsKey(cap))
+                result.setError(i, DTwainConstants.ErrorCode.ERROR_CAP_NO_SUPPORT.value());
+            else
+            if ( isBatchCacheFriendly(batch, i) && !this.unverifiedCaps.contains(cap) && isCached(cap) )
+            {
+                ++this.cacheHits;
+                CapValues typed = this.typedCacheMap.get(cap);
+                if ( typed != null )
+                    result.setValues(i, typed);
+                else
                 {
-                    Double [] dList = ret.toArray(new Double[ret.size()]);
-                    List<Double> vals = new TwainRange<Double>(Arrays.asList(dList)).expand();
-                    for (int i = 0; i < vals.size(); ++i)
-                        ret2.add(vals.get(i));
-                    return ret2;
+                    List<Object> values = new ArrayList<>();
+                    copyFromCache(values, cap);
+                    result.setValues(i, values);
                 }
-                else
+            }
+            else
+            {
+                if ( twainSource != null && isBatchCacheFriendly(batch, i) )
+                    ++this.cacheMisses;
+                pending[pendingCount++] = i;
+            }
+        }
+        if ( pendingCount == 0 )
+            return result.build();
+
+        if ( s_batchNativeAvailable )
+        {
+            try
+            {
+                getBatchFromSource(batch, pending, pendingCount, result);
+            }
+            catch (UnsatisfiedLinkError e)
+            {
+                // The DTWAIN JNI library was built without the batch function
+                s_batchNativeAvailable = false;
+            }
+        }
+        if ( !s_batchNativeAvailable )
+            getBatchOneAtATime(batch, pending, pendingCount, result);
+
+        CapabilityBatchResult ret = result.build();
+        boolean snapshotChanged = false;
+        for (int p = 0; p < pendingCount; ++p)
+        {
+            int i = pending[p];
+            int cap = batch.getCap(i);
+            GetCapOperation gcType = get().setOperation(batch.getOperation(i));
+            if ( !ret.isSuccess(i) )
+            {
+                addReturnInfo(new CapReturnType(cap, gcType, null, false, ret.getErrorCode(i)));
+                continue;
+            }
+            if ( isBatchCacheFriendly(batch, i) )
+            {
+                // The typed values are cached, and objects are only created for the snapshot
+                CapValues typed = toCapValues(ret, i, batch.getOperation(i), batch.getDataType(i));
+                this.capCacheMap.remove(cap);
+                this.typedCacheMap.put(cap, typed);
+                List<Object> snapshotValues = this.unverifiedCaps.remove(cap) ? this.msgGetValues.get(cap) : null;
+                if ( !this.capsModified || snapshotValues != null )
                 {
-                    Integer [] iList = ret.toArray(new Integer[ret.size()]);
-                    List<Integer> vals = new TwainRange<Integer>(Arrays.asList(iList)).expand();
-                    for (int i = 0; i < vals.size(); ++i)
-                        ret2.add(vals.get(i));
-                    return ret2;
+                    List<Object> values = typed.toList();
+                    if ( !this.capsModified )
+                        this.msgGetValues.put(cap, values);
+                    if ( snapshotValues != null && !snapshotValues.equals(values) )
+                        snapshotChanged = true;
                 }
             }
+            addReturnInfo(new CapReturnType(cap, gcType, null, true, DTwainConstants.ErrorCode.ERROR_NONE));
         }
+        if ( snapshotChanged )
+            discardSnapshot();
         return ret;
     }
 
+    private boolean isBatchCacheFriendly(CapabilityBatch batch, int index)
+    {
+        return batch.getOperation(index) == MSG.MSG_GET && this.capCacheSet.contains(batch.getCap(index));
+    }
+
+    private void getBatchFromSource(CapabilityBatch batch, int[] pending, int pendingCount,
+                                    CapabilityBatchResult.Builder result) throws DTwainJavaAPIException
+    {
+        int[] caps = new int[pendingCount];
+        int[] getTypes = new int[pendingCount];
+        int[] containerTypes = new int[pendingCount];
+        int[] dataTypes = new int[pendingCount];
+        for (int p = 0; p < pendingCount; ++p)
+        {
+            int i = pending[p];
+            caps[p] = batch.getCap(i);
+            getTypes[p] = batch.getOperation(i);
+            containerTypes[p] = batch.getContainerType(i);
+            dataTypes[p] = batch.getDataType(i);
+        }
+        Object[] packed = apiHandle.DTWAIN_GetCapValuesBatch(twainSource.getSourceHandle(), caps, getTypes,
+                                                             containerTypes, dataTypes);
+        for (int p = 0; p < pendingCount; ++p)
+            result.setPacked(pending[p], packed, p);
+    }
+
+    private void getBatchOneAtATime(CapabilityBatch batch, int[] pending, int pendingCount,
+                                    CapabilityBatchResult.Builder result) throws DTwainJavaAPIException
+    {
+        for (int p = 0; p < pendingCount; ++p)
+        {
+            int i = pending[p];
+            List<Object> values = new ArrayList<>();
+            boolean retVal = apiHandle.DTWAIN_GetCapValuesEx2(twainSource.getSourceHandle(),
+                                                              batch.getCap(i),
+                                                              batch.getOperation(i),
+                                                              batch.getContainerType(i),
+                                                              batch.getDataType(i),
+                                                              values);
+            if ( retVal )
+            {
+                values.removeIf(obj -> !isTwainObject(obj));
+                result.setValues(i, values);
+            }
+            else
+                result.setError(i, apiHandle.DTWAIN_GetLastError());
+        }
+    }
+
     public <T> CapReturnType setCapValues(List<T> values, int cap, SetCapOperation scType) throws DTwainJavaAPIException
     {
         if ( twainSource == null )
@@ -573,17 +936,137 @@ public class CapabilityInterface
                 valuesToUse = new ArrayList<>();
         }
 
+        AppliedSet requested = new AppliedSet(setOpToUse, containerToUse, typeToUse, valuesToUse);
+        if ( this.skipUnchangedSets && requested.isSameAs(this.appliedSets.get(cap)) )
+        {
+            ++this.skippedSets;
+            this.capReturnType.setReturn(true);
+            this.capReturnType.setErrorCode(DTwainConstants.ErrorCode.ERROR_NONE.value());
+            return addReturnInfo(new CapReturnType(cap, null, scType, true, DTwainConstants.ErrorCode.ERROR_NONE));
+        }
+
         @SuppressWarnings("unchecked")
         int retValue = apiHandle.DTWAIN_SetCapValuesEx2(twainSource.getSourceHandle(),cap,setOpToUse, 
                                                         containerToUse, typeToUse, (List<Object>) valuesToUse);
+        // Even a failed set may have changed the source's values (TWRC_CHECKSTATUS)
+        invalidateCache(cap);
         int lastError = DTwainConstants.ErrorCode.ERROR_NONE.value();
         if (retValue == 0)
             lastError = apiHandle.DTWAIN_GetLastError();
+        else
+            this.appliedSets.put(cap, requested);
         this.capReturnType.setReturn(retValue == 1);
         this.capReturnType.setErrorCode(lastError);
         return addReturnInfo(new CapReturnType(cap, null, scType, capReturnType.getReturn(), capReturnType.getErrorCode()));
     }
 
+    /**
+     * Removes the cached values of a capability, and of the capabilities that depend on it (see CapabilityDependencies).
+     * This is called when a capability is set or reset using this interface.  Call it after changing a capability
+     * of the source by other means.
+     * @param cap The capability that was changed
+     */
+    public void invalidateCache(int cap)
+    {
+        this.capsModified = true;
+        if ( CapabilityDependencies.isGlobalCap(cap) )
+        {
+            clearCache();
+            return;
+        }
+        for (Integer affected : CapabilityDependencies.getAffectedCaps(cap))
+        {
+            // Values changed by the application cannot be checked against the snapshot
+            this.unverifiedCaps.remove(affected);
+            boolean typedRemoved = this.typedCacheMap.remove(affected) != null;
+            this.appliedSets.remove(affected);
+            if ( this.capCacheMap.remove(affected) != null || typedRemoved )
+                ++this.cacheInvalidations;
+        }
+    }
+
+    /**
+     * Removes all the cached capability values.  The supported capabilities and their types are kept.
+     */
+    public void clearCache()
+    {
+        this.capsModified = true;
+        Set<Integer> cached = new HashSet<>(this.capCacheMap.keySet());
+        cached.addAll(this.typedCacheMap.keySet());
+        this.cacheInvalidations += cached.size();
+        this.capCacheMap.clear();
+        this.typedCacheMap.clear();
+        this.unverifiedCaps.clear();
+        this.appliedSets.clear();
+    }
+
+    /**
+     * @param enable If true, a set (or reset) of a capability is not sent to the source if it is the same as the last
+     * set of the capability that the source accepted, and no capability it depends on (see CapabilityDependencies) has
+     * been set since.  OptionsApplyer enables this while it applies the AcquireCharacteristics.  The default is false.
+     */
+    public void enableSkipUnchangedSets(boolean enable)
+    {
+        this.skipUnchangedSets = enable;
+    }
+
+    public boolean isSkipUnchangedSetsEnabled()
+    {
+        return this.skipUnchangedSets;
+    }
+
+    /**
+     * Forgets the sets that the source has accepted, so that the next set of each capability is sent to the source
+     */
+    public void clearAppliedSets()
+    {
+        this.appliedSets.clear();
+    }
+
+    /**
+     * @return Number of sets not sent to the source because they would not have changed anything
+     */
+    public long getSkippedSetCount()
+    {
+        return this.skippedSets;
+    }
+
+    public void resetSkippedSetCount()
+    {
+        this.skippedSets = 0;
+    }
+
+    /**
+     * @return Number of MSG_GET requests returned from the cache
+     */
+    public long getCacheHits()
+    {
+        return this.cacheHits;
+    }
+
+    /**
+     * @return Number of MSG_GET requests of cacheable capabilities that were sent to the source
+     */
+    public long getCacheMisses()
+    {
+        return this.cacheMisses;
+    }
+
+    /**
+     * @return Number of cached capability values removed because a capability was set
+     */
+    public long getCacheInvalidations()
+    {
+        return this.cacheInvalidations;
+    }
+
+    public void resetCacheStatistics()
+    {
+        this.cacheHits = 0;
+        this.cacheMisses = 0;
+        this.cacheInvalidations = 0;
+    }
+
     public int getLastError()
     {
         return this.capReturnType.getErrorCode();
@@ -596,8 +1079,20 @@ public class CapabilityInterface
         this.capCacheSet.clear();
         this.extendedCapMap.clear();
         this.extendedImageCapsMap.clear();
+        this.msgGetValues.clear();
+        this.unverifiedCaps.clear();
+        this.capsModified = false;
         apiHandle = this.twainSource.getTwainSession().getAPIHandle();
         List<Integer> allCaps = this.getSupportedCaps(get());
+        if ( s_snapshotsEnabled && fillCapsFromSnapshot(allCaps) )
+            return true;
+        boolean ret = fillCapsFromSource(allCaps);
+        saveSnapshot();
+        return ret;
+    }
+
+    private boolean fillCapsFromSource(List<Integer> allCaps) throws DTwainJavaAPIException
+    {
         for (Integer cap : allCaps)
         {
             String capName = apiHandle.DTWAIN_GetNameFromCap(cap);
@@ -632,6 +1127,141 @@ public class CapabilityInterface
         return this.capMap.size() > 0;
     }
 
+    private boolean fillCapsFromSnapshot(List<Integer> allCaps)
+    {
+        Path file = getSnapshotFile();
+        CapabilitySnapshot snapshot = file != null ? CapabilitySnapshot.load(file, getSnapshotKey()) : null;
+        if ( snapshot == null || !new HashSet<>(allCaps).equals(snapshot.caps.keySet()) )
+            return false;
+        for (Map.Entry<Integer, CapabilitySnapshot.CapEntry> entry : snapshot.caps.entrySet())
+        {
+            CapabilitySnapshot.CapEntry capEntry = entry.getValue();
+            TwainCapInfo capInfo = new TwainCapInfo(capEntry.name, capEntry.supportedOps, capEntry.dataType);
+            System.arraycopy(capEntry.containerType, 0, capInfo.containerType, 0,
+                             Math.min(capEntry.containerType.length, capInfo.containerType.length));
+            this.capMap.put(entry.getKey(), capInfo);
+            this.capCacheSet.add(entry.getKey());
+            if (entry.getKey() >= TwainConstants.CAPS.CAP_CUSTOMBASE)
+                this.customCapMap.put(entry.getKey(), new TwainCapInfo(capInfo));
+        }
+        this.initializeCachedSet();
+        for (Integer cap : snapshot.extendedCaps)
+        {
+            if ( this.capMap.containsKey(cap))
+                this.extendedCapMap.put(cap, new TwainCapInfo(this.capMap.get(cap)));
+        }
+        for (Map.Entry<Integer, List<Object>> entry : snapshot.getValues.entrySet())
+        {
+            if ( !this.capCacheSet.contains(entry.getKey()) )
+                continue;
+            this.capCacheMap.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+            this.msgGetValues.put(entry.getKey(), entry.getValue());
+            this.unverifiedCaps.add(entry.getKey());
+        }
+        return this.capMap.size() > 0;
+    }
+
+    // The source no longer matches its snapshot, so everything is queried again
+    private void discardSnapshot() throws DTwainJavaAPIException
+    {
+        Path file = getSnapshotFile();
+        try
+        {
+            if ( file != null )
+                Files.deleteIfExists(file);
+        }
+        catch (IOException e)
+        {
+            // The file is replaced when the snapshot is saved
+        }
+        Map<Integer, List<Object>> verified = new HashMap<>();
+        for (Map.Entry<Integer, List<Object>> entry : this.msgGetValues.entrySet())
+        {
+            if ( !this.unverifiedCaps.contains(entry.getKey()) )
+                verified.put(entry.getKey(), entry.getValue());
+        }
+        this.capMap.clear();
+        this.customCapMap.clear();
+        this.capCacheSet.clear();
+        this.extendedCapMap.clear();
+        this.capCacheMap.keySet().removeAll(this.unverifiedCaps);
+        this.typedCacheMap.keySet().removeAll(this.unverifiedCaps);
+        this.unverifiedCaps.clear();
+        this.msgGetValues.clear();
+        this.msgGetValues.putAll(verified);
+        fillCapsFromSource(this.getSupportedCaps(get()));
+    }
+
+    private String getSnapshotKey()
+    {
+        TwainSourceInfo info = this.twainSource.getInfo();
+        if ( info == null )
+            return "";
+        return info.getManufacturer() + "|" + info.getProductFamily() + "|" + info.getProductName() + "|" +
+               info.getMajorNum() + "." + info.getMinorNum() + "|" + info.getVersionInfo();
+    }
+
+    private Path getSnapshotFile()
+    {
+        if ( this.twainSource == null || this.twainSource.getInfo() == null )
+            return null;
+        try
+        {
+            String directory = s_snapshotDirectory;
+            if ( directory == null )
+                directory = apiHandle.DTWAIN_GetTempFileDirectory();
+            return CapabilitySnapshot.getFile(Paths.get(directory), getSnapshotKey());
+        }
+        catch (DTwainJavaAPIException | RuntimeException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Saves the capability information of the source to its snapshot file, if snapshots are enabled.
+     * This is called when the source is opened, and when it is closed.  Only the values returned by MSG_GET before
+     * the application first changed a capability are saved, since the source is reset to these values when it is
+     * opened again.
+     * @return true if the snapshot was saved
+     * @see #enableSnapshots(boolean)
+     */
+    public boolean saveSnapshot()
+    {
+        if ( !s_snapshotsEnabled || this.twainSource == null || this.capMap.isEmpty() )
+            return false;
+        Path file = getSnapshotFile();
+        if ( file == null )
+            return false;
+        CapabilitySnapshot snapshot = new CapabilitySnapshot(getSnapshotKey());
+        for (Map.Entry<Integer, TwainCapInfo> entry : this.capMap.entrySet())
+        {
+            TwainCapInfo capInfo = entry.getValue();
+            snapshot.caps.put(entry.getKey(), new CapabilitySnapshot.CapEntry(capInfo.name, capInfo.supportedOps,
+                                                                            capInfo.dataType, capInfo.containerType.clone()));
+        }
+        snapshot.extendedCaps.addAll(this.extendedCapMap.keySet());
+        for (Map.Entry<Integer, List<Object>> entry : this.msgGetValues.entrySet())
+        {
+            List<Object> values = new ArrayList<>();
+            for (Object obj : entry.getValue())
+            {
+                if ( isTwainObject(obj) )
+                    values.add(obj);
+            }
+            snapshot.getValues.put(entry.getKey(), values);
+        }
+        try
+        {
+            snapshot.save(file);
+            return true;
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+    }
+
     public void initializeExtendedImageInfo() throws DTwainJavaAPIException
     {
         if (extendedImageCapsMap.isEmpty())
@@ -715,33 +1345,6 @@ public class CapabilityInterface
         return this.capMap.containsKey(capValue);
     }
 
-    private static <T> boolean equalityComparer(List<T> objList, T value)
-    {
-        for (Object obj : objList)
-        {
-            if (obj instanceof Integer)
-            {
-                if (((Integer)obj).intValue() == ((Integer)value).intValue())
-                    return true;
-            }
-            else
-            if (obj instanceof Double)
-            {
-                if (((Double)obj).doubleValue() == ((Double)value).doubleValue())
-                    return true;
-            }
-            else
-            if (obj instanceof String)
-            {
-                String val1 = (String)obj;
-                String val2 = (String)value;
-                if ( val1.compareTo(val2) == 0)
-                    return true;
-            }
-        }
-        return false;
-    }
-
     private <T> CapReturnType isCapValueSupportedImpl(T testValue, int capToTest) throws DTwainJavaAPIException
     {
         if (twainSource == null)
@@ -749,60 +1352,17 @@ public class CapabilityInterface
         if ( !this.capMap.isEmpty() && !capMap.containsKey(capToTest))
             return addReturnInfo(new CapReturnType(capToTest, null, null, false, DTwainConstants.ErrorCode.ERROR_CAP_NO_SUPPORT));
 
-        boolean inCapCache = false;
-        List<Object> vList = null;
-
-        boolean isCache = this.capCacheSet.contains(capToTest);
-        if (isCache)
-        {
-            inCapCache = this.capCacheMap.containsKey(capToTest);
-            if ( inCapCache )
-                vList = this.capCacheMap.get(capToTest);
-        }
-
-        if ( !isCache || !inCapCache )
-            vList = getCapValues(capToTest, get());
-        int cType = getCapContainerType(capToTest, get());
-        if ( cType != DTwainConstants.ContainerType.RANGE.value())
+        CapValues values = getTypedCapValues(capToTest, get());
+        if ( !values.isRange() )
         {
-            if ( equalityComparer(vList, testValue))
+            if ( values.containsValue(testValue) )
                 return addReturnInfo(new CapReturnType(capToTest, null, null, true, 1));
             return addReturnInfo(new CapReturnType(capToTest, null, null, false, DTwainConstants.ErrorCode.ERROR_CAP_NO_SUPPORT));
         }
-        else
-        {
-            boolean bFound = false;
-            if ( this.getCapDataType(capToTest) == TWTY.TWTY_FIX32)
-            {
-                Double [] dList = vList.toArray(new Double[vList.size()]);
-                TwainRange<Double> dRange;
-                try
-                {
-                    dRange = new TwainRange<>(Arrays.asList(dList));
-                }
-                catch (TwainRangeException e)
-                {
-                    return addReturnInfo(new CapReturnType(capToTest, null, null, false, DTwainConstants.ErrorCode.ERROR_INVALID_RANGE));
-                }
-                bFound = dRange.valueExists((Double)testValue);
-            }
-            else
-            {
-                Integer [] dList = vList.toArray(new Integer[vList.size()]);
-                TwainRange<Integer> dRange;
-                try
-                {
-                    dRange = new TwainRange<>(Arrays.asList(dList));
-                }
-                catch (TwainRangeException e)
-                {
-                    return addReturnInfo(new CapReturnType(capToTest, null, null, false, DTwainConstants.ErrorCode.ERROR_INVALID_RANGE));
-                }
-                bFound = dRange.valueExists((Integer)testValue);
-            }
-            if ( bFound )
-                return addReturnInfo(new CapReturnType(capToTest, null, null, bFound, 1));
-        }
+        if ( !values.isValidRange() )
+            return addReturnInfo(new CapReturnType(capToTest, null, null, false, DTwainConstants.ErrorCode.ERROR_INVALID_RANGE));
+        if ( values.containsValue(testValue) )
+            return addReturnInfo(new CapReturnType(capToTest, null, null, true, 1));
         return addReturnInfo(new CapReturnType(capToTest, null, null, true, 0));
     }
 
@@ -827,7 +1387,11 @@ public class CapabilityInterface
         if (ts == null)
             throw new DTwainJavaAPIException("Cannot attach a null TwainSource to CapabilityInterface");
         if (ts == this.twainSource )
+        {
+            // The source may have been closed and reopened, and so reset to its default values
+            clearAppliedSets();
             return true;
+        }
         detach();
         this.twainSource = ts;
         return fillCaps();
@@ -836,7 +1400,11 @@ public class CapabilityInterface
     public void detach()
     {
         this.twainSource = null;
+        this.msgGetValues.clear();
+        this.unverifiedCaps.clear();
         this.capCacheMap.clear();
+        this.typedCacheMap.clear();
+        this.appliedSets.clear();
         this.capCacheSet.clear();
         this.capMap.clear();
         this.customCapMap.clear();
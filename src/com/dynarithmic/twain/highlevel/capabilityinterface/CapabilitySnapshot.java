@@ -0,0 +1,257 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel.capabilityinterface;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.dynarithmic.twain.highlevel.TwainFrameDouble;
+
+/**
+ * The capability information of a source, as saved to and loaded from a snapshot file.  A file holds
+ * the snapshot of one source, identified by a key made from the source's identity.
+ */
+final class CapabilitySnapshot
+{
+    private static final int MAGIC = 0x44544353;  // "DTCS"
+    private static final int VERSION = 1;
+
+    private static final byte TYPE_INTEGER = 1;
+    private static final byte TYPE_DOUBLE = 2;
+    private static final byte TYPE_STRING = 3;
+    private static final byte TYPE_BOOLEAN = 4;
+    private static final byte TYPE_FRAME = 5;
+
+    // A snapshot of even a large source is a few hundred KB, so anything larger is not a snapshot
+    private static final long MAX_FILE_SIZE = 16L * 1024 * 1024;
+
+    // The fewest bytes that each entry of a count can take in the file
+    private static final int MIN_CAP_ENTRY_SIZE = 15;
+    private static final int MIN_EXTENDED_CAP_SIZE = 4;
+    private static final int MIN_VALUES_ENTRY_SIZE = 8;
+    private static final int MIN_VALUE_SIZE = 2;
+
+    static final class CapEntry
+    {
+        final String name;
+        final int supportedOps;
+        final int dataType;
+        final byte[] containerType;
+
+        CapEntry(String name, int supportedOps, int dataType, byte[] containerType)
+        {
+            this.name = name;
+            this.supportedOps = supportedOps;
+            this.dataType = dataType;
+            this.containerType = containerType;
+        }
+    }
+
+    final String key;
+    final Map<Integer, CapEntry> caps = new LinkedHashMap<>();
+    final List<Integer> extendedCaps = new ArrayList<>();
+    final Map<Integer, List<Object>> getValues = new LinkedHashMap<>();
+
+    CapabilitySnapshot(String key)
+    {
+        this.key = key;
+    }
+
+    static Path getFile(Path directory, String key)
+    {
+        return directory.resolve("dtwain_caps_" + Integer.toHexString(key.hashCode()) + ".bin");
+    }
+
+    /**
+     * @return The snapshot, or null if the file does not exist, cannot be read, or belongs to a different source
+     */
+    static CapabilitySnapshot load(Path file, String key)
+    {
+        // The file is read into memory first, so that every count can be checked against the bytes left
+        byte[] contents;
+        try
+        {
+            if ( !Files.isRegularFile(file) || Files.size(file) > MAX_FILE_SIZE )
+                return null;
+            contents = Files.readAllBytes(file);
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(contents)))
+        {
+            if ( in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(key) )
+                return null;
+            CapabilitySnapshot snapshot = new CapabilitySnapshot(key);
+            int capCount = readCount(in, MIN_CAP_ENTRY_SIZE);
+            for (int i = 0; i < capCount; ++i)
+            {
+                int cap = in.readInt();
+                String name = in.readUTF();
+                int ops = in.readInt();
+                int dataType = in.readInt();
+                byte[] containerType = new byte[in.readUnsignedByte()];
+                in.readFully(containerType);
+                snapshot.caps.put(cap, new CapEntry(name, ops, dataType, containerType));
+            }
+            int extCount = readCount(in, MIN_EXTENDED_CAP_SIZE);
+            for (int i = 0; i < extCount; ++i)
+                snapshot.extendedCaps.add(in.readInt());
+            int valueCount = readCount(in, MIN_VALUES_ENTRY_SIZE);
+            for (int i = 0; i < valueCount; ++i)
+            {
+                int cap = in.readInt();
+                int n = readCount(in, MIN_VALUE_SIZE);
+                List<Object> values = new ArrayList<>(n);
+                for (int j = 0; j < n; ++j)
+                    values.add(readValue(in));
+                snapshot.getValues.put(cap, values);
+            }
+            return snapshot;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            return null;
+        }
+    }
+
+    // Reads a count, and fails if the rest of the file is too short to hold that many entries
+    private static int readCount(DataInputStream in, int minEntrySize) throws IOException
+    {
+        int count = in.readInt();
+        if ( count < 0 || (long)count * minEntrySize > in.available() )
+            throw new IOException("Capability snapshot is corrupt");
+        return count;
+    }
+
+    /**
+     * Writes the snapshot to a temporary file, which then replaces <i>file</i>.
+     */
+    void save(Path file) throws IOException
+    {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), "dtwain_caps", ".tmp");
+        try
+        {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp))))
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(key);
+                out.writeInt(caps.size());
+                for (Map.Entry<Integer, CapEntry> entry : caps.entrySet())
+                {
+                    CapEntry cap = entry.getValue();
+                    out.writeInt(entry.getKey());
+                    out.writeUTF(cap.name != null ? cap.name : "");
+                    out.writeInt(cap.supportedOps);
+                    out.writeInt(cap.dataType);
+                    out.writeByte(cap.containerType.length);
+                    out.write(cap.containerType);
+                }
+                out.writeInt(extendedCaps.size());
+                for (int cap : extendedCaps)
+                    out.writeInt(cap);
+                out.writeInt(getValues.size());
+                for (Map.Entry<Integer, List<Object>> entry : getValues.entrySet())
+                {
+                    out.writeInt(entry.getKey());
+                    out.writeInt(entry.getValue().size());
+                    for (Object value : entry.getValue())
+                        writeValue(out, value);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException
+    {
+        if ( value instanceof Integer )
+        {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt((Integer)value);
+        }
+        else
+        if ( value instanceof Double )
+        {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double)value);
+        }
+        else
+        if ( value instanceof String )
+        {
+            out.writeByte(TYPE_STRING);
+            out.writeUTF((String)value);
+        }
+        else
+        if ( value instanceof Boolean )
+        {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean)value);
+        }
+        else
+        {
+            TwainFrameDouble frame = (TwainFrameDouble)value;
+            out.writeByte(TYPE_FRAME);
+            out.writeDouble(frame.getLeft());
+            out.writeDouble(frame.getTop());
+            out.writeDouble(frame.getRight());
+            out.writeDouble(frame.getBottom());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException
+    {
+        byte type = in.readByte();
+        switch (type)
+        {
+            case TYPE_INTEGER:
+                return in.readInt();
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_STRING:
+                return in.readUTF();
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            case TYPE_FRAME:
+                return new TwainFrameDouble(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+            default:
+                throw new IOException("Unknown value type " + type);
+        }
+    }
+}
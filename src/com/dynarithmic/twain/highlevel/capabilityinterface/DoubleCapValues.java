@@ -0,0 +1,145 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel.capabilityinterface;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.dynarithmic.twain.highlevel.TwainRange;
+import com.dynarithmic.twain.highlevel.TwainRangeException;
+
+/**
+ * @author Dynarithmic Software
+ * <p>The values of a TW_FIX32 capability.  Values are compared in units of 1/65536, the precision of TW_FIX32, so
+ * a value such as 0.1 matches the value sent by the source even though neither is exactly 0.1.</p>
+ */
+public final class DoubleCapValues extends CapValues
+{
+    private final double[] values;
+
+    DoubleCapValues(int cap, int containerType, double[] values)
+    {
+        super(cap, containerType);
+        this.values = values;
+    }
+
+    @Override
+    public int size()
+    {
+        return values.length;
+    }
+
+    public double get(int index)
+    {
+        return values[index];
+    }
+
+    /**
+     * @return A copy of the values
+     */
+    public double[] toArray()
+    {
+        return Arrays.copyOf(values, values.length);
+    }
+
+    public double getCurrent()
+    {
+        if ( isRange() )
+            return values[TwainRange.CURRENTPOS];
+        return values[resolveIndex(getCurrentIndex(), "current")];
+    }
+
+    public double getDefault()
+    {
+        if ( isRange() )
+            return values[TwainRange.DEFAULTPOS];
+        return values[resolveIndex(getDefaultIndex(), "default")];
+    }
+
+    public boolean contains(double value)
+    {
+        long units = TwainRange.toFix32Units(value);
+        if ( isRange() )
+        {
+            if ( values.length < TwainRange.RANGESIZE )
+                return false;
+            return TwainRange.containsUnits(TwainRange.toFix32Units(values[TwainRange.MINPOS]),
+                                            TwainRange.toFix32Units(values[TwainRange.MAXPOS]),
+                                            TwainRange.toFix32Units(values[TwainRange.STEPPOS]), units);
+        }
+        for (double v : values)
+        {
+            if ( TwainRange.toFix32Units(v) == units )
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return The range, whose values can be streamed without expanding the range
+     * @throws TwainRangeException if the values are not a valid range
+     */
+    public TwainRange<Double> getRange() throws TwainRangeException
+    {
+        if ( !isValidRange() )
+            throw new TwainRangeException("Capability " + getCap() + " does not hold a valid range");
+        return new TwainRange<>(values[TwainRange.MINPOS], values[TwainRange.MAXPOS], values[TwainRange.STEPPOS],
+                                values[TwainRange.CURRENTPOS], values[TwainRange.DEFAULTPOS]);
+    }
+
+    @Override
+    boolean isValidRange()
+    {
+        return isRange() && values.length == TwainRange.RANGESIZE &&
+               values[TwainRange.MINPOS] <= values[TwainRange.MAXPOS] && values[TwainRange.STEPPOS] >= 0;
+    }
+
+    @Override
+    public boolean containsValue(Object value)
+    {
+        if ( value instanceof Double )
+            return contains(((Double)value).doubleValue());
+        return false;
+    }
+
+    @Override
+    int indexOf(Object value)
+    {
+        long units = TwainRange.toFix32Units(((Number)value).doubleValue());
+        for (int i = 0; i < values.length; ++i)
+        {
+            if ( TwainRange.toFix32Units(values[i]) == units )
+                return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public List<Object> toList()
+    {
+        List<Object> ret = new ArrayList<>(values.length);
+        for (double v : values)
+            ret.add(v);
+        return ret;
+    }
+}
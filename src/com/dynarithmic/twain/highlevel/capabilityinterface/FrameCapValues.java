@@ -0,0 +1,123 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel.capabilityinterface;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.dynarithmic.twain.highlevel.TwainFrameDouble;
+import com.dynarithmic.twain.highlevel.TwainRange;
+
+/**
+ * @author Dynarithmic Software
+ * <p>The values of a frame capability (ICAP_FRAMES).  Each frame is held as four doubles: left, top, right and bottom.</p>
+ */
+public final class FrameCapValues extends CapValues
+{
+    private final double[] values;
+
+    FrameCapValues(int cap, int containerType, double[] values)
+    {
+        super(cap, containerType);
+        this.values = values;
+    }
+
+    @Override
+    public int size()
+    {
+        return values.length / 4;
+    }
+
+    public double getLeft(int index)
+    {
+        return values[checkIndex(index) * 4];
+    }
+
+    public double getTop(int index)
+    {
+        return values[checkIndex(index) * 4 + 1];
+    }
+
+    public double getRight(int index)
+    {
+        return values[checkIndex(index) * 4 + 2];
+    }
+
+    public double getBottom(int index)
+    {
+        return values[checkIndex(index) * 4 + 3];
+    }
+
+    public TwainFrameDouble get(int index)
+    {
+        return new TwainFrameDouble(getLeft(index), getTop(index), getRight(index), getBottom(index));
+    }
+
+    public TwainFrameDouble getCurrent()
+    {
+        return get(resolveIndex(getCurrentIndex(), "current"));
+    }
+
+    public TwainFrameDouble getDefault()
+    {
+        return get(resolveIndex(getDefaultIndex(), "default"));
+    }
+
+    private int checkIndex(int index)
+    {
+        if ( index < 0 || index >= size() )
+            throw new IndexOutOfBoundsException("Frame " + index + " of " + size());
+        return index;
+    }
+
+    @Override
+    public boolean containsValue(Object value)
+    {
+        return indexOf(value) != -1;
+    }
+
+    @Override
+    int indexOf(Object value)
+    {
+        if ( !(value instanceof TwainFrameDouble) )
+            return -1;
+        TwainFrameDouble frame = (TwainFrameDouble)value;
+        for (int i = 0; i < size(); ++i)
+        {
+            if ( TwainRange.toFix32Units(values[i * 4]) == TwainRange.toFix32Units(frame.getLeft()) &&
+                 TwainRange.toFix32Units(values[i * 4 + 1]) == TwainRange.toFix32Units(frame.getTop()) &&
+                 TwainRange.toFix32Units(values[i * 4 + 2]) == TwainRange.toFix32Units(frame.getRight()) &&
+                 TwainRange.toFix32Units(values[i * 4 + 3]) == TwainRange.toFix32Units(frame.getBottom()) )
+                return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public List<Object> toList()
+    {
+        List<Object> ret = new ArrayList<>(size());
+        for (int i = 0; i < size(); ++i)
+            ret.add(get(i));
+        return ret;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel.capabilityinterface;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.dynarithmic.twain.highlevel.TwainRange;
+import com.dynarithmic.twain.highlevel.TwainRangeException;
+
+/**
+ * @author Dynarithmic Software
+ * <p>The values of an integer or boolean capability.  Boolean values are held as 1 (true) and 0 (false).</p>
+ */
+public final class IntCapValues extends CapValues
+{
+    private final int[] values;
+    private final boolean booleanValues;
+
+    IntCapValues(int cap, int containerType, int[] values, boolean booleanValues)
+    {
+        super(cap, containerType);
+        this.values = values;
+        this.booleanValues = booleanValues;
+    }
+
+    @Override
+    public int size()
+    {
+        return values.length;
+    }
+
+    public boolean isBoolean()
+    {
+        return booleanValues;
+    }
+
+    public int get(int index)
+    {
+        return values[index];
+    }
+
+    public boolean getBoolean(int index)
+    {
+        return values[index] != 0;
+    }
+
+    /**
+     * @return A copy of the values
+     */
+    public int[] toArray()
+    {
+        return Arrays.copyOf(values, values.length);
+    }
+
+    public int getCurrent()
+    {
+        if ( isRange() )
+            return values[TwainRange.CURRENTPOS];
+        return values[resolveIndex(getCurrentIndex(), "current")];
+    }
+
+    public int getDefault()
+    {
+        if ( isRange() )
+            return values[TwainRange.DEFAULTPOS];
+        return values[resolveIndex(getDefaultIndex(), "default")];
+    }
+
+    public boolean contains(int value)
+    {
+        if ( isRange() )
+        {
+            if ( values.length < TwainRange.RANGESIZE )
+                return false;
+            return TwainRange.containsUnits(values[TwainRange.MINPOS], values[TwainRange.MAXPOS],
+                                            values[TwainRange.STEPPOS], value);
+        }
+        for (int v : values)
+        {
+            if ( v == value )
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return The range, whose values can be streamed without expanding the range
+     * @throws TwainRangeException if the values are not a valid range
+     */
+    public TwainRange<Integer> getRange() throws TwainRangeException
+    {
+        if ( !isValidRange() )
+            throw new TwainRangeException("Capability " + getCap() + " does not hold a valid range");
+        return new TwainRange<>(values[TwainRange.MINPOS], values[TwainRange.MAXPOS], values[TwainRange.STEPPOS],
+                                values[TwainRange.CURRENTPOS], values[TwainRange.DEFAULTPOS]);
+    }
+
+    @Override
+    boolean isValidRange()
+    {
+        return isRange() && values.length == TwainRange.RANGESIZE &&
+               values[TwainRange.MINPOS] <= values[TwainRange.MAXPOS] && values[TwainRange.STEPPOS] >= 0;
+    }
+
+    @Override
+    public boolean containsValue(Object value)
+    {
+        if ( value instanceof Boolean )
+            return contains((Boolean)value ? 1 : 0);
+        if ( value instanceof Integer )
+            return contains(((Integer)value).intValue());
+        return false;
+    }
+
+    @Override
+    int indexOf(Object value)
+    {
+        int toFind = value instanceof Boolean ? ((Boolean)value ? 1 : 0) : ((Number)value).intValue();
+        for (int i = 0; i < values.length; ++i)
+        {
+            if ( values[i] == toFind )
+                return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public List<Object> toList()
+    {
+        List<Object> ret = new ArrayList<>(values.length);
+        for (int v : values)
+            ret.add(booleanValues ? (Object)(v != 0) : (Object)v);
+        return ret;
+    }
+}
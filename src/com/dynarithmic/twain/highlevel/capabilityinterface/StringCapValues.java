@@ -0,0 +1,98 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel.capabilityinterface;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Dynarithmic Software
+ * <p>The values of a string capability.</p>
+ */
+public final class StringCapValues extends CapValues
+{
+    private final String[] values;
+
+    StringCapValues(int cap, int containerType, String[] values)
+    {
+        super(cap, containerType);
+        this.values = values;
+    }
+
+    @Override
+    public int size()
+    {
+        return values.length;
+    }
+
+    public String get(int index)
+    {
+        return values[index];
+    }
+
+    /**
+     * @return A copy of the values
+     */
+    public String[] toArray()
+    {
+        return Arrays.copyOf(values, values.length);
+    }
+
+    public String getCurrent()
+    {
+        return values[resolveIndex(getCurrentIndex(), "current")];
+    }
+
+    public String getDefault()
+    {
+        return values[resolveIndex(getDefaultIndex(), "default")];
+    }
+
+    public boolean contains(String value)
+    {
+        return indexOf(value) != -1;
+    }
+
+    @Override
+    public boolean containsValue(Object value)
+    {
+        return value instanceof String && contains((String)value);
+    }
+
+    @Override
+    int indexOf(Object value)
+    {
+        for (int i = 0; i < values.length; ++i)
+        {
+            if ( values[i].equals(value) )
+                return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public List<Object> toList()
+    {
+        return new ArrayList<>(Arrays.asList(values));
+    }
+}
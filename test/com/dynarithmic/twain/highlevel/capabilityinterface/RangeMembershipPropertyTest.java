@@ -0,0 +1,200 @@
+/*
+    This file is part of the Dynarithmic TWAIN Library (DTWAIN).
+    Copyright (c) 2002-2026 Dynarithmic Software.
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+    FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+    DYNARITHMIC SOFTWARE. DYNARITHMIC SOFTWARE DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+    OF THIRD PARTY RIGHTS.
+
+ */
+package com.dynarithmic.twain.highlevel.capabilityinterface;
+
+import java.util.Random;
+
+import com.dynarithmic.twain.DTwainConstants.ContainerType;
+import com.dynarithmic.twain.highlevel.TwainRange;
+
+/**
+ * Checks, for many random ranges and values, that IntCapValues.contains() and DoubleCapValues.contains() give the
+ * same answer as their implementations before range membership was moved to TwainRange, and as TwainRange.contains()
+ * for valid ranges.  Run it with the compiled library on the class path; it exits with status 1 on the first
+ * difference, printing the range and value.  An optional argument gives the random seed.
+ */
+public class RangeMembershipPropertyTest
+{
+    private static final int RANGES = 20000;
+    private static final int VALUES_PER_RANGE = 50;
+    private static final double[] DOUBLE_STEPS = { 0, 1, 0.5, 0.1, 0.25, 1.0 / 3, 0.01, 2.5, 1.0 / 65536, 600 };
+
+    private final Random random;
+    private long checks = 0;
+
+    RangeMembershipPropertyTest(long seed)
+    {
+        random = new Random(seed);
+    }
+
+    // IntCapValues.contains(int) for a range, as it was implemented before
+    private static boolean oldContains(int[] values, int value)
+    {
+        if ( values.length < TwainRange.RANGESIZE )
+            return false;
+        int min = values[TwainRange.MINPOS];
+        int max = values[TwainRange.MAXPOS];
+        int step = values[TwainRange.STEPPOS];
+        if ( value < min || value > max )
+            return false;
+        return step <= 0 ? value == min : ((long)value - min) % step == 0;
+    }
+
+    // DoubleCapValues.contains(double) for a range, as it was implemented before
+    private static boolean oldContains(double[] values, double value)
+    {
+        long units = Math.round(value * 65536.0);
+        if ( values.length < TwainRange.RANGESIZE )
+            return false;
+        long min = Math.round(values[TwainRange.MINPOS] * 65536.0);
+        long max = Math.round(values[TwainRange.MAXPOS] * 65536.0);
+        long step = Math.round(values[TwainRange.STEPPOS] * 65536.0);
+        if ( units < min || units > max )
+            return false;
+        return step <= 0 ? units == min : (units - min) % step == 0;
+    }
+
+    private int randomInt()
+    {
+        switch (random.nextInt(4))
+        {
+            case 0:
+                return random.nextInt();
+            case 1:
+                return random.nextBoolean() ? Integer.MAX_VALUE - random.nextInt(100) : Integer.MIN_VALUE + random.nextInt(100);
+            default:
+                return random.nextInt(2001) - 1000;
+        }
+    }
+
+    private void checkIntRanges()
+    {
+        for (int r = 0; r < RANGES; ++r)
+        {
+            int a = randomInt();
+            int b = randomInt();
+            int min = Math.min(a, b);
+            int max = random.nextInt(10) == 0 ? min : Math.max(a, b);
+            int step = random.nextInt(10) == 0 ? 0 : random.nextInt(10) == 0 ? randomInt() : random.nextInt(50) + 1;
+            int[] range = { min, max, step, min, min };
+            IntCapValues capValues = new IntCapValues(0, ContainerType.RANGE.value(), range, false);
+            TwainRange<Integer> twainRange = null;
+            try
+            {
+                if ( step >= 0 )
+                    twainRange = new TwainRange<>(min, max, step, min, min);
+            }
+            catch (Exception e)
+            {
+                // Ranges TwainRange rejects are only compared with the old implementation
+            }
+            for (int v = 0; v < VALUES_PER_RANGE; ++v)
+            {
+                int value;
+                switch (random.nextInt(4))
+                {
+                    case 0:
+                        value = randomInt();
+                        break;
+                    case 1:
+                        value = step > 0 ? (int)Math.min(max, min + (long)step * random.nextInt(1000)) : min;
+                        break;
+                    case 2:
+                        value = (int)Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE,
+                                    (long)min + (long)step * random.nextInt(1000) + random.nextInt(3) - 1));
+                        break;
+                    default:
+                        value = random.nextBoolean() ? min : max;
+                        break;
+                }
+                boolean expected = oldContains(range, value);
+                check(expected == capValues.contains(value), "IntCapValues", range[0], range[1], range[2], value);
+                if ( twainRange != null )
+                    check(expected == twainRange.contains(value), "TwainRange<Integer>", range[0], range[1], range[2], value);
+            }
+        }
+    }
+
+    private void checkDoubleRanges()
+    {
+        for (int r = 0; r < RANGES; ++r)
+        {
+            double step = DOUBLE_STEPS[random.nextInt(DOUBLE_STEPS.length)];
+            double min = (random.nextInt(20001) - 10000) * (random.nextBoolean() ? 0.01 : 1.0);
+            double max = random.nextInt(10) == 0 ? min : min + (step > 0 ? step * random.nextInt(5000) : random.nextInt(100));
+            double[] range = { min, max, step, min, min };
+            DoubleCapValues capValues = new DoubleCapValues(0, ContainerType.RANGE.value(), range);
+            TwainRange<Double> twainRange = null;
+            try
+            {
+                twainRange = new TwainRange<>(min, max, step, min, min);
+            }
+            catch (Exception e)
+            {
+                // Ranges TwainRange rejects are only compared with the old implementation
+            }
+            for (int v = 0; v < VALUES_PER_RANGE; ++v)
+            {
+                double value;
+                switch (random.nextInt(4))
+                {
+                    case 0:
+                        value = min + random.nextDouble() * (max - min + 2) - 1;
+                        break;
+                    case 1:
+                        // A value of the range, computed the way an application would, with rounding error
+                        value = min + step * random.nextInt(5000);
+                        break;
+                    case 2:
+                        value = min + step * random.nextInt(5000) + (random.nextBoolean() ? 1 : -1) / 65536.0;
+                        break;
+                    default:
+                        value = random.nextBoolean() ? min : max;
+                        break;
+                }
+                boolean expected = oldContains(range, value);
+                check(expected == capValues.contains(value), "DoubleCapValues", range[0], range[1], range[2], value);
+                if ( twainRange != null )
+                    check(expected == twainRange.contains(value), "TwainRange<Double>", range[0], range[1], range[2], value);
+            }
+        }
+    }
+
+    private void check(boolean same, String what, double min, double max, double step, double value)
+    {
+        ++checks;
+        if ( same )
+            return;
+        System.out.println(what + " differs from the old implementation for range [" + min + ", " + max +
+                           "] step " + step + ", value " + value);
+        System.exit(1);
+    }
+
+    public static void main(String[] args)
+    {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : System.nanoTime();
+        RangeMembershipPropertyTest test = new RangeMembershipPropertyTest(seed);
+        test.checkIntRanges();
+        test.checkDoubleRanges();
+        System.out.println(test.checks + " checks passed, seed " + seed);
+    }
+}